@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.classification;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro degli analizzatori sintattici.
+ *
+ * Mantiene un MyAnalyzer per ogni coppia (lingua, file delle stop words)
+ * insieme alla versione del file delle stop words e del file delle regole
+ * del MyFilter (data di modifica e dimensione) da cui è stato costruito.
+ * Finché i file non cambiano viene restituita sempre la stessa istanza: in
+ * questo modo i file non vengono riletti e, dato che lucene riutilizza le
+ * TokenStreamComponents per thread sulla stessa istanza di analizzatore, la
+ * catena dei filtri (stemmer compreso) viene costruita una sola volta per
+ * thread.
+ *
+ * @since 1.9.3
+ */
+public class AnalyzerRegistry {
+
+    private static final Map<String, Entry> analyzers = new ConcurrentHashMap<>();
+
+    /**
+     * Ritorna l'analizzatore per una lingua e un file di stop words
+     * costruendolo solo se non esiste o se uno dei file è cambiato
+     *
+     * @param fStop file delle stop words
+     * @param language lingua
+     * @return analizzatore sintattico
+     * @throws IOException Eccezione di input/output
+     */
+    public static MyAnalyzer getAnalyzer(File fStop, String language) throws IOException {
+        String key = getKey(fStop, language);
+        String version = getVersion(fStop) + "|" + getVersion(IndexManager.getFilterRulesFile(fStop, language));
+        Entry entry = analyzers.get(key);
+        if (entry != null && entry.version.equals(version)) {
+            return entry.analyzer;
+        }
+        MyAnalyzer analyzer = IndexManager.buildAnalyzer(fStop, language);
+        analyzers.put(key, new Entry(version, analyzer));
+        return analyzer;
+    }
+
+    /**
+     * Invalida l'analizzatore di una lingua (ad esempio dopo la modifica delle
+     * stop words)
+     *
+     * @param fStop file delle stop words
+     * @param language lingua
+     */
+    public static void invalidate(File fStop, String language) {
+        analyzers.remove(getKey(fStop, language));
+    }
+
+    /**
+     * Svuota il registro
+     */
+    public static void clear() {
+        analyzers.clear();
+    }
+
+    private static String getKey(File fStop, String language) {
+        return language + "|" + fStop.getAbsolutePath();
+    }
+
+    private static String getVersion(File file) {
+        if (!file.exists()) {
+            return "-";
+        }
+        return file.lastModified() + ":" + file.length();
+    }
+
+    private static class Entry {
+
+        private final String version;
+        private final MyAnalyzer analyzer;
+
+        private Entry(String version, MyAnalyzer analyzer) {
+            this.version = version;
+            this.analyzer = analyzer;
+        }
+    }
+}
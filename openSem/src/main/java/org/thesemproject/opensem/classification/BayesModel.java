@@ -0,0 +1,374 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.classification;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Modello Naive Bayes compilato in memoria per un nodo e una lingua.
+ *
+ * Il modello riproduce esattamente i punteggi di SimpleNaiveBayesClassifier
+ * di Lucene (prior logaritmico, verosimiglianza con add-one smoothing e
+ * normalizzazione finale) ma tiene tutte le statistiche in array primitivi:
+ * per ogni termine del vocabolario che compare nei documenti del nodo c'è una
+ * riga con la log-verosimiglianza per ogni classe. La classificazione quindi
+ * non fa alcun accesso all'indice e dipende dalla dimensione del modello e non
+ * da quella dell'indice.
+ *
+ * @since 1.9.3
+ */
+public class BayesModel {
+
+    private final Analyzer analyzer;
+    private final String textFieldName;
+    private final CharArrayMap<Integer> vocabulary;
+    private final String[] classes;
+    private final double[] logPriors;
+    private final double[] unknownWeights;
+    private final int[] termIds;
+    private final double[] weights;
+
+    /**
+     * Istruisce il modello su un campo classe
+     *
+     * @param ar reader lucene
+     * @param ts insieme di istruzione della lingua
+     * @param textFieldName campo testo
+     * @param classFieldName campo che contiene le classi
+     * @param analyzer analizzatore sintattico
+     * @throws IOException Eccezione di input/output
+     */
+    public BayesModel(LeafReader ar, BayesTrainingSet ts, String textFieldName, String classFieldName, Analyzer analyzer) throws IOException {
+        this.analyzer = analyzer;
+        this.textFieldName = textFieldName;
+        this.vocabulary = ts.getVocabulary();
+        Terms classTerms = ar.terms(classFieldName);
+        if (classTerms == null) {
+            this.classes = new String[0];
+            this.logPriors = new double[0];
+            this.unknownWeights = new double[0];
+            this.termIds = new int[0];
+            this.weights = new double[0];
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        List<int[]> classDocs = new ArrayList<>();
+        List<Integer> docFreqs = new ArrayList<>();
+        TermsEnum te = classTerms.iterator();
+        PostingsEnum pe = null;
+        BytesRef next;
+        while ((next = te.next()) != null) {
+            if (next.length == 0) {
+                continue;
+            }
+            names.add(next.utf8ToString());
+            docFreqs.add(te.docFreq());
+            pe = te.postings(pe, PostingsEnum.NONE);
+            int[] docs = new int[te.docFreq()];
+            int count = 0;
+            int doc;
+            while ((doc = pe.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (ts.isLive(doc)) {
+                    docs[count++] = doc;
+                }
+            }
+            classDocs.add(Arrays.copyOf(docs, count));
+        }
+        int nc = names.size();
+        this.classes = names.toArray(new String[nc]);
+        int docsWithClassSize = classTerms.getDocCount();
+        if (docsWithClassSize == -1) {
+            docsWithClassSize = countDocsWithClass(ts, classDocs);
+        }
+        double avg = ts.getAvgNumberOfUniqueTerms();
+        double[] den = new double[nc];
+        this.logPriors = new double[nc];
+        this.unknownWeights = new double[nc];
+        for (int c = 0; c < nc; c++) {
+            int docsWithC = docFreqs.get(c);
+            logPriors[c] = Math.log((double) docsWithC) - Math.log(docsWithClassSize);
+            den[c] = avg * docsWithC + docsWithClassSize;
+            unknownWeights[c] = Math.log(1 / den[c]);
+        }
+
+        //Conta, per ogni termine, i documenti di ogni classe che lo contengono
+        int[] rowOf = new int[ts.getVocabularySize()];
+        Arrays.fill(rowOf, -1);
+        int[] rowTerm = new int[1024];
+        int[] counts = new int[1024 * Math.max(nc, 1)];
+        int rows = 0;
+        for (int c = 0; c < nc; c++) {
+            for (int doc : classDocs.get(c)) {
+                int[] dt = ts.getDocTerms(doc);
+                if (dt == null) {
+                    continue;
+                }
+                for (int t : dt) {
+                    int r = rowOf[t];
+                    if (r == -1) {
+                        if (rows == rowTerm.length) {
+                            rowTerm = Arrays.copyOf(rowTerm, rows * 2);
+                            counts = Arrays.copyOf(counts, rows * 2 * nc);
+                        }
+                        r = rows++;
+                        rowOf[t] = r;
+                        rowTerm[r] = t;
+                    }
+                    counts[r * nc + c]++;
+                }
+            }
+        }
+
+        //Righe ordinate per id termine per la ricerca binaria
+        this.termIds = Arrays.copyOf(rowTerm, rows);
+        Arrays.sort(termIds);
+        this.weights = new double[rows * nc];
+        for (int i = 0; i < rows; i++) {
+            int r = rowOf[termIds[i]];
+            for (int c = 0; c < nc; c++) {
+                double num = counts[r * nc + c] + 1;
+                weights[i * nc + c] = Math.log(num / den[c]);
+            }
+        }
+    }
+
+    /**
+     * Costruisce il modello a partire da statistiche già compilate
+     *
+     * @param vocabulary vocabolario della lingua
+     * @param textFieldName campo testo
+     * @param analyzer analizzatore sintattico
+     * @param classes classi
+     * @param logPriors log prior per classe
+     * @param unknownWeights log verosimiglianza dei termini sconosciuti
+     * @param termIds id dei termini del modello (ordinati)
+     * @param weights matrice termini x classi delle log verosimiglianze
+     */
+    BayesModel(CharArrayMap<Integer> vocabulary, String textFieldName, Analyzer analyzer, String[] classes, double[] logPriors, double[] unknownWeights, int[] termIds, double[] weights) {
+        this.vocabulary = vocabulary;
+        this.textFieldName = textFieldName;
+        this.analyzer = analyzer;
+        this.classes = classes;
+        this.logPriors = logPriors;
+        this.unknownWeights = unknownWeights;
+        this.termIds = termIds;
+        this.weights = weights;
+    }
+
+    /**
+     * Scrive le statistiche del modello (il vocabolario è scritto a parte
+     * perché condiviso tra i nodi della lingua)
+     *
+     * @param out stream di output
+     * @throws IOException Eccezione di input/output
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(classes.length);
+        for (String cls : classes) {
+            ClassificationSnapshot.writeString(out, cls);
+        }
+        for (int c = 0; c < classes.length; c++) {
+            out.writeDouble(logPriors[c]);
+            out.writeDouble(unknownWeights[c]);
+        }
+        out.writeInt(termIds.length);
+        for (int termId : termIds) {
+            out.writeInt(termId);
+        }
+        for (double weight : weights) {
+            out.writeDouble(weight);
+        }
+    }
+
+    /**
+     * Legge un modello scritto con write
+     *
+     * @param in buffer (tipicamente mappato in memoria)
+     * @param vocabulary vocabolario della lingua
+     * @param textFieldName campo testo
+     * @param analyzer analizzatore sintattico
+     * @return modello
+     */
+    static BayesModel read(ByteBuffer in, CharArrayMap<Integer> vocabulary, String textFieldName, Analyzer analyzer) {
+        int nc = in.getInt();
+        String[] classes = new String[nc];
+        for (int c = 0; c < nc; c++) {
+            classes[c] = ClassificationSnapshot.readString(in);
+        }
+        double[] logPriors = new double[nc];
+        double[] unknownWeights = new double[nc];
+        for (int c = 0; c < nc; c++) {
+            logPriors[c] = in.getDouble();
+            unknownWeights[c] = in.getDouble();
+        }
+        int rows = in.getInt();
+        int[] termIds = new int[rows];
+        in.asIntBuffer().get(termIds);
+        in.position(in.position() + rows * Integer.BYTES);
+        double[] weights = new double[rows * nc];
+        in.asDoubleBuffer().get(weights);
+        in.position(in.position() + weights.length * Double.BYTES);
+        return new BayesModel(vocabulary, textFieldName, analyzer, classes, logPriors, unknownWeights, termIds, weights);
+    }
+
+    private static int countDocsWithClass(BayesTrainingSet ts, List<int[]> classDocs) {
+        boolean[] seen = new boolean[ts.getMaxDoc()];
+        int count = 0;
+        for (int[] docs : classDocs) {
+            for (int doc : docs) {
+                if (!seen[doc]) {
+                    seen[doc] = true;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Ritorna le classi del modello nell'ordine dell'indice
+     *
+     * @return classi
+     */
+    public String[] getClassNames() {
+        return classes;
+    }
+
+    /**
+     * Ritorna il numero di termini del modello
+     *
+     * @return numero di termini
+     */
+    public int getTermsCount() {
+        return termIds.length;
+    }
+
+    /**
+     * Verifica se due modelli tokenizzano il testo nello stesso modo (stesso
+     * vocabolario e stesso analizzatore) e quindi possono condividere gli id
+     * dei termini calcolati con tokenize
+     *
+     * @param other altro modello
+     * @return true se gli id dei termini sono condivisibili
+     * @since 1.9.3
+     */
+    boolean sharesTokens(BayesModel other) {
+        return other != null && vocabulary == other.vocabulary && analyzer == other.analyzer && textFieldName.equals(other.textFieldName);
+    }
+
+    /**
+     * Classifica un testo e ritorna tutte le classi ordinate per punteggio
+     * decrescente. Il punteggio è normalizzato tra 0 e 1 come in
+     * SimpleNaiveBayesClassifier
+     *
+     * @param text testo da classificare
+     * @return lista dei risultati ordinata
+     * @throws IOException Eccezione di input/output
+     */
+    public List<ClassificationResult<String>> getClasses(String text) throws IOException {
+        return getClasses(tokenize(text));
+    }
+
+    /**
+     * Classifica un testo già tradotto in id di termini del vocabolario
+     *
+     * @param tokens id dei termini (-1 per i termini sconosciuti)
+     * @return lista dei risultati ordinata
+     */
+    public List<ClassificationResult<String>> getClasses(int[] tokens) {
+        int nc = classes.length;
+        List<ClassificationResult<String>> ret = new ArrayList<>(nc);
+        if (nc == 0) {
+            return ret;
+        }
+        double[] likelihood = new double[nc];
+        for (int token : tokens) {
+            int row = token < 0 ? -1 : Arrays.binarySearch(termIds, token);
+            if (row < 0) {
+                for (int c = 0; c < nc; c++) {
+                    likelihood[c] += unknownWeights[c];
+                }
+            } else {
+                int offset = row * nc;
+                for (int c = 0; c < nc; c++) {
+                    likelihood[c] += weights[offset + c];
+                }
+            }
+        }
+        List<ClassificationResult<String>> raw = new ArrayList<>(nc);
+        for (int c = 0; c < nc; c++) {
+            raw.add(new ClassificationResult<>(classes[c], logPriors[c] + likelihood[c]));
+        }
+        //Normalizzazione nello stesso ordine di SimpleNaiveBayesClassifier
+        //log(sum(exp(x_n))) = a + log(sum(exp(x_n - a)))
+        Collections.sort(raw);
+        double smax = raw.get(0).getScore();
+        double sumLog = 0;
+        for (ClassificationResult<String> cr : raw) {
+            sumLog += Math.exp(cr.getScore() - smax);
+        }
+        double loga = smax;
+        loga += Math.log(sumLog);
+        for (ClassificationResult<String> cr : raw) {
+            ret.add(new ClassificationResult<>(cr.getAssignedClass(), Math.exp(cr.getScore() - loga)));
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Applica l'analizzatore del modello al testo e traduce i token in id del
+     * vocabolario senza creare una stringa per token
+     *
+     * @param text testo
+     * @return id dei termini (-1 per i termini sconosciuti)
+     * @throws IOException Eccezione di input/output
+     */
+    public int[] tokenize(String text) throws IOException {
+        int[] ret = new int[32];
+        int size = 0;
+        try (TokenStream tokenStream = analyzer.tokenStream(textFieldName, text)) {
+            CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                Integer id = vocabulary.get(charTermAttribute.buffer(), 0, charTermAttribute.length());
+                if (size == ret.length) {
+                    ret = Arrays.copyOf(ret, size * 2);
+                }
+                ret[size++] = (id == null) ? -1 : id;
+            }
+            tokenStream.end();
+        }
+        return Arrays.copyOf(ret, size);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.classification;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Insieme di istruzione per i modelli bayesiani compilati di una lingua.
+ *
+ * Viene costruito con una sola lettura dell'indice: per ogni documento vivo
+ * memorizza gli id dei termini distinti contenuti nel campo testo e costruisce
+ * il vocabolario condiviso da tutti i nodi della lingua. L'istruzione di ogni
+ * nodo (BayesModel) scorre poi solo i documenti delle proprie classi senza
+ * rileggere le posting list dell'indice.
+ *
+ * @since 1.9.3
+ */
+public class BayesTrainingSet {
+
+    private final CharArrayMap<Integer> vocabulary;
+    private final int[][] docTerms;
+    private final Bits liveDocs;
+    private final int maxDoc;
+    private final double avgNumberOfUniqueTerms;
+
+    /**
+     * Costruisce l'insieme di istruzione leggendo l'indice
+     *
+     * @param ar reader lucene
+     * @param textFieldName campo che contiene il testo tokenizzato
+     * @throws IOException Eccezione di input/output
+     */
+    public BayesTrainingSet(LeafReader ar, String textFieldName) throws IOException {
+        this.maxDoc = ar.maxDoc();
+        this.liveDocs = ar.getLiveDocs();
+        this.docTerms = new int[maxDoc][];
+        Terms terms = ar.terms(textFieldName);
+        if (terms == null) {
+            this.vocabulary = new CharArrayMap<>(1, false);
+            this.avgNumberOfUniqueTerms = 0;
+            return;
+        }
+        //Stesso calcolo di SimpleNaiveBayesClassifier: numero medio di termini unici per documento
+        double avg = 0;
+        avg += terms.getSumDocFreq() / (double) terms.getDocCount();
+        this.avgNumberOfUniqueTerms = avg;
+        long size = terms.size();
+        this.vocabulary = new CharArrayMap<>(size > 0 ? (int) size : 1024, false);
+        int[] docLength = new int[maxDoc];
+        TermsEnum te = terms.iterator();
+        PostingsEnum pe = null;
+        BytesRef term;
+        int termId = 0;
+        while ((term = te.next()) != null) {
+            pe = te.postings(pe, PostingsEnum.NONE);
+            boolean live = false;
+            int doc;
+            while ((doc = pe.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                int[] row = docTerms[doc];
+                if (row == null) {
+                    row = new int[8];
+                    docTerms[doc] = row;
+                } else if (row.length == docLength[doc]) {
+                    row = Arrays.copyOf(row, row.length * 2);
+                    docTerms[doc] = row;
+                }
+                row[docLength[doc]++] = termId;
+                live = true;
+            }
+            if (live) {
+                vocabulary.put(term.utf8ToString(), termId);
+                termId++;
+            }
+        }
+        for (int i = 0; i < maxDoc; i++) {
+            if (docTerms[i] != null && docTerms[i].length != docLength[i]) {
+                docTerms[i] = Arrays.copyOf(docTerms[i], docLength[i]);
+            }
+        }
+    }
+
+    /**
+     * Ritorna il vocabolario della lingua (termine, id del termine)
+     *
+     * @return vocabolario
+     */
+    public CharArrayMap<Integer> getVocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * Ritorna la dimensione del vocabolario
+     *
+     * @return numero di termini
+     */
+    public int getVocabularySize() {
+        return vocabulary.size();
+    }
+
+    /**
+     * Ritorna gli id dei termini distinti di un documento
+     *
+     * @param doc id lucene del documento
+     * @return id dei termini o null se il documento è cancellato o vuoto
+     */
+    int[] getDocTerms(int doc) {
+        return docTerms[doc];
+    }
+
+    /**
+     * Verifica se un documento è vivo (non cancellato)
+     *
+     * @param doc id lucene del documento
+     * @return true se il documento è vivo
+     */
+    boolean isLive(int doc) {
+        return liveDocs == null || liveDocs.get(doc);
+    }
+
+    /**
+     * Ritorna il numero massimo di documenti
+     *
+     * @return maxDoc del reader
+     */
+    int getMaxDoc() {
+        return maxDoc;
+    }
+
+    /**
+     * Ritorna il numero medio di termini unici per documento
+     *
+     * @return media dei termini unici
+     */
+    double getAvgNumberOfUniqueTerms() {
+        return avgNumberOfUniqueTerms;
+    }
+}
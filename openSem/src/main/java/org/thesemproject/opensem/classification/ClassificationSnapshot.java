@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.classification;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.index.SegmentInfos;
+import org.thesemproject.opensem.gui.LogGui;
+
+/**
+ * Snapshot binario dell'istruzione di una lingua.
+ *
+ * Contiene il vocabolario, l'elenco dei nodi aggiunti all'albero durante la
+ * lettura dell'indice (come percorso di nomi) e i modelli bayesiani compilati
+ * dei nodi istruiti, nello stesso ordine in cui sono stati istruiti. Lo
+ * snapshot è legato al commit dell'indice (generazione e id), al livello di
+ * partenza e al fattore K: se uno di questi cambia il motore ignora lo
+ * snapshot e reistruisce.
+ *
+ * In lettura il file viene mappato in memoria e gli array dei modelli sono
+ * copiati con operazioni di blocco.
+ *
+ * @since 1.9.3
+ */
+public class ClassificationSnapshot {
+
+    private static final int MAGIC = 0x53454D42; //SEMB
+    private static final int VERSION = 1;
+
+    private final CharArrayMap<Integer> vocabulary;
+    private final List<String[]> addedNodes;
+    private final List<String> trainedNodes;
+    private final List<BayesModel> models;
+
+    private ClassificationSnapshot(CharArrayMap<Integer> vocabulary, List<String[]> addedNodes, List<String> trainedNodes, List<BayesModel> models) {
+        this.vocabulary = vocabulary;
+        this.addedNodes = addedNodes;
+        this.trainedNodes = trainedNodes;
+        this.models = models;
+    }
+
+    /**
+     * Ritorna i nodi aggiunti all'albero durante l'istruzione. Ogni elemento è
+     * il percorso di nomi dal primo livello fino al nodo
+     *
+     * @return percorsi dei nodi aggiunti
+     */
+    public List<String[]> getAddedNodes() {
+        return addedNodes;
+    }
+
+    /**
+     * Ritorna i nomi dei nodi istruiti nell'ordine di istruzione
+     *
+     * @return nomi dei nodi
+     */
+    public List<String> getTrainedNodes() {
+        return trainedNodes;
+    }
+
+    /**
+     * Ritorna i modelli dei nodi istruiti (null se il nodo non ha modello)
+     *
+     * @return modelli nello stesso ordine di getTrainedNodes
+     */
+    public List<BayesModel> getModels() {
+        return models;
+    }
+
+    /**
+     * Ritorna il vocabolario della lingua
+     *
+     * @return vocabolario
+     */
+    public CharArrayMap<Integer> getVocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * Scrive lo snapshot di una lingua. Il file viene scritto su un file
+     * temporaneo e poi rinominato in modo da non lasciare snapshot parziali
+     *
+     * @param file file di destinazione
+     * @param commit commit dell'indice da cui è stata fatta l'istruzione
+     * @param startLevel livello di partenza della root
+     * @param k fattore K
+     * @param vocabulary vocabolario della lingua
+     * @param addedNodes percorsi dei nodi aggiunti all'albero
+     * @param trainedNodes nodi istruiti
+     * @param language lingua
+     */
+    public static void write(File file, SegmentInfos commit, int startLevel, int k, CharArrayMap<Integer> vocabulary, List<String[]> addedNodes, List<NodeData> trainedNodes, String language) {
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(commit.getGeneration());
+                out.write(commit.getId());
+                out.writeInt(startLevel);
+                out.writeInt(k);
+                String[] terms = new String[vocabulary.size()];
+                CharArrayMap<Integer>.EntryIterator it = vocabulary.entrySet().iterator();
+                while (it.hasNext()) {
+                    char[] term = it.nextKey();
+                    terms[it.currentValue()] = new String(term);
+                }
+                out.writeInt(terms.length);
+                for (String term : terms) {
+                    writeString(out, term);
+                }
+                out.writeInt(addedNodes.size());
+                for (String[] path : addedNodes) {
+                    out.writeInt(path.length);
+                    for (String name : path) {
+                        writeString(out, name);
+                    }
+                }
+                out.writeInt(trainedNodes.size());
+                for (NodeData node : trainedNodes) {
+                    writeString(out, node.nodeName);
+                    BayesModel model = node.getClassifier(language);
+                    out.writeBoolean(model != null);
+                    if (model != null) {
+                        model.write(out);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            LogGui.info("Snapshot written: " + file.getAbsolutePath());
+        } catch (Exception e) {
+            LogGui.printException(e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Legge lo snapshot di una lingua se è compatibile con l'indice corrente
+     *
+     * @param file file dello snapshot
+     * @param commit commit corrente dell'indice
+     * @param startLevel livello di partenza della root
+     * @param k fattore K
+     * @param textFieldName campo testo
+     * @param analyzer analizzatore sintattico della lingua
+     * @return snapshot oppure null se non esiste o non è più valido
+     */
+    public static ClassificationSnapshot read(File file, SegmentInfos commit, int startLevel, int k, String textFieldName, Analyzer analyzer) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                LogGui.info("Snapshot format not supported: " + file.getAbsolutePath());
+                return null;
+            }
+            long generation = in.getLong();
+            byte[] id = new byte[commit.getId().length];
+            in.get(id);
+            if (generation != commit.getGeneration() || !Arrays.equals(id, commit.getId()) || in.getInt() != startLevel || in.getInt() != k) {
+                LogGui.info("Snapshot out of date: " + file.getAbsolutePath());
+                return null;
+            }
+            int size = in.getInt();
+            CharArrayMap<Integer> vocabulary = new CharArrayMap<>(Math.max(size, 1), false);
+            for (int i = 0; i < size; i++) {
+                vocabulary.put(readString(in), i);
+            }
+            int added = in.getInt();
+            List<String[]> addedNodes = new ArrayList<>(added);
+            for (int i = 0; i < added; i++) {
+                String[] path = new String[in.getInt()];
+                for (int j = 0; j < path.length; j++) {
+                    path[j] = readString(in);
+                }
+                addedNodes.add(path);
+            }
+            int trained = in.getInt();
+            List<String> trainedNodes = new ArrayList<>(trained);
+            List<BayesModel> models = new ArrayList<>(trained);
+            for (int i = 0; i < trained; i++) {
+                trainedNodes.add(readString(in));
+                if (in.get() != 0) {
+                    models.add(BayesModel.read(in, vocabulary, textFieldName, analyzer));
+                } else {
+                    models.add(null);
+                }
+            }
+            return new ClassificationSnapshot(vocabulary, addedNodes, trainedNodes, models);
+        } catch (Exception e) {
+            LogGui.printException(e);
+        }
+        return null;
+    }
+
+    /**
+     * Scrive una stringa come lunghezza e caratteri
+     *
+     * @param out stream di output
+     * @param value stringa
+     * @throws IOException Eccezione di input/output
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeInt(value.length());
+        out.writeChars(value);
+    }
+
+    /**
+     * Legge una stringa scritta con writeString
+     *
+     * @param in buffer
+     * @return stringa
+     */
+    static String readString(ByteBuffer in) {
+        char[] chars = new char[in.getInt()];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + chars.length * Character.BYTES);
+        return new String(chars);
+    }
+}
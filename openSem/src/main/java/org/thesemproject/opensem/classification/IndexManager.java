@@ -26,6 +26,8 @@ import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.RAMDirectory;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -57,7 +59,9 @@ import org.thesemproject.opensem.utils.StringUtils;
  * memorizzati come sottocartelle nella cartella di struttura. Per ogni indice è
  * definito un set di stop words specifico (memorizzata nella cartella stopwords
  * denotro nella cartella di struttura) e una specifica sequenza di analizzatori
- * sintattici dipendenti dalla lingua
+ * sintattici dipendenti dalla lingua. Nella stessa cartella il file
+ * filter_[lingua].properties può ridefinire le regole del MyFilter per la
+ * lingua
  */
 public class IndexManager {
 
@@ -171,6 +175,16 @@ public class IndexManager {
      */
     public static final String LEVEL6_NAME = "level6Name";
 
+    /**
+     * Dimensione massima (in byte) predefinita di un indice aperto in lettura
+     * che viene copiato in memoria
+     *
+     * @since 1.9.3
+     */
+    public static final long DEFAULT_HEAP_INDEX_MAX_SIZE = 8L * 1024 * 1024;
+
+    private static volatile long heapIndexMaxSize = DEFAULT_HEAP_INDEX_MAX_SIZE;
+
     /**
      * Ritorna un tipo field, stored, not tokenized e indexed
      *
@@ -185,6 +199,68 @@ public class IndexManager {
         return keywordFieldType;
     }
 
+    /**
+     * Imposta la dimensione massima di un indice che viene copiato in memoria
+     * quando è aperto in lettura (vedi getReadDirectory)
+     *
+     * @param bytes dimensione massima in byte (0 per non copiare mai gli indici
+     * in memoria)
+     * @since 1.9.3
+     */
+    public static void setHeapIndexMaxSize(long bytes) {
+        heapIndexMaxSize = bytes;
+    }
+
+    /**
+     * Ritorna la dimensione massima di un indice che viene copiato in memoria
+     * quando è aperto in lettura
+     *
+     * @return dimensione massima in byte
+     * @since 1.9.3
+     */
+    public static long getHeapIndexMaxSize() {
+        return heapIndexMaxSize;
+    }
+
+    /**
+     * Apre la directory di un indice da usare in lettura.
+     *
+     * Gli indici piccoli (fino a getHeapIndexMaxSize byte) vengono copiati in
+     * una RAMDirectory, gli altri vengono letti direttamente dal disco con la
+     * directory scelta da FSDirectory.open (MMapDirectory sulle JVM a 64 bit):
+     * i file sono mappati in memoria e l'heap occupato dipende dalle parti
+     * dell'indice effettivamente lette, non dalla dimensione dell'indice.
+     *
+     * @param indexDir cartella dell'indice
+     * @return directory dell'indice
+     * @throws IOException Eccezione di input/output
+     * @since 1.9.3
+     */
+    public static Directory getReadDirectory(Path indexDir) throws IOException {
+        FSDirectory dir = FSDirectory.open(indexDir);
+        long maxSize = heapIndexMaxSize;
+        if (maxSize > 0 && getIndexSize(dir) <= maxSize) {
+            try {
+                return new RAMDirectory(dir, IOContext.READONCE);
+            } finally {
+                dir.close();
+            }
+        }
+        return dir;
+    }
+
+    private static long getIndexSize(Directory dir) throws IOException {
+        long size = 0;
+        for (String file : dir.listAll()) {
+            try {
+                size += dir.fileLength(file);
+            } catch (IOException e) {
+                //File cancellato nel frattempo (per esempio write.lock)
+            }
+        }
+        return size;
+    }
+
     /**
      * Aggiunge un documento all'indice
      *
@@ -448,6 +524,7 @@ public class IndexManager {
         try {
             String fileName = getStopWordPath(structurePath, language);
             File f = GuiUtils.writeCSV(fileName, stopWords);
+            AnalyzerRegistry.invalidate(f, language);
             return IndexManager.getAnalyzer(f, language);
         } catch (Exception ex) {
             LogGui.printException(ex);
@@ -561,7 +638,9 @@ public class IndexManager {
     }
 
     /**
-     * Ritorna l'analizzatore sintattico corretto per la lingua passata
+     * Ritorna l'analizzatore sintattico corretto per la lingua passata.
+     * L'analizzatore viene preso da AnalyzerRegistry e ricostruito solo se il
+     * file delle stop words è cambiato
      *
      * @param fStop file delle stopwords
      * @param language lingua
@@ -569,18 +648,47 @@ public class IndexManager {
      * @throws IOException Eccezione di input/output
      */
     public static MyAnalyzer getAnalyzer(File fStop, String language) throws IOException {
+        return AnalyzerRegistry.getAnalyzer(fStop, language);
+    }
+
+    /**
+     * Costruisce un nuovo analizzatore sintattico leggendo il file delle stop
+     * words
+     *
+     * @since 1.9.3
+     * @param fStop file delle stopwords
+     * @param language lingua
+     * @return analizzatore sintattico
+     * @throws IOException Eccezione di input/output
+     */
+    static MyAnalyzer buildAnalyzer(File fStop, String language) throws IOException {
         CharArraySet stopwords = new CharArraySet(1, true);
         stopwords.addAll(MyAnalyzer.getDefaultStopSet(language));
         if (fStop.exists()) {
             readStopWords(fStop, stopwords);
         }
+        MyFilter.Rules rules = MyFilter.Rules.read(getFilterRulesFile(fStop, language));
         if (stopwords.size() > 0) {
-            return new MyAnalyzer(language, stopwords);
+            return new MyAnalyzer(language, stopwords, rules);
         } else {
-            return new MyAnalyzer(language);
+            return new MyAnalyzer(language, MyAnalyzer.getDefaultStopSet(language), rules);
         }
     }
 
+    /**
+     * Ritorna il file con le regole del MyFilter di una lingua. Si trova
+     * nella cartella delle stop words e si chiama filter_[lingua].properties;
+     * se non esiste vengono usate le regole di default
+     *
+     * @since 1.9.3
+     * @param fStop file delle stopwords della lingua
+     * @param language lingua
+     * @return file delle regole
+     */
+    static File getFilterRulesFile(File fStop, String language) {
+        return new File(fStop.getAbsoluteFile().getParentFile(), "filter_" + language + ".properties");
+    }
+
     private static Document getDocument(String text, Document d, IndexWriter indexWriter) {
         try {
             String body = Tokenizer.tokenize(text, indexWriter.getAnalyzer());
@@ -927,6 +1035,21 @@ public class IndexManager {
         return structurePath.getAbsolutePath() + "/" + language;
     }
 
+    /**
+     * Ritorna il percorso dello snapshot dell'istruzione per una certa lingua
+     *
+     * @param structurePath percorso della struttura
+     * @param language lingua
+     * @return file dello snapshot
+     * @since 1.9.3
+     */
+    public static String getSnapshotPath(File structurePath, String language) {
+        if (structurePath == null) {
+            return null;
+        }
+        return structurePath.getAbsolutePath() + "/snapshot/" + language + ".bin";
+    }
+
     /**
      * Ritorna il percorso del file che contiene la struttura di classificazione
      *
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.classification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Classificatore KNN di un nodo basato sull'indice vettoriale della lingua.
+ *
+ * Considera solo i documenti che hanno un valore nel campo classe del nodo
+ * (come il filtro del KNearestNeighborClassifier di lucene), prende i K più
+ * simili e assegna la classe con lo stesso voto pesato di lucene: ogni
+ * documento vota la propria classe con la similarità divisa per la massima e
+ * la somma dei voti è divisa per K (o per il numero di documenti trovati se
+ * inferiore a K).
+ *
+ * @since 1.9.3
+ */
+public class KnnModel {
+
+    private final KnnVectorIndex index;
+    private final int k;
+    private final String[] classes;
+    private final FixedBitSet filter;
+    private final int[] classDocs;
+    private final int[] docClasses;
+
+    /**
+     * Istruisce il classificatore su un campo classe
+     *
+     * @param ar reader lucene
+     * @param index indice vettoriale della lingua
+     * @param classFieldName campo che contiene le classi
+     * @param k numero di vicini
+     * @throws IOException Eccezione di input/output
+     */
+    public KnnModel(LeafReader ar, KnnVectorIndex index, String classFieldName, int k) throws IOException {
+        this.index = index;
+        this.k = k;
+        this.filter = new FixedBitSet(Math.max(1, ar.maxDoc()));
+        List<String> names = new ArrayList<>();
+        int[] docs = new int[64];
+        int[] docClass = new int[64];
+        int size = 0;
+        Terms terms = ar.terms(classFieldName);
+        if (terms != null) {
+            Bits liveDocs = ar.getLiveDocs();
+            TermsEnum te = terms.iterator();
+            PostingsEnum pe = null;
+            BytesRef term;
+            while ((term = te.next()) != null) {
+                int c = names.size();
+                names.add(term.utf8ToString());
+                pe = te.postings(pe, PostingsEnum.NONE);
+                int doc;
+                while ((doc = pe.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    if ((liveDocs != null && !liveDocs.get(doc)) || filter.get(doc)) {
+                        continue; //Un documento vota solo per la prima classe (come il campo memorizzato)
+                    }
+                    filter.set(doc);
+                    if (size == docs.length) {
+                        docs = Arrays.copyOf(docs, size * 2);
+                        docClass = Arrays.copyOf(docClass, size * 2);
+                    }
+                    docs[size] = doc;
+                    docClass[size] = c;
+                    size++;
+                }
+            }
+        }
+        this.classes = names.toArray(new String[names.size()]);
+        //Ordina per documento per la ricerca binaria
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        final int[] unsorted = docs;
+        Arrays.sort(order, (a, b) -> Integer.compare(unsorted[a], unsorted[b]));
+        this.classDocs = new int[size];
+        this.docClasses = new int[size];
+        for (int i = 0; i < size; i++) {
+            classDocs[i] = docs[order[i]];
+            docClasses[i] = docClass[order[i]];
+        }
+    }
+
+    /**
+     * Ritorna la classe più votata
+     *
+     * @param text testo da classificare
+     * @return classe assegnata o null se non ci sono documenti simili
+     * @throws IOException Eccezione di input/output
+     */
+    public ClassificationResult<String> assignClass(String text) throws IOException {
+        List<ClassificationResult<String>> results = getClasses(index.tokenize(text));
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * Ritorna le classi dei K documenti più simili ordinate per punteggio
+     * decrescente
+     *
+     * @param tokens id dei termini (vedi KnnVectorIndex.tokenize)
+     * @return lista dei risultati
+     */
+    public List<ClassificationResult<String>> getClasses(int[] tokens) {
+        List<ClassificationResult<String>> ret = new ArrayList<>();
+        if (classDocs.length == 0) {
+            return ret;
+        }
+        TopDocs topDocs = index.search(tokens, filter, k);
+        if (topDocs.scoreDocs.length == 0) {
+            return ret;
+        }
+        double[] boosts = new double[classes.length];
+        int[] counts = new int[classes.length];
+        float maxScore = topDocs.getMaxScore();
+        int sumDocs = 0;
+        for (ScoreDoc sd : topDocs.scoreDocs) {
+            int pos = Arrays.binarySearch(classDocs, sd.doc);
+            if (pos < 0) {
+                continue;
+            }
+            int c = docClasses[pos];
+            counts[c]++;
+            boosts[c] += sd.score / maxScore;
+            sumDocs++;
+        }
+        double norm = (sumDocs < k) ? sumDocs : k;
+        for (int c = 0; c < classes.length; c++) {
+            if (counts[c] > 0) {
+                ret.add(new ClassificationResult<>(classes[c], boosts[c] / norm));
+            }
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Ritorna il numero di documenti classificati del nodo
+     *
+     * @return numero di documenti
+     */
+    public int getDocumentsCount() {
+        return classDocs.length;
+    }
+
+    /**
+     * Ritorna il numero di vicini
+     *
+     * @return K
+     */
+    public int getK() {
+        return k;
+    }
+}
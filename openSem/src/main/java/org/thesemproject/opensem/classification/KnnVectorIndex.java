@@ -0,0 +1,352 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.classification;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Indice vettoriale TF-IDF dei documenti di istruzione di una lingua.
+ *
+ * Ogni documento vivo dell'indice è un vettore sparso normalizzato con peso
+ * (1 + log(tf)) * idf sui termini del vocabolario della lingua. I vettori sono
+ * memorizzati come liste invertite (per ogni termine i documenti e i pesi) in
+ * array primitivi. La ricerca dei K documenti più simili (coseno) scorre le
+ * liste dei termini della query in ordine di contributo massimo decrescente e
+ * smette di accettare nuovi candidati quando nessun documento non ancora visto
+ * può più entrare tra i primi K oppure quando è stato raggiunto il budget di
+ * candidati.
+ *
+ * @since 1.9.3
+ */
+public class KnnVectorIndex {
+
+    /**
+     * Budget di default dei candidati per ricerca
+     */
+    public static final int DEFAULT_CANDIDATES = 10000;
+
+    private final Analyzer analyzer;
+    private final String textFieldName;
+    private final CharArrayMap<Integer> vocabulary;
+    private final int maxDoc;
+    private final int[][] postingDocs;
+    private final float[][] postingWeights;
+    private final float[] idf;
+    private final float[] maxWeights;
+    private final ThreadLocal<Scratch> scratch;
+    private volatile int candidates;
+
+    /**
+     * Costruisce l'indice vettoriale leggendo le posting list del campo testo
+     *
+     * @param ar reader lucene
+     * @param textFieldName campo testo
+     * @param vocabulary vocabolario della lingua (termine, id)
+     * @param analyzer analizzatore sintattico della lingua
+     * @throws IOException Eccezione di input/output
+     */
+    public KnnVectorIndex(LeafReader ar, String textFieldName, CharArrayMap<Integer> vocabulary, Analyzer analyzer) throws IOException {
+        this.analyzer = analyzer;
+        this.textFieldName = textFieldName;
+        this.vocabulary = vocabulary;
+        this.maxDoc = ar.maxDoc();
+        this.candidates = DEFAULT_CANDIDATES;
+        int size = vocabulary.size();
+        this.postingDocs = new int[size][];
+        this.postingWeights = new float[size][];
+        this.idf = new float[size];
+        this.maxWeights = new float[size];
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(maxDoc));
+        Terms terms = ar.terms(textFieldName);
+        if (terms == null) {
+            return;
+        }
+        Bits liveDocs = ar.getLiveDocs();
+        double numDocs = Math.max(1, ar.numDocs());
+        double[] norms = new double[maxDoc];
+        TermsEnum te = terms.iterator();
+        PostingsEnum pe = null;
+        CharsRefBuilder chars = new CharsRefBuilder();
+        int[] docs = new int[64];
+        int[] freqs = new int[64];
+        BytesRef term;
+        while ((term = te.next()) != null) {
+            chars.copyUTF8Bytes(term);
+            Integer termId = vocabulary.get(chars.chars(), 0, chars.length());
+            if (termId == null) {
+                continue;
+            }
+            pe = te.postings(pe, PostingsEnum.FREQS);
+            int df = 0;
+            int doc;
+            while ((doc = pe.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                if (df == docs.length) {
+                    docs = Arrays.copyOf(docs, df * 2);
+                    freqs = Arrays.copyOf(freqs, df * 2);
+                }
+                docs[df] = doc;
+                freqs[df] = pe.freq();
+                df++;
+            }
+            float termIdf = (float) (Math.log(numDocs / df) + 1);
+            float[] weights = new float[df];
+            for (int i = 0; i < df; i++) {
+                weights[i] = (float) (1 + Math.log(freqs[i])) * termIdf;
+                norms[docs[i]] += weights[i] * weights[i];
+            }
+            idf[termId] = termIdf;
+            postingDocs[termId] = Arrays.copyOf(docs, df);
+            postingWeights[termId] = weights;
+        }
+        for (int t = 0; t < size; t++) {
+            int[] tDocs = postingDocs[t];
+            if (tDocs == null) {
+                postingDocs[t] = new int[0];
+                postingWeights[t] = new float[0];
+                continue;
+            }
+            float[] weights = postingWeights[t];
+            float max = 0;
+            for (int i = 0; i < tDocs.length; i++) {
+                weights[i] = (float) (weights[i] / Math.sqrt(norms[tDocs[i]]));
+                max = Math.max(max, weights[i]);
+            }
+            maxWeights[t] = max;
+        }
+    }
+
+    /**
+     * Imposta il numero massimo di documenti candidati valutati per ogni
+     * ricerca. Raggiunto il budget i documenti già candidati continuano ad
+     * essere valutati ma non ne vengono accettati di nuovi
+     *
+     * @param candidates budget dei candidati
+     */
+    public void setCandidates(int candidates) {
+        this.candidates = Math.max(1, candidates);
+    }
+
+    /**
+     * Ritorna il budget dei candidati
+     *
+     * @return budget dei candidati
+     */
+    public int getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Ritorna il vocabolario della lingua
+     *
+     * @return vocabolario
+     */
+    public CharArrayMap<Integer> getVocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * Traduce un testo negli id dei termini del vocabolario
+     *
+     * @param text testo
+     * @return id dei termini (-1 per i termini sconosciuti)
+     * @throws IOException Eccezione di input/output
+     */
+    public int[] tokenize(String text) throws IOException {
+        int[] ret = new int[32];
+        int size = 0;
+        try (TokenStream tokenStream = analyzer.tokenStream(textFieldName, text)) {
+            CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                Integer id = vocabulary.get(charTermAttribute.buffer(), 0, charTermAttribute.length());
+                if (size == ret.length) {
+                    ret = Arrays.copyOf(ret, size * 2);
+                }
+                ret[size++] = (id == null) ? -1 : id;
+            }
+            tokenStream.end();
+        }
+        return Arrays.copyOf(ret, size);
+    }
+
+    /**
+     * Cerca i K documenti più simili (coseno) alla query
+     *
+     * @param tokens id dei termini della query
+     * @param filter documenti ammessi (null per tutti)
+     * @param k numero di documenti da ritornare
+     * @return documenti ordinati per similarità decrescente
+     */
+    public TopDocs search(int[] tokens, FixedBitSet filter, int k) {
+        //Vettore della query
+        int[] ids = tokens.clone();
+        Arrays.sort(ids);
+        int n = 0;
+        int[] qTerms = new int[ids.length];
+        float[] qWeights = new float[ids.length];
+        for (int i = 0; i < ids.length;) {
+            int j = i;
+            while (j < ids.length && ids[j] == ids[i]) {
+                j++;
+            }
+            if (ids[i] >= 0 && postingDocs[ids[i]].length > 0) {
+                qTerms[n] = ids[i];
+                qWeights[n] = (float) (1 + Math.log(j - i)) * idf[ids[i]];
+                n++;
+            }
+            i = j;
+        }
+        if (n == 0 || k <= 0) {
+            return new TopDocs(0, new ScoreDoc[0], Float.NaN);
+        }
+        double qNorm = 0;
+        for (int i = 0; i < n; i++) {
+            qNorm += qWeights[i] * qWeights[i];
+        }
+        qNorm = Math.sqrt(qNorm);
+        //Ordine per contributo massimo decrescente
+        Integer[] order = new Integer[n];
+        float[] bounds = new float[n];
+        for (int i = 0; i < n; i++) {
+            qWeights[i] = (float) (qWeights[i] / qNorm);
+            bounds[i] = qWeights[i] * maxWeights[qTerms[i]];
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(bounds[b], bounds[a]));
+        //remaining[o] = punteggio massimo ottenibile con i termini successivi a o
+        double[] remaining = new double[n];
+        for (int o = n - 2; o >= 0; o--) {
+            remaining[o] = remaining[o + 1] + bounds[order[o + 1]];
+        }
+        Scratch s = scratch.get();
+        int stamp = s.next();
+        int touched = 0;
+        boolean admitting = true;
+        int budget = candidates;
+        for (int o = 0; o < n; o++) {
+            int q = order[o];
+            float qw = qWeights[q];
+            int[] docs = postingDocs[qTerms[q]];
+            float[] weights = postingWeights[qTerms[q]];
+            for (int i = 0; i < docs.length; i++) {
+                int doc = docs[i];
+                if (s.stamps[doc] == stamp) {
+                    s.scores[doc] += qw * weights[i];
+                } else if (admitting && (filter == null || filter.get(doc))) {
+                    s.stamps[doc] = stamp;
+                    s.scores[doc] = qw * weights[i];
+                    s.touched[touched++] = doc;
+                    if (touched == budget) {
+                        admitting = false;
+                    }
+                }
+            }
+            //Se nessun documento non ancora visto può superare il K-esimo si smette di accettare candidati
+            if (admitting && touched >= k && o < n - 1) {
+                if (remaining[o] < kth(s, touched, k)) {
+                    admitting = false;
+                }
+            }
+        }
+        return top(s, touched, k);
+    }
+
+    private static float kth(Scratch s, int touched, int k) {
+        PriorityQueue<Float> heap = new PriorityQueue<>(k);
+        for (int i = 0; i < touched; i++) {
+            float score = s.scores[s.touched[i]];
+            if (heap.size() < k) {
+                heap.add(score);
+            } else if (score > heap.peek()) {
+                heap.poll();
+                heap.add(score);
+            }
+        }
+        return heap.peek();
+    }
+
+    private static TopDocs top(Scratch s, int touched, int k) {
+        //A parità di punteggio vince il documento con id minore (come lucene)
+        PriorityQueue<ScoreDoc> heap = new PriorityQueue<>(k, (a, b) -> (a.score != b.score) ? Float.compare(a.score, b.score) : Integer.compare(b.doc, a.doc));
+        for (int i = 0; i < touched; i++) {
+            int doc = s.touched[i];
+            float score = s.scores[doc];
+            if (heap.size() < k) {
+                heap.add(new ScoreDoc(doc, score));
+            } else {
+                ScoreDoc min = heap.peek();
+                if (score > min.score || (score == min.score && doc < min.doc)) {
+                    heap.poll();
+                    heap.add(new ScoreDoc(doc, score));
+                }
+            }
+        }
+        ScoreDoc[] ret = new ScoreDoc[heap.size()];
+        for (int i = ret.length - 1; i >= 0; i--) {
+            ret[i] = heap.poll();
+        }
+        return new TopDocs(touched, ret, ret.length > 0 ? ret[0].score : Float.NaN);
+    }
+
+    /**
+     * Spazio di lavoro di una ricerca. Viene riutilizzato dal thread: i
+     * documenti già visti nella ricerca corrente sono marcati con il numero
+     * della ricerca per non dover azzerare gli array
+     */
+    private static class Scratch {
+
+        private final float[] scores;
+        private final int[] stamps;
+        private final int[] touched;
+        private int stamp;
+
+        private Scratch(int maxDoc) {
+            this.scores = new float[maxDoc];
+            this.stamps = new int[maxDoc];
+            this.touched = new int[maxDoc];
+            this.stamp = 0;
+        }
+
+        private int next() {
+            stamp++;
+            if (stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+}
@@ -25,7 +25,6 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.index.SlowCompositeReaderWrapper;
 
@@ -33,16 +32,21 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.util.CharArrayMap;
 import org.apache.lucene.analysis.util.CharArraySet;
 import org.apache.lucene.classification.KNearestNeighborClassifier;
-import org.apache.lucene.classification.SimpleNaiveBayesClassifier;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.StringField;
@@ -50,11 +54,11 @@ import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Bits;
 import org.apache.poi.xssf.streaming.SXSSFRow;
 import org.apache.poi.xssf.streaming.SXSSFSheet;
@@ -98,16 +102,20 @@ public class MulticlassEngine {
     private final Map<String, IndexReader> readers;
     private boolean isInit;
     private File structurePath;
+    private int trainingThreads;
+    private boolean vectorKnn;
+    private int knnCandidates;
 
     private final InternPool intern;
 
+    private static final String[] LEVEL_NAMES = {IndexManager.LEVEL1_NAME, IndexManager.LEVEL2_NAME, IndexManager.LEVEL3_NAME, IndexManager.LEVEL4_NAME, IndexManager.LEVEL5_NAME, IndexManager.LEVEL6_NAME};
+    private static final Set<String> LEVEL_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(LEVEL_NAMES)));
+
     /**
      * Costruisce il motore
      */
     public MulticlassEngine() {
-        intern = new InternPool();
-        analyzers = new HashMap<>();
-        readers = new HashMap<>();
+        this(new InternPool());
     }
 
     /**
@@ -117,8 +125,55 @@ public class MulticlassEngine {
      */
     public MulticlassEngine(InternPool intern) {
         this.intern = intern;
-        analyzers = new HashMap<>();
-        readers = new HashMap<>();
+        analyzers = new ConcurrentHashMap<>();
+        readers = new ConcurrentHashMap<>();
+        trainingThreads = Runtime.getRuntime().availableProcessors();
+        vectorKnn = false;
+        knnCandidates = KnnVectorIndex.DEFAULT_CANDIDATES;
+    }
+
+    /**
+     * Imposta il numero massimo di thread usati per istruire il motore
+     *
+     * @since 1.9.3
+     * @param trainingThreads numero di thread (default: numero di processori)
+     */
+    public void setTrainingThreads(int trainingThreads) {
+        this.trainingThreads = trainingThreads;
+    }
+
+    /**
+     * Attiva il KNN vettoriale: in init viene costruito per ogni lingua un
+     * indice TF-IDF dei documenti di istruzione e knnClassify usa la ricerca
+     * top-K su questo indice invece delle query MoreLikeThis di lucene. Ha
+     * effetto alla successiva init
+     *
+     * @since 1.9.3
+     * @param vectorKnn true per attivare il KNN vettoriale
+     */
+    public void setVectorKnn(boolean vectorKnn) {
+        this.vectorKnn = vectorKnn;
+    }
+
+    /**
+     * Ritorna true se il KNN vettoriale è attivo
+     *
+     * @since 1.9.3
+     * @return true se il KNN vettoriale è attivo
+     */
+    public boolean isVectorKnn() {
+        return vectorKnn;
+    }
+
+    /**
+     * Imposta il budget di documenti candidati valutati da ogni ricerca del
+     * KNN vettoriale. Ha effetto alla successiva init
+     *
+     * @since 1.9.3
+     * @param knnCandidates budget dei candidati
+     */
+    public void setKnnCandidates(int knnCandidates) {
+        this.knnCandidates = knnCandidates;
     }
 
     /**
@@ -188,23 +243,47 @@ public class MulticlassEngine {
                 root = new NodeData(level, k, intern); //Root
             }
 
-            cats = new HashSet<>();
+            cats = ConcurrentHashMap.newKeySet();
+            if (isInit) {
+                closeAllReaders();
+            }
+            isInit = false;
+            //Le lingue sono lette e istruite in parallelo, i nodi di ogni lingua anche.
+            //Le categorie sono invece inserite nell'albero condiviso da un solo thread,
+            //nell'ordine delle lingue: l'albero è lo stesso a ogni init
+            final int startLevel = level;
+            TrainingScheduler scheduler = new TrainingScheduler(trainingThreads);
+            List<Callable<LanguageInit>> tasks = new ArrayList<>();
             for (String language : MyAnalyzer.languages) {
                 String indexFolder = getIndexFolder(language);
                 String stopWords = getStopWordPath(language);
                 File fIndex = new File(indexFolder);
-                File fStop = new File(stopWords);
                 if (fIndex.exists()) {
                     if (fIndex.listFiles().length > 0) {
-
-                        try {
-                            ret = ret && init(indexFolder, stopWords, language, level, k, reindex);
-                        } catch (Exception e) {
-                            LogGui.printException(e);
-                        }
+                        tasks.add(() -> read(indexFolder, stopWords, language, startLevel, k, reindex));
                     }
                 }
             }
+            long start = System.currentTimeMillis();
+            List<Callable<Boolean>> trainTasks = new ArrayList<>();
+            for (LanguageInit li : scheduler.invokeAll(tasks)) { //Nell'ordine delle lingue
+                if (li == null) {
+                    ret = false;
+                    continue;
+                }
+                try {
+                    buildTree(li, k);
+                    trainTasks.add(() -> train(li, startLevel, k, scheduler));
+                } catch (Exception e) {
+                    LogGui.printException(e);
+                    ret = false;
+                }
+            }
+            for (Boolean languageRet : scheduler.invokeAll(trainTasks)) {
+                ret = ret && languageRet;
+            }
+            scheduler.shutdown();
+            LogGui.info("Trained " + scheduler.getCompleted() + " nodes in " + (System.currentTimeMillis() - start) + " ms");
 
             org.jdom2.Document document = NodeData.getDocument(root);
             GuiUtils.storeXml(document, structueFileName);
@@ -216,154 +295,183 @@ public class MulticlassEngine {
         }
     }
 
-    private boolean init(String index, String stop, String language, int startLevel, int k, boolean needReindex) {
+    /**
+     * Apre l'indice di una lingua. Se l'indice non è cambiato dall'ultima
+     * istruzione legge lo snapshot, altrimenti legge i percorsi delle
+     * categorie dei documenti. Non modifica l'albero: viene eseguito in
+     * parallelo per tutte le lingue
+     *
+     * @return stato della lingua o null in caso di errore
+     */
+    private LanguageInit read(String index, String stop, String language, int startLevel, int k, boolean needReindex) {
         try {
-
-            // List<Document> reindexDoc = new ArrayList<>();
-            IndexReader reader = readers.get(language);
-            if (isInit) {
-                closeReader(reader);
-            }
-            isInit = false;
-            reader = DirectoryReader.open(getFolderDir(index));
+            DirectoryReader reader = DirectoryReader.open(getFolderDir(index));
             readers.put(language, reader);
-            final LeafReader ar = SlowCompositeReaderWrapper.wrap(reader);
             MyAnalyzer analyzer = IndexManager.getAnalyzer(new File(stop), language);
             analyzers.put(language, analyzer);
-            final int maxdoc = reader.maxDoc();
             LogGui.info("Init language: " + language);
-            LogGui.info("Documents: " + maxdoc);
-            LogGui.info("Start training NaiveBayes and KNN");
-            LogGui.info("Read documents from idx to build the tree...");
-            LogGui.info("Train root...");
-            root.train(ar, analyzer, language);
-            LogGui.info("Read all example dataset");
-            HashSet categories = new HashSet<>();
-            Bits liveDocs = MultiFields.getLiveDocs(reader);
-            LogGui.info("Apro l'indice...");
-            IndexWriter indexWriter = null;
-            File origin = new File(index);
-            String pathOrigin = origin.getAbsolutePath();
-            String pathNew = pathOrigin + ".new." + System.currentTimeMillis();
-            String pathBackup = pathOrigin + ".bck." + System.currentTimeMillis();
+            LogGui.info("Documents: " + reader.maxDoc());
             if (needReindex) {
-                LogGui.info("Creo il nuovo indice in: " + pathNew + " leggendo dall'indice in : " + pathOrigin);
-                File fNew = new File(pathNew);
-                fNew.mkdirs();
-                indexWriter = getIndexWriter(Paths.get(pathNew), new File(stop), language, false, IndexWriterConfig.OpenMode.CREATE);
+                reindex(reader, index, stop, language, analyzer);
+                LogGui.info("Re-Init...");
+                return read(index, stop, language, startLevel, k, false);
             }
-            FieldType ft = getNotTokenizedFieldType();
-            for (int i = 0; i < maxdoc; i++) {
-                if (liveDocs != null && !liveDocs.get(i)) {
-                    continue;
-                }
-                Document doc = ar.document(i);
-                if (doc.get(IndexManager.UUID) == null) {
-                    doc.add(new StringField(UUID, java.util.UUID.randomUUID().toString(), Field.Store.YES));
-                }
-                if (needReindex) {
-                    reindexDoc(doc, ft, analyzer, indexWriter);
-                    if (i % 100 == 0) {
-                        LogGui.info("Reindex Commit... " + i);
-                        indexWriter.commit();
-                    }
-                } else {
-                    String level1 = (String) intern.intern(doc.get(IndexManager.LEVEL1_NAME));
-                    if (level1 != null) {
-                        if (!categories.contains(level1)) { //Nuova categoria di livello 1
-                            addNode(ar, analyzer, root, categories, level1, k, language);
-                        }
-                        String level2 = (String) intern.intern(doc.get(IndexManager.LEVEL2_NAME));
-                        if (level2 != null) {
-                            if (!categories.contains(level2)) { //Nuova categoria di livello 2
-                                NodeData parent = root.getNode(level1);
-                                addNode(ar, analyzer, parent, categories, level2, k, language);
-                            }
-                            String level3 = (String) intern.intern(doc.get(IndexManager.LEVEL3_NAME));
-                            if (level3 != null) {
-                                if (!categories.contains(level3)) { //Nuova categoria di livello 3
-                                    NodeData p1 = root.getNode(level1);
-                                    if (p1 != null) {
-                                        NodeData p2 = p1.getNode(level2);
-                                        addNode(ar, analyzer, p2, categories, level3, k, language);
-                                    }
-                                }
-                                String level4 = (String) intern.intern(doc.get(IndexManager.LEVEL4_NAME));
-                                if (level4 != null) {
-                                    if (!categories.contains(level4)) { //Nuova categoria di livello 4
-                                        NodeData p1 = root.getNode(level1);
-                                        if (p1 != null) {
-                                            NodeData p2 = p1.getNode(level2);
-                                            if (p2 != null) {
-                                                NodeData p3 = p2.getNode(level3);
-                                                addNode(ar, analyzer, p3, categories, level4, k, language);
-                                            }
-                                        }
-                                    }
-                                    String level5 = (String) intern.intern(doc.get(IndexManager.LEVEL5_NAME));
-                                    if (level5 != null) {
-                                        if (!categories.contains(level5)) { //Nuova categoria di livello 5
-                                            NodeData p1 = root.getNode(level1);
-                                            if (p1 != null) {
-                                                NodeData p2 = p1.getNode(level2);
-                                                if (p2 != null) {
-                                                    NodeData p3 = p2.getNode(level3);
-                                                    if (p3 != null) {
-                                                        NodeData p4 = p3.getNode(level4);
-                                                        addNode(ar, analyzer, p4, categories, level5, k, language);
-                                                    }
-                                                }
-                                            }
-                                        }
-                                        String level6 = (String) intern.intern(doc.get(IndexManager.LEVEL6_NAME));
-                                        if (level6 != null) {
-                                            if (!categories.contains(level6)) { //Nuova categoria di livello 6
-                                                NodeData p1 = root.getNode(level1);
-                                                if (p1 != null) {
-                                                    NodeData p2 = p1.getNode(level2);
-                                                    if (p2 != null) {
-                                                        NodeData p3 = p2.getNode(level3);
-                                                        if (p3 != null) {
-                                                            NodeData p4 = p3.getNode(level4);
-                                                            if (p4 != null) {
-                                                                NodeData p5 = p4.getNode(level5);
-                                                                addNode(ar, analyzer, p5, categories, level6, k, language);
-                                                            }
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    if (i % 1000 == 0) {
-                        LogGui.info("Read Progress... " + i);
+            File snapshotFile = new File(IndexManager.getSnapshotPath(structurePath, language));
+            SegmentInfos commit = SegmentInfos.readCommit(reader.directory(), reader.getIndexCommit().getSegmentsFileName());
+            LanguageInit li = new LanguageInit(language, reader, analyzer, commit, snapshotFile);
+            //Se l'indice non è cambiato dall'ultima istruzione si riparte dallo snapshot
+            li.snapshot = ClassificationSnapshot.read(snapshotFile, commit, startLevel, k, IndexManager.BODY, analyzer);
+            if (li.snapshot == null) {
+                readPaths(li);
+            }
+            return li;
+        } catch (Exception e) {
+            LogGui.printException(e);
+        }
+        return null;
+    }
+
+    /**
+     * Legge il training set e i percorsi distinti delle categorie dei
+     * documenti nell'ordine dell'indice
+     */
+    private void readPaths(LanguageInit li) throws IOException {
+        LogGui.info("Start training NaiveBayes and KNN");
+        LogGui.info("Build training set...");
+        li.trainingSet = new BayesTrainingSet(li.ar, IndexManager.BODY);
+        LogGui.info("Read documents from idx to build the tree...");
+        li.paths = new ArrayList<>();
+        Set<List<String>> distinct = new HashSet<>();
+        Bits liveDocs = MultiFields.getLiveDocs(li.reader);
+        final int maxdoc = li.reader.maxDoc();
+        for (int i = 0; i < maxdoc; i++) {
+            if (liveDocs != null && !liveDocs.get(i)) {
+                continue;
+            }
+            String[] path = getPath(li.ar.document(i, LEVEL_FIELDS));
+            if (path.length > 0 && distinct.add(Arrays.asList(path))) {
+                li.paths.add(path);
+            }
+            if (i % 1000 == 0) {
+                LogGui.info("Read Progress... " + i);
+            }
+        }
+    }
+
+    /**
+     * Ritorna il percorso delle categorie di un documento (dal livello 1 fino
+     * al primo livello vuoto)
+     */
+    private String[] getPath(Document doc) {
+        List<String> path = new ArrayList<>(LEVEL_NAMES.length);
+        for (String field : LEVEL_NAMES) {
+            String level = doc.get(field);
+            if (level == null) {
+                break;
+            }
+            path.add(intern.intern(level));
+        }
+        return path.toArray(new String[path.size()]);
+    }
+
+    /**
+     * Reindicizza l'indice di una lingua in un nuovo indice che prende il
+     * posto di quello originale (che viene conservato come backup)
+     */
+    private void reindex(DirectoryReader reader, String index, String stop, String language, MyAnalyzer analyzer) throws Exception {
+        final LeafReader ar = SlowCompositeReaderWrapper.wrap(reader);
+        Bits liveDocs = MultiFields.getLiveDocs(reader);
+        LogGui.info("Apro l'indice...");
+        File origin = new File(index);
+        String pathOrigin = origin.getAbsolutePath();
+        String pathNew = pathOrigin + ".new." + System.currentTimeMillis();
+        String pathBackup = pathOrigin + ".bck." + System.currentTimeMillis();
+        LogGui.info("Creo il nuovo indice in: " + pathNew + " leggendo dall'indice in : " + pathOrigin);
+        File fNew = new File(pathNew);
+        fNew.mkdirs();
+        IndexWriter indexWriter = getIndexWriter(Paths.get(pathNew), new File(stop), language, false, IndexWriterConfig.OpenMode.CREATE);
+        FieldType ft = getNotTokenizedFieldType();
+        final int maxdoc = reader.maxDoc();
+        for (int i = 0; i < maxdoc; i++) {
+            if (liveDocs != null && !liveDocs.get(i)) {
+                continue;
+            }
+            Document doc = ar.document(i);
+            if (doc.get(IndexManager.UUID) == null) {
+                doc.add(new StringField(UUID, java.util.UUID.randomUUID().toString(), Field.Store.YES));
+            }
+            reindexDoc(doc, ft, analyzer, indexWriter);
+            if (i % 100 == 0) {
+                LogGui.info("Reindex Commit... " + i);
+                indexWriter.commit();
+            }
+        }
+        indexWriter.commit();
+        indexWriter.flush();
+        LogGui.info("Close index...");
+        indexWriter.close();
+        closeReader(reader);
+        LogGui.info("Index written");
+        LogGui.info("Rename index...");
+        File backup = new File(pathBackup);
+        File originName = new File(origin.getAbsolutePath());
+        origin.renameTo(backup);
+        File newFile = new File(pathNew);
+        newFile.renameTo(originName);
+    }
+
+    /**
+     * Inserisce nell'albero le categorie di una lingua (dallo snapshot o dai
+     * percorsi letti dall'indice). Viene eseguito per una lingua alla volta,
+     * nell'ordine delle lingue
+     */
+    private void buildTree(LanguageInit li, int k) throws Exception {
+        if (li.snapshot != null) {
+            if (restoreTree(li, k)) {
+                return;
+            }
+            li.snapshot = null;
+            li.toTrain.clear();
+            li.categories.clear();
+            readPaths(li);
+        }
+        li.toTrain.add(root);
+        for (String[] path : li.paths) {
+            for (int level = 1; level <= path.length; level++) {
+                if (!li.categories.contains(path[level - 1])) { //Nuova categoria
+                    NodeData parent = root;
+                    for (int i = 0; i < level - 1 && parent != null; i++) {
+                        parent = parent.getNode(path[i]);
                     }
+                    addNode(li.toTrain, li.added, parent, li.categories, k, li.language, Arrays.copyOf(path, level));
                 }
             }
+        }
+        li.paths = null;
+    }
 
-            if (needReindex) {
-                indexWriter.commit();
-                indexWriter.flush();
-                LogGui.info("Close index...");
-                indexWriter.close();
-                closeReader(reader);
-                LogGui.info("Index written");
-                LogGui.info("Rename index...");
-                File backup = new File(pathBackup);
-                File originName = new File(origin.getAbsolutePath());
-                origin.renameTo(backup);
-                File newFile = new File(pathNew);
-                newFile.renameTo(originName);
-                LogGui.info("Re-Init...");
-                return init(index, stop, language, startLevel, k, false);
+    /**
+     * Istruisce (o ripristina dallo snapshot) i nodi di una lingua. Viene
+     * eseguito in parallelo per tutte le lingue
+     *
+     * @return true se la lingua è istruita
+     */
+    private boolean train(LanguageInit li, int startLevel, int k, TrainingScheduler scheduler) {
+        try {
+            if (li.snapshot != null) {
+                KnnVectorIndex vectors = getVectorIndex(li.ar, li.snapshot.getVocabulary(), li.analyzer);
+                List<BayesModel> models = li.snapshot.getModels();
+                for (int i = 0; i < li.toTrain.size(); i++) {
+                    li.toTrain.get(i).restore(li.ar, models.get(i), vectors, li.analyzer, li.language);
+                }
+                LogGui.info("Restored " + li.toTrain.size() + " nodes for language " + li.language);
             } else {
+                LogGui.info("Train " + li.toTrain.size() + " nodes for language: " + li.language);
+                scheduler.trainNodes(li.toTrain, li.ar, li.trainingSet, getVectorIndex(li.ar, li.trainingSet.getVocabulary(), li.analyzer), li.analyzer, li.language);
                 LogGui.info("End training");
-                this.cats.addAll(categories);
+                ClassificationSnapshot.write(li.snapshotFile, li.commit, startLevel, k, li.trainingSet.getVocabulary(), li.added, li.toTrain, li.language);
             }
+            this.cats.addAll(li.categories);
             return true;
         } catch (Exception e) {
             LogGui.printException(e);
@@ -386,7 +494,7 @@ public class MulticlassEngine {
             String index = getIndexFolder(language);
             File fIndex = new File(index);
             if (fIndex.exists()) {
-                IndexReader reader = DirectoryReader.open(getFolderDir(index));
+                DirectoryReader reader = DirectoryReader.open(getFolderDir(index));
                 final LeafReader ar = SlowCompositeReaderWrapper.wrap(reader);
                 Bits liveDocs = MultiFields.getLiveDocs(reader);
                 final int maxdoc = reader.maxDoc();
@@ -400,22 +508,22 @@ public class MulticlassEngine {
                     row[0] = doc.get(IndexManager.UUID);
                     row[1] = doc.get(IndexManager.BODY);
                     row[2] = doc.get(IndexManager.TEXT);
-                    String level1 = (String) intern.intern(doc.get(IndexManager.LEVEL1_NAME));
+                    String level1 = intern.intern(doc.get(IndexManager.LEVEL1_NAME));
                     row[3] = level1;
                     if (level1 != null) {
-                        String level2 = (String) intern.intern(doc.get(IndexManager.LEVEL2_NAME));
+                        String level2 = intern.intern(doc.get(IndexManager.LEVEL2_NAME));
                         if (level2 != null) {
                             row[4] = level2;
-                            String level3 = (String) intern.intern(doc.get(IndexManager.LEVEL3_NAME));
+                            String level3 = intern.intern(doc.get(IndexManager.LEVEL3_NAME));
                             if (level3 != null) {
                                 row[5] = level3;
-                                String level4 = (String) intern.intern(doc.get(IndexManager.LEVEL4_NAME));
+                                String level4 = intern.intern(doc.get(IndexManager.LEVEL4_NAME));
                                 if (level4 != null) {
                                     row[6] = level4;
-                                    String level5 = (String) intern.intern(doc.get(IndexManager.LEVEL5_NAME));
+                                    String level5 = intern.intern(doc.get(IndexManager.LEVEL5_NAME));
                                     if (level5 != null) {
                                         row[7] = level5;
-                                        String level6 = (String) intern.intern(doc.get(IndexManager.LEVEL6_NAME));
+                                        String level6 = intern.intern(doc.get(IndexManager.LEVEL6_NAME));
                                         if (level6 != null) {
                                             row[8] = level6;
                                         }
@@ -429,7 +537,7 @@ public class MulticlassEngine {
                     }
                     rows.add(row);
                 }
-                reader.close();
+                closeReader(reader);
             }
         } catch (Exception e) {
             LogGui.printException(e);
@@ -450,7 +558,7 @@ public class MulticlassEngine {
         try {
             int rownum = 1;
             String index = getIndexFolder(language);
-            IndexReader reader = DirectoryReader.open(getFolderDir(index));
+            DirectoryReader reader = DirectoryReader.open(getFolderDir(index));
             final LeafReader ar = SlowCompositeReaderWrapper.wrap(reader);
             Bits liveDocs = MultiFields.getLiveDocs(reader);
             final int maxdoc = reader.maxDoc();
@@ -475,22 +583,22 @@ public class MulticlassEngine {
                 if (c2v != null) {
                     row.createCell(9).setCellValue(c2v);
                 }
-                String level1 = (String) intern.intern(doc.get(IndexManager.LEVEL1_NAME));
+                String level1 = intern.intern(doc.get(IndexManager.LEVEL1_NAME));
                 row.createCell(0).setCellValue(level1);
                 if (level1 != null) {
-                    String level2 = (String) intern.intern(doc.get(IndexManager.LEVEL2_NAME));
+                    String level2 = intern.intern(doc.get(IndexManager.LEVEL2_NAME));
                     if (level2 != null) {
                         row.createCell(1).setCellValue(level2);
-                        String level3 = (String) intern.intern(doc.get(IndexManager.LEVEL3_NAME));
+                        String level3 = intern.intern(doc.get(IndexManager.LEVEL3_NAME));
                         if (level3 != null) {
                             row.createCell(2).setCellValue(level3);
-                            String level4 = (String) intern.intern(doc.get(IndexManager.LEVEL4_NAME));
+                            String level4 = intern.intern(doc.get(IndexManager.LEVEL4_NAME));
                             if (level4 != null) {
                                 row.createCell(3).setCellValue(level4);
-                                String level5 = (String) intern.intern(doc.get(IndexManager.LEVEL5_NAME));
+                                String level5 = intern.intern(doc.get(IndexManager.LEVEL5_NAME));
                                 if (level5 != null) {
                                     row.createCell(4).setCellValue(level5);
-                                    String level6 = (String) intern.intern(doc.get(IndexManager.LEVEL6_NAME));
+                                    String level6 = intern.intern(doc.get(IndexManager.LEVEL6_NAME));
                                     if (level6 != null) {
                                         row.createCell(5).setCellValue(level6);
                                     }
@@ -503,7 +611,7 @@ public class MulticlassEngine {
                     LogGui.info("Read Progress... " + i);
                 }
             }
-            reader.close();
+            closeReader(reader);
         } catch (Exception e) {
             LogGui.printException(e);
         }
@@ -588,6 +696,9 @@ public class MulticlassEngine {
         MyAnalyzer analyzer = analyzers.get(language);
         if (analyzer == null || forceRefresh) {
             String stopWords = getStopWordPath(language);
+            if (forceRefresh) {
+                AnalyzerRegistry.invalidate(new File(stopWords), language);
+            }
             analyzer = IndexManager.getAnalyzer(new File(stopWords), language);
             analyzers.put(language, analyzer);
         }
@@ -614,6 +725,128 @@ public class MulticlassEngine {
         return null;
     }
 
+    /**
+     * Classifica un insieme di testi con il classificatore Bayesiano. Ogni
+     * testo viene tokenizzato una sola volta; l'albero viene poi visitato un
+     * nodo alla volta classificando insieme tutti i testi arrivati su quel
+     * nodo. Il risultato per ogni testo è lo stesso di bayesClassify
+     *
+     * @since 1.9.3
+     * @param texts testi da analizzare
+     * @param language lingua dei testi
+     * @return lista dei percorsi di classificazione per ogni testo,
+     * nell'ordine dei testi in input (null per i testi che non è stato
+     * possibile classificare)
+     */
+    public List<List<ClassificationPath>> bayesClassifyBatch(List<String> texts, String language) {
+        if (!isInit) {
+            return null;
+        }
+        int size = texts.size();
+        List<List<ClassificationPath>> ret = new ArrayList<>(size);
+        List<List<BatchItem>> done = new ArrayList<>(size);
+        String[] tokenized = new String[size];
+        int[][] tokens = new int[size][];
+        boolean[] failed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            done.add(new ArrayList<>());
+        }
+        try {
+            BayesModel rootModel = root.getClassifier(language);
+            if (rootModel != null) {
+                for (int i = 0; i < size; i++) {
+                    tokenized[i] = tokenize(texts.get(i), language);
+                    if (tokenized[i].length() > 0) {
+                        try {
+                            tokens[i] = rootModel.tokenize(tokenized[i]);
+                        } catch (Exception e) {
+                            tokens[i] = null;
+                        }
+                    }
+                }
+                //I nodi vengono visitati in ampiezza: un nodo riceve testi solo dal padre quindi quando viene estratto ha già tutti i suoi testi
+                Map<NodeData, List<BatchItem>> pending = new LinkedHashMap<>();
+                int level = root.getStartLevel() - 1;
+                for (int i = 0; i < size; i++) {
+                    if (tokens[i] == null) {
+                        continue;
+                    }
+                    List<ClassificationResult<String>> resultNdList = rootModel.getClasses(tokens[i]);
+                    if (resultNdList.isEmpty()) {
+                        continue;
+                    }
+                    ClassificationPath bChoice1 = new ClassificationPath(ClassificationPath.BAYES);
+                    bChoice1.addResult(root.getNameFromId(resultNdList.get(0).getAssignedClass()), resultNdList.get(0).getScore(), level);
+                    NodeData child1 = root.getNode(bChoice1.getNodeName(level));
+                    if (child1 != null) {
+                        if (level != 0) {
+                            NodeData.findPath(bChoice1, child1, level);
+                        }
+                        if (child1.hasChildren()) {
+                            addBatchItem(pending, child1, new BatchItem(i, bChoice1, level + 1, new int[]{0}));
+                        }
+                    } else {
+                        done.get(i).add(new BatchItem(i, bChoice1, level, new int[]{0}));
+                    }
+                    if (resultNdList.size() > 1) {
+                        double score2 = resultNdList.get(1).getScore();
+                        double score1 = resultNdList.get(0).getScore();
+                        double childrenSize = root.getChildrenNames().size();
+                        if (canClassifyOnSubtree(score1, score2, childrenSize)) {
+                            ClassificationPath bChoice2 = new ClassificationPath(ClassificationPath.BAYES);
+                            bChoice2.addResult(root.getNameFromId(resultNdList.get(1).getAssignedClass()), score2, level);
+                            NodeData child2 = root.getNode(bChoice2.getNodeName(level));
+                            if (child2 != null) {
+                                if (level != 0) {
+                                    NodeData.findPath(bChoice2, child2, level);
+                                }
+                                if (child2.hasChildren()) {
+                                    addBatchItem(pending, child2, new BatchItem(i, bChoice2, level + 1, new int[]{1}));
+                                }
+                            } else {
+                                done.get(i).add(new BatchItem(i, bChoice2, level, new int[]{1}));
+                            }
+                        }
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    NodeData nd = pending.keySet().iterator().next();
+                    List<BatchItem> items = pending.remove(nd);
+                    BayesModel snbc = nd.getClassifier(language);
+                    boolean shared = rootModel.sharesTokens(snbc);
+                    for (BatchItem item : items) {
+                        if (failed[item.doc]) {
+                            continue;
+                        }
+                        try {
+                            classifyBatchItem(item, nd, snbc, shared ? tokens[item.doc] : null, tokenized[item.doc], pending, done.get(item.doc));
+                        } catch (Exception e) {
+                            LogGui.printException(e);
+                            failed[item.doc] = true;
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LogGui.printException(e);
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            if (failed[i]) {
+                ret.add(null);
+                continue;
+            }
+            List<BatchItem> items = done.get(i);
+            Collections.sort(items);
+            List<ClassificationPath> paths = new ArrayList<>(items.size());
+            items.stream().forEach((item) -> {
+                paths.add(item.path);
+            });
+            ret.add(paths);
+        }
+        return ret;
+    }
+
     /**
      * Classifica un testo con il classificatore KNN di lucene
      *
@@ -650,9 +883,9 @@ public class MulticlassEngine {
         if (classPath == null) {
             return null;
         }
-        List<ClassificationResult<BytesRef>> resultNdList = null;
+        List<ClassificationResult<String>> resultNdList = null;
         if (classPath.getTechnology().equals(ClassificationPath.BAYES)) {
-            SimpleNaiveBayesClassifier snbc = nd.getClassifier(language);
+            BayesModel snbc = nd.getClassifier(language);
             if (snbc != null) {
                 resultNdList = snbc.getClasses(text);
                 //  resultNdList = list.get(0);
@@ -661,12 +894,20 @@ public class MulticlassEngine {
             }
 
         } else if (classPath.getTechnology().equals(ClassificationPath.KNN)) {
+            KnnModel vknn = nd.getVectorKnn(language);
             KNearestNeighborClassifier knnc = nd.getKnn(language);
-            if (knnc != null) {
+            if (vknn != null) {
+                ClassificationResult<String> res = vknn.assignClass(text);
+                if (res != null) {
+                    resultNdList = new ArrayList<>();
+                    resultNdList.add(res);
+                }
+            } else if (knnc != null) {
                 if (resultNdList == null) {
                     resultNdList = new ArrayList<>();
                 }
-                resultNdList.add(knnc.assignClass(text));
+                ClassificationResult<BytesRef> res = knnc.assignClass(text);
+                resultNdList.add(new ClassificationResult<>(res.getAssignedClass().utf8ToString(), res.getScore()));
             }
         }
         if (resultNdList != null && resultNdList.size() > 0) {
@@ -674,7 +915,7 @@ public class MulticlassEngine {
             ClonableClassificationPath ccp = new ClonableClassificationPath(classPath);
             ClassificationPath cp1 = ccp.clone();
 
-            cp1.addResult(nd.getNameFromId(resultNdList.get(0).getAssignedClass().utf8ToString()), score1, level);
+            cp1.addResult(nd.getNameFromId(resultNdList.get(0).getAssignedClass()), score1, level);
             NodeData child = nd.getNode(cp1.getNodeName(level));
             if (child != null) {
                 if (child.hasChildren()) {
@@ -690,7 +931,7 @@ public class MulticlassEngine {
                     double score2 = resultNdList.get(j).getScore();
                     ClassificationPath cp2 = ccp.clone();
                     if (canClassifyOnSubtree(score1, score2, childrenSize)) {
-                        cp2.addResult(nd.getNameFromId(resultNdList.get(j).getAssignedClass().utf8ToString()), score2, level);
+                        cp2.addResult(nd.getNameFromId(resultNdList.get(j).getAssignedClass()), score2, level);
                         NodeData child2 = nd.getNode(cp2.getNodeName(level));
                         if (child2 != null) {
                             if (child2.hasChildren()) {
@@ -720,15 +961,18 @@ public class MulticlassEngine {
                 ClassificationPath bChoice1 = new ClassificationPath(ClassificationPath.BAYES);
                 ClassificationPath bChoice2 = new ClassificationPath(ClassificationPath.BAYES);
                 //Classifica bayes
-                SimpleNaiveBayesClassifier snbc = root.getClassifier(language);
+                BayesModel snbc = root.getClassifier(language);
                 if (snbc != null) {
-                    List<ClassificationResult<BytesRef>> resultNdList;
+                    List<ClassificationResult<String>> resultNdList;
                     try {
                         resultNdList = snbc.getClasses(text);
                     } catch (Exception e) {
                         return results;
                     }
-                    bChoice1.addResult(root.getNameFromId(resultNdList.get(0).getAssignedClass().utf8ToString()), resultNdList.get(0).getScore(), level);
+                    if (resultNdList.isEmpty()) {
+                        return results;
+                    }
+                    bChoice1.addResult(root.getNameFromId(resultNdList.get(0).getAssignedClass()), resultNdList.get(0).getScore(), level);
                     NodeData child1 = root.getNode(bChoice1.getNodeName(level));
                     if (child1 != null) {
                         if (level != 0) { //Sto classificando a root ma con un level != 0 (cioè parto da un livello più basso nell'albero
@@ -745,7 +989,7 @@ public class MulticlassEngine {
                         double score1 = resultNdList.get(0).getScore();
                         double childrenSize = root.getChildrenNames().size(); //Numero di figli
                         if (canClassifyOnSubtree(score1, score2, childrenSize)) {
-                            bChoice2.addResult(root.getNameFromId(resultNdList.get(1).getAssignedClass().utf8ToString()), score2, level);
+                            bChoice2.addResult(root.getNameFromId(resultNdList.get(1).getAssignedClass()), score2, level);
                             NodeData child2 = root.getNode(bChoice2.getNodeName(level));
                             if (child2 != null) {
                                 if (level != 0) { //Sto classificando a root ma con un level != 0 (cioè parto da un livello più basso nell'albero
@@ -762,15 +1006,28 @@ public class MulticlassEngine {
                 }
             } else {
                 ClassificationPath kChoice1 = new ClassificationPath(ClassificationPath.KNN);
+                KnnModel vknn = root.getVectorKnn(language);
                 KNearestNeighborClassifier knnc = root.getKnn(language);
-                if (knnc != null) {
-                    ClassificationResult<BytesRef> res;
+                if (vknn != null || knnc != null) {
+                    String assignedClass;
+                    double score;
                     try {
-                        res = knnc.assignClass(text);
+                        if (vknn != null) {
+                            ClassificationResult<String> res = vknn.assignClass(text);
+                            if (res == null) {
+                                return results;
+                            }
+                            assignedClass = res.getAssignedClass();
+                            score = res.getScore();
+                        } else {
+                            ClassificationResult<BytesRef> res = knnc.assignClass(text);
+                            assignedClass = res.getAssignedClass().utf8ToString();
+                            score = res.getScore();
+                        }
                     } catch (Exception exception) {
                         return results;
                     }
-                    kChoice1.addResult(root.getNameFromId(res.getAssignedClass().utf8ToString()), res.getScore(), level);
+                    kChoice1.addResult(root.getNameFromId(assignedClass), score, level);
                     NodeData child1 = root.getNode(kChoice1.getNodeName(level));
                     if (child1 != null) {
                         if (level != 0) { //Sto classificando a root ma con un level != 0 (cioè parto da un livello più basso nell'albero
@@ -791,38 +1048,129 @@ public class MulticlassEngine {
         }
     }
 
+    private void classifyBatchItem(BatchItem item, NodeData nd, BayesModel snbc, int[] tokens, String text, Map<NodeData, List<BatchItem>> pending, List<BatchItem> done) throws IOException {
+        int level = item.level;
+        if (level < 1) {
+            done.add(item);
+            return;
+        }
+        List<ClassificationResult<String>> resultNdList = null;
+        if (snbc != null) {
+            resultNdList = (tokens != null) ? snbc.getClasses(tokens) : snbc.getClasses(text);
+        }
+        if (resultNdList != null && resultNdList.size() > 0) {
+            double score1 = resultNdList.get(0).getScore();
+            ClonableClassificationPath ccp = new ClonableClassificationPath(item.path);
+            double childrenSize = resultNdList.size();
+            for (int j = 0; j < resultNdList.size(); j++) {
+                double score2 = resultNdList.get(j).getScore();
+                if (j == 0 || canClassifyOnSubtree(score1, score2, childrenSize)) {
+                    ClassificationPath cp = ccp.clone();
+                    cp.addResult(nd.getNameFromId(resultNdList.get(j).getAssignedClass()), score2, level);
+                    NodeData child = nd.getNode(cp.getNodeName(level));
+                    if (child != null) {
+                        BatchItem next = new BatchItem(item.doc, cp, level + 1, item.branch(j));
+                        if (child.hasChildren()) {
+                            addBatchItem(pending, child, next);
+                        } else {
+                            done.add(next);
+                        }
+                    }
+                }
+            }
+        } else {
+            done.add(item);
+        }
+    }
+
+    private void addBatchItem(Map<NodeData, List<BatchItem>> pending, NodeData nd, BatchItem item) {
+        List<BatchItem> items = pending.get(nd);
+        if (items == null) {
+            items = new ArrayList<>();
+            pending.put(nd, items);
+        }
+        items.add(item);
+    }
+
     private boolean canClassifyOnSubtree(double score1, double score2, double childrenSize) {
         double realThreshold = 1 / childrenSize;
         return (((score2 >= realThreshold) && (score2*2.2 >= score1)) || (Math.abs(score2 - score1) < 0.1));
     }
 
-    private void addNode(LeafReader ar, MyAnalyzer analyzer, NodeData parent, Set<String> cats, String name, int k, String language) throws Exception {
+    private void addNode(List<NodeData> toTrain, List<String[]> added, NodeData parent, Set<String> cats, int k, String language, String... path) throws Exception {
         if (parent != null) {
+            String name = path[path.length - 1];
             LogGui.info("Add node " + name + " to " + parent.nodeName);
-            NodeData node = parent.getNode((String) intern.intern(name));
+            NodeData node = parent.getNode(intern.intern(name));
             if (node == null) {
-                node = new NodeData((String) intern.intern(name), parent, k, intern);
+                node = new NodeData(intern.intern(name), parent, k, intern);
+            }
+            toTrain.add(node);
+            cats.add(intern.intern(name));
+            if (added != null) {
+                added.add(path);
             }
-            LogGui.info("Istruzione " + name + " language: " + language);
-            node.train(ar, analyzer, language);
-            LogGui.info("Fine istruzione...");
-            cats.add((String) intern.intern(name));
         }
     }
 
-    private Directory getFolderDir(String indexDir) throws IOException {
-        RAMDirectory ret;
-        try (FSDirectory dir = FSDirectory.open(Paths.get(indexDir))) {
-            ret = new RAMDirectory(dir, null);
+    /**
+     * Ripristina l'albero di una lingua da uno snapshot. I nodi vengono
+     * aggiunti all'albero nello stesso ordine della lettura dell'indice; i
+     * modelli vengono assegnati ai nodi da train
+     *
+     * @param li stato della lingua
+     * @param k fattore K
+     * @return true se lo snapshot è coerente con l'albero
+     * @throws Exception Eccezione
+     */
+    private boolean restoreTree(LanguageInit li, int k) throws Exception {
+        LogGui.info("Restore language " + li.language + " from snapshot");
+        li.toTrain.add(root);
+        for (String[] path : li.snapshot.getAddedNodes()) {
+            NodeData parent = root;
+            for (int i = 0; i < path.length - 1 && parent != null; i++) {
+                parent = parent.getNode(intern.intern(path[i]));
+            }
+            addNode(li.toTrain, null, parent, li.categories, k, li.language, path);
+        }
+        List<String> trainedNodes = li.snapshot.getTrainedNodes();
+        if (li.toTrain.size() != trainedNodes.size()) {
+            LogGui.info("Snapshot does not match the tree, train language " + li.language);
+            return false;
+        }
+        for (int i = 0; i < li.toTrain.size(); i++) {
+            if (!li.toTrain.get(i).nodeName.equals(trainedNodes.get(i))) {
+                LogGui.info("Snapshot does not match the tree, train language " + li.language);
+                return false;
+            }
+        }
+        return true;
+    }
 
+    private KnnVectorIndex getVectorIndex(LeafReader ar, CharArrayMap<Integer> vocabulary, Analyzer analyzer) throws IOException {
+        if (!vectorKnn) {
+            return null;
         }
-        return ret;
+        KnnVectorIndex vectors = new KnnVectorIndex(ar, IndexManager.BODY, vocabulary, analyzer);
+        vectors.setCandidates(knnCandidates);
+        return vectors;
     }
 
+    private Directory getFolderDir(String indexDir) throws IOException {
+        return IndexManager.getReadDirectory(Paths.get(indexDir));
+    }
+
+    /**
+     * Chiude un reader e la directory da cui è stato aperto (getFolderDir
+     * apre una nuova directory per ogni reader)
+     */
     private void closeReader(IndexReader reader) {
         try {
             if (reader != null) {
                 reader.close();
+                if (reader instanceof DirectoryReader) {
+                    ((DirectoryReader) reader).directory().close();
+                }
             }
         } catch (Exception e) {
             LogGui.printException(e);
@@ -853,10 +1201,10 @@ public class MulticlassEngine {
         if (analyzer == null) {
             try {
                 analyzer = IndexManager.getAnalyzer(new File(stopWords), language);
+                analyzers.put(language, analyzer);
             } catch (Exception e) {
                 LogGui.printException(e);
             }
-            analyzers.put(language, analyzer);
         }
         if (analyzer != null) {
             CharArraySet cas = analyzer.getStopwordSet();
@@ -883,10 +1231,10 @@ public class MulticlassEngine {
         if (analyzer == null) {
             try {
                 analyzer = IndexManager.getAnalyzer(new File(stopWords), language);
+                analyzers.put(language, analyzer);
             } catch (Exception e) {
                 LogGui.printException(e);
             }
-            analyzers.put(language, analyzer);
         }
         if (analyzer != null) {
             CharArraySet cas = MyAnalyzer.getDefaultStopSet(language);
@@ -906,7 +1254,12 @@ public class MulticlassEngine {
      * stop word
      */
     public void storeStopWords(String language, List<String> stopWords) {
-        analyzers.put(language, IndexManager.storeStopWords(structurePath, language, stopWords));
+        MyAnalyzer analyzer = IndexManager.storeStopWords(structurePath, language, stopWords);
+        if (analyzer != null) {
+            analyzers.put(language, analyzer);
+        } else {
+            analyzers.remove(language);
+        }
 
     }
 
@@ -1087,4 +1440,72 @@ public class MulticlassEngine {
         return "\\b(" + returnString + ")\\b";
     }
 
+    /**
+     * Percorso parziale di un testo durante la classificazione batch. L'ordine
+     * ricorda i rami scelti ad ogni nodo in modo da restituire i percorsi
+     * nello stesso ordine della classificazione ricorsiva
+     */
+    private static class BatchItem implements Comparable<BatchItem> {
+
+        private final int doc;
+        private final ClassificationPath path;
+        private final int level;
+        private final int[] order;
+
+        private BatchItem(int doc, ClassificationPath path, int level, int[] order) {
+            this.doc = doc;
+            this.path = path;
+            this.level = level;
+            this.order = order;
+        }
+
+        private int[] branch(int j) {
+            int[] ret = Arrays.copyOf(order, order.length + 1);
+            ret[order.length] = j;
+            return ret;
+        }
+
+        @Override
+        public int compareTo(BatchItem o) {
+            int len = Math.min(order.length, o.order.length);
+            for (int i = 0; i < len; i++) {
+                if (order[i] != o.order[i]) {
+                    return Integer.compare(order[i], o.order[i]);
+                }
+            }
+            return Integer.compare(order.length, o.order.length);
+        }
+    }
+
+    /**
+     * Stato dell'inizializzazione di una lingua tra la lettura dell'indice,
+     * l'inserimento delle categorie nell'albero e l'istruzione dei nodi
+     */
+    private static class LanguageInit {
+
+        private final String language;
+        private final DirectoryReader reader;
+        private final LeafReader ar;
+        private final MyAnalyzer analyzer;
+        private final SegmentInfos commit;
+        private final File snapshotFile;
+        private final List<NodeData> toTrain;
+        private final List<String[]> added;
+        private final Set<String> categories;
+        private ClassificationSnapshot snapshot;
+        private BayesTrainingSet trainingSet;
+        private List<String[]> paths;
+
+        private LanguageInit(String language, DirectoryReader reader, MyAnalyzer analyzer, SegmentInfos commit, File snapshotFile) throws IOException {
+            this.language = language;
+            this.reader = reader;
+            this.ar = SlowCompositeReaderWrapper.wrap(reader);
+            this.analyzer = analyzer;
+            this.commit = commit;
+            this.snapshotFile = snapshotFile;
+            this.toTrain = new ArrayList<>();
+            this.added = new ArrayList<>();
+            this.categories = new HashSet<>();
+        }
+    }
 }
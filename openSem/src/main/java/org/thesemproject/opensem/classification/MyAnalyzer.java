@@ -88,6 +88,7 @@ public class MyAnalyzer extends StopwordAnalyzerBase {
     private final Trie stemTable;
     private final StemmerOverrideMap stemdict;
     private final String language;
+    private final MyFilter.Rules filterRules;
 
     /**
      * Inizializza l'analizzatore sintattico per lingua
@@ -108,6 +109,20 @@ public class MyAnalyzer extends StopwordAnalyzerBase {
         this(language, stopwords, CharArraySet.EMPTY_SET, DefaultSetHolder.DEFAULT_STEM_DICT);
     }
 
+    /**
+     * Inizializza l'analizzatore sintattico per lingua con un set di stopwords
+     * e regole di esclusione dei token specifiche
+     *
+     * @since 1.9.3
+     * @param language lingua dell'analizzatore
+     * @param stopwords set di stop words per lingua
+     * @param filterRules regole del MyFilter (lunghezza minima, numeri,
+     * parole alfanumeriche)
+     */
+    public MyAnalyzer(String language, CharArraySet stopwords, MyFilter.Rules filterRules) {
+        this(language, stopwords, CharArraySet.EMPTY_SET, DefaultSetHolder.DEFAULT_STEM_DICT, filterRules);
+    }
+
     /**
      * Inizializza l'analizzatore sintattico per lingua
      *
@@ -118,8 +133,24 @@ public class MyAnalyzer extends StopwordAnalyzerBase {
      * @param stemOverrideDict dizionario dei termini in overriding
      */
     public MyAnalyzer(String language, CharArraySet stopwords, CharArraySet stemExclusionSet, CharArrayMap<String> stemOverrideDict) {
+        this(language, stopwords, stemExclusionSet, stemOverrideDict, MyFilter.Rules.DEFAULT);
+    }
+
+    /**
+     * Inizializza l'analizzatore sintattico per lingua
+     *
+     * @since 1.9.3
+     * @param language lingua
+     * @param stopwords stop words
+     * @param stemExclusionSet elenco dei termini che non deve essere sottoposto
+     * a stemming
+     * @param stemOverrideDict dizionario dei termini in overriding
+     * @param filterRules regole del MyFilter
+     */
+    public MyAnalyzer(String language, CharArraySet stopwords, CharArraySet stemExclusionSet, CharArrayMap<String> stemOverrideDict, MyFilter.Rules filterRules) {
         super(stopwords);
         this.language = language;
+        this.filterRules = filterRules;
         this.stemExclusionSet = CharArraySet.unmodifiableSet(CharArraySet.copy(stemExclusionSet));
         this.stemTable = DefaultSetHolder.DEFAULT_TABLE;
         if (stemOverrideDict.isEmpty()) {
@@ -217,7 +248,7 @@ public class MyAnalyzer extends StopwordAnalyzerBase {
             result2 = new ElisionFilter(result, DEFAULT_ARTICLES_IT);
         }
         TokenFilter result3 = ("tr".equalsIgnoreCase(language)) ? new TurkishLowerCaseFilter(result2) : new LowerCaseFilter(result2);
-        Object result4 = new MyFilter(new StopFilter(result3, this.stopwords));
+        Object result4 = new MyFilter(new StopFilter(result3, this.stopwords), filterRules);
         if (!this.stemExclusionSet.isEmpty()) {
             result4 = new SetKeywordMarkerFilter((TokenStream) result4, this.stemExclusionSet);
         }
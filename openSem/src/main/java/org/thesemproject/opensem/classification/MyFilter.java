@@ -17,29 +17,46 @@ package org.thesemproject.opensem.classification;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.apache.lucene.analysis.util.CharArraySet;
 import org.apache.lucene.analysis.util.FilteringTokenFilter;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.regex.Pattern;
+import java.io.InputStream;
+import java.util.Properties;
 
 /**
  * Tokenizer filter che esclude parole di lunghezza inferiore a 3 caratteri e
  * numeri
+ *
+ * Dalla versione 1.9.3 i controlli sono fatti direttamente sul buffer del
+ * termine, senza creare stringhe, e le regole (lunghezza minima, numeri,
+ * parole alfanumeriche) sono configurabili per analizzatore
  */
 public class MyFilter extends FilteringTokenFilter {
 
     private final CharTermAttribute termAtt = (CharTermAttribute) this.addAttribute(CharTermAttribute.class);
-    private Pattern numbers = Pattern.compile("^[0-9]*$");
+    private final Rules rules;
 
     /**
-     * Costruisce il filtro
+     * Costruisce il filtro con le regole di default
      *
      * @param in stream di token
      */
     public MyFilter(TokenStream in) {
-        super(in);
+        this(in, Rules.DEFAULT);
+    }
 
+    /**
+     * Costruisce il filtro
+     *
+     * @since 1.9.3
+     * @param in stream di token
+     * @param rules regole di esclusione dei token
+     */
+    public MyFilter(TokenStream in, Rules rules) {
+        super(in);
+        this.rules = rules;
     }
 
     /**
@@ -51,16 +68,115 @@ public class MyFilter extends FilteringTokenFilter {
      */
     @Override
     protected boolean accept() throws IOException {
-        String word = String.valueOf(this.termAtt.buffer());
-        word = word.substring(0, this.termAtt.length());
-        if (word.length() < 3) {
+        int length = termAtt.length();
+        if (length < rules.minLength) {
+            return false;
+        }
+        if (!rules.rejectNumbers && !rules.rejectAlphanumeric) {
+            return true;
+        }
+        char[] buffer = termAtt.buffer();
+        int digits = 0;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            if (c >= '0' && c <= '9') {
+                digits++;
+            }
+        }
+        if (rules.rejectNumbers && digits == length) { //Come ^[0-9]*$
             return false;
         }
-        if (numbers.matcher(word).matches()) {
+        if (rules.rejectAlphanumeric && digits > 0) {
             return false;
         }
-
         return true;
     }
 
+    /**
+     * Regole di esclusione dei token
+     *
+     * @since 1.9.3
+     */
+    public static class Rules {
+
+        /**
+         * Regole di default: lunghezza minima 3, numeri esclusi, parole
+         * alfanumeriche accettate
+         */
+        public static final Rules DEFAULT = new Rules(3, true, false);
+
+        private final int minLength;
+        private final boolean rejectNumbers;
+        private final boolean rejectAlphanumeric;
+
+        /**
+         * Crea le regole
+         *
+         * @param minLength lunghezza minima di un token
+         * @param rejectNumbers true se i token composti solo da cifre vanno
+         * esclusi
+         * @param rejectAlphanumeric true se i token che contengono almeno una
+         * cifra vanno esclusi
+         */
+        public Rules(int minLength, boolean rejectNumbers, boolean rejectAlphanumeric) {
+            this.minLength = minLength;
+            this.rejectNumbers = rejectNumbers;
+            this.rejectAlphanumeric = rejectAlphanumeric;
+        }
+
+        /**
+         * Legge le regole da un file di proprietà (minLength, rejectNumbers,
+         * rejectAlphanumeric). Le proprietà non indicate hanno il valore di
+         * default
+         *
+         * @param file file delle regole
+         * @return regole o DEFAULT se il file non esiste
+         * @throws IOException Eccezione di input/output
+         */
+        public static Rules read(File file) throws IOException {
+            if (!file.exists()) {
+                return DEFAULT;
+            }
+            Properties properties = new Properties();
+            try (InputStream is = new FileInputStream(file)) {
+                properties.load(is);
+            }
+            try {
+                int minLength = Integer.parseInt(properties.getProperty("minLength", String.valueOf(DEFAULT.minLength)).trim());
+                boolean rejectNumbers = Boolean.parseBoolean(properties.getProperty("rejectNumbers", String.valueOf(DEFAULT.rejectNumbers)).trim());
+                boolean rejectAlphanumeric = Boolean.parseBoolean(properties.getProperty("rejectAlphanumeric", String.valueOf(DEFAULT.rejectAlphanumeric)).trim());
+                return new Rules(minLength, rejectNumbers, rejectAlphanumeric);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid filter rules " + file.getAbsolutePath(), e);
+            }
+        }
+
+        /**
+         * Ritorna la lunghezza minima di un token
+         *
+         * @return lunghezza minima
+         */
+        public int getMinLength() {
+            return minLength;
+        }
+
+        /**
+         * Ritorna true se i numeri vengono esclusi
+         *
+         * @return true se i numeri vengono esclusi
+         */
+        public boolean isRejectNumbers() {
+            return rejectNumbers;
+        }
+
+        /**
+         * Ritorna true se le parole alfanumeriche vengono escluse
+         *
+         * @return true se le parole alfanumeriche vengono escluse
+         */
+        public boolean isRejectAlphanumeric() {
+            return rejectAlphanumeric;
+        }
+    }
+
 }
@@ -18,21 +18,19 @@ package org.thesemproject.opensem.classification;
 import org.thesemproject.opensem.gui.LogGui;
 
 import com.beust.jcommander.internal.Lists;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.classification.SimpleNaiveBayesClassifier;
 import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.TermQuery;
 
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.lucene.classification.KNearestNeighborClassifier;
-import org.apache.lucene.util.BytesRef;
 import org.jdom2.Document;
 import org.jdom2.*;
 import org.thesemproject.opensem.utils.interning.InternPool;
@@ -52,8 +50,9 @@ public class NodeData {
      * Livello della categoria
      */
     public String level;
-    private final Map<String, SimpleNaiveBayesClassifier> classifiers; //classificatore sui suoi figli
+    private final Map<String, BayesModel> classifiers; //classificatore sui suoi figli
     private final Map<String, KNearestNeighborClassifier> knns; //classificatore sui suoi figli
+    private final Map<String, KnnModel> vectorKnns; //classificatore KNN vettoriale sui suoi figli
     private int startLevel;
     private final int k;
     private NodeData parent;
@@ -73,8 +72,9 @@ public class NodeData {
     public NodeData(int startLevel, int k, InternPool intern) {
         this.nodeName = "root";
         this.k = 1;
-        this.classifiers = new HashMap<>();
-        this.knns = new HashMap<>();
+        this.classifiers = new ConcurrentHashMap<>();
+        this.knns = new ConcurrentHashMap<>();
+        this.vectorKnns = new ConcurrentHashMap<>();
         this.level = null;
         this.parent = null;
         this.children = new HashMap<>();
@@ -96,8 +96,9 @@ public class NodeData {
      */
     public NodeData(String nodeName, NodeData parent, int k, InternPool intern) throws Exception {
         this.nodeName = nodeName;
-        this.classifiers = new HashMap<>();
-        this.knns = new HashMap<>();
+        this.classifiers = new ConcurrentHashMap<>();
+        this.knns = new ConcurrentHashMap<>();
+        this.vectorKnns = new ConcurrentHashMap<>();
         this.k = k;
         this.children = new HashMap<>();
         this.reverseMap = new HashMap<>();
@@ -119,8 +120,8 @@ public class NodeData {
                     this.level = IndexManager.LEVEL_6;
                 }
                 this.parent = parent;
-                parent.children.put((String) intern.intern(nodeName), this);
-                parent.reverseMap.put(getNodeCodeForFilter(nodeName), (String) intern.intern(nodeName));
+                parent.children.put(intern.intern(nodeName), this);
+                parent.reverseMap.put(getNodeCodeForFilter(nodeName), intern.intern(nodeName));
             } else {
                 throw new Exception("This node already exists");
             }
@@ -145,96 +146,95 @@ public class NodeData {
      * Si occupa del training del classificatore di nodo
      *
      * @param ar reader lucene
+     * @param ts insieme di istruzione della lingua (condiviso tra i nodi)
+     * @param vectors indice vettoriale della lingua per il KNN vettoriale (null
+     * se non attivo)
      * @param analyzer analizzatore sintattico
      * @param language lingua
      */
-    public void train(LeafReader ar, Analyzer analyzer, String language) {
+    public void train(LeafReader ar, BayesTrainingSet ts, KnnVectorIndex vectors, Analyzer analyzer, String language) {
         try {
             trained = true;
-            SimpleNaiveBayesClassifier classifier = classifiers.get(language);
-            if (classifier == null) {
-                classifier = new SimpleNaiveBayesClassifier();
-            }
-            KNearestNeighborClassifier knn = knns.get(language);
-            if (knn == null) {
-                knn = new KNearestNeighborClassifier(k);
-            }
             LogGui.info("Istruisco il nodo: " + nodeName);
-            if (level == null) { //root
-                //Dobbiamo istruire il nodo con tutti i documenti usando il field level1
-                switch (startLevel) {
-                    case 1:
-                        classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_1, analyzer);
-                        knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_1, analyzer);
-                        break;
-                    case 2:
-                        classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_2, analyzer);
-                        knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_2, analyzer);
-                        break;
-                    case 3:
-                        classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_3, analyzer);
-                        knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_3, analyzer);
-                        break;
-                    case 4:
-                        classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_4, analyzer);
-                        knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_4, analyzer);
-                        break;
-                    case 5:
-                        classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_5, analyzer);
-                        knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_5, analyzer);
-                        break;
-                    default:
-                        break;
-                }
-            } else {
-                classifier.train(ar, IndexManager.BODY, getNodeCodeForFilter(), analyzer);
-                knn.train(ar, IndexManager.BODY, getNodeCodeForFilter(), analyzer);
+            String classFieldName = getClassFieldName();
+            if (classFieldName == null) {
+                return;
             }
+            classifiers.put(language, new BayesModel(ar, ts, IndexManager.BODY, classFieldName, analyzer));
+            trainKnn(ar, classFieldName, vectors, analyzer, language);
+        } catch (Exception e) {
+            LogGui.printException(e);
+        }
+    }
 
-            /*
-            else if (IndexManager.LEVEL_1.equalsIgnoreCase(level)) {
-                //Ci troviamo su una categoria figlia di root
-                //Dobbiamo istruire il suo classificatore con tutti i documenti che hanno in Level_1 il nome della categoria
-                //con i soli campi di Level_2
-                TermQuery query = new TermQuery(new Term(IndexManager.LEVEL_1, getNodeCodeForFilter()));
-                classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_2, analyzer, query);
-                knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_2, analyzer, query);
-            } else if (IndexManager.LEVEL_2.equalsIgnoreCase(level)) {
-                //Ci troviamo su una categoria figlia di un livello 1
-                //Dobbiamo istruire il suo classificatore con tutti i documenti che hanno in Level_2 il nome della categoria
-                //con i soli campi di Level_3
-                TermQuery query = new TermQuery(new Term(IndexManager.LEVEL_2, getNodeCodeForFilter()));
-                classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_3, analyzer, query);
-                knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_3, analyzer, query);
-            } else if (IndexManager.LEVEL_3.equalsIgnoreCase(level)) {
-                //Ci troviamo su una categoria figlia di un livello 2
-                //Dobbiamo istruire il suo classificatore con tutti i documenti che hanno in Level_3 il nome della categoria
-                //con i soli campi di Level_4
-                TermQuery query = new TermQuery(new Term(IndexManager.LEVEL_3, getNodeCodeForFilter()));
-                classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_4, analyzer, query);
-                knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_4, analyzer, query);
-            } else if (IndexManager.LEVEL_4.equalsIgnoreCase(level)) {
-                //Ci troviamo su una categoria figlia di un livello 3
-                //Dobbiamo istruire il suo classificatore con tutti i documenti che hanno in Level_4 il nome della categoria
-                //con i soli campi di Level_5
-                TermQuery query = new TermQuery(new Term(IndexManager.LEVEL_4, getNodeCodeForFilter()));
-                classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_5, analyzer, query);
-                knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_5, analyzer, query);
-            } else if (IndexManager.LEVEL_5.equalsIgnoreCase(level)) {
-                //Ci troviamo su una categoria figlia di un livello 4
-                //Dobbiamo istruire il suo classificatore con tutti i documenti che hanno in Level_5 il nome della categoria
-                //con i soli campi di Level_6
-                TermQuery query = new TermQuery(new Term(IndexManager.LEVEL_5, getNodeCodeForFilter()));
-                classifier.train(ar, IndexManager.BODY, IndexManager.LEVEL_6, analyzer, query);
-                knn.train(ar, IndexManager.BODY, IndexManager.LEVEL_6, analyzer, query);
-            } */
-            classifiers.put(language, classifier);
-            knns.put(language, knn);
+    /**
+     * Ripristina l'istruzione del nodo a partire da un modello bayesiano già
+     * compilato (ad esempio letto da uno snapshot). Il classificatore KNN viene
+     * comunque agganciato al reader perché lavora direttamente sull'indice
+     *
+     * @since 1.9.3
+     * @param ar reader lucene
+     * @param model modello bayesiano compilato (null se il nodo non ha modello)
+     * @param vectors indice vettoriale della lingua per il KNN vettoriale (null
+     * se non attivo)
+     * @param analyzer analizzatore sintattico
+     * @param language lingua
+     */
+    public void restore(LeafReader ar, BayesModel model, KnnVectorIndex vectors, Analyzer analyzer, String language) {
+        try {
+            trained = true;
+            String classFieldName = getClassFieldName();
+            if (classFieldName == null || model == null) {
+                return;
+            }
+            classifiers.put(language, model);
+            trainKnn(ar, classFieldName, vectors, analyzer, language);
         } catch (Exception e) {
             LogGui.printException(e);
         }
     }
 
+    private void trainKnn(LeafReader ar, String classFieldName, KnnVectorIndex vectors, Analyzer analyzer, String language) throws IOException {
+        KNearestNeighborClassifier knn = knns.get(language);
+        if (knn == null) {
+            knn = new KNearestNeighborClassifier(k);
+        }
+        knn.train(ar, IndexManager.BODY, classFieldName, analyzer);
+        knns.put(language, knn);
+        if (vectors != null) {
+            vectorKnns.put(language, new KnnModel(ar, vectors, classFieldName, k));
+        } else {
+            vectorKnns.remove(language);
+        }
+    }
+
+    /**
+     * Ritorna il campo dell'indice che contiene le classi su cui il nodo
+     * classifica. Per la root (che istruisce con tutti i documenti) dipende dal
+     * livello di partenza, per gli altri nodi è il codice del nodo
+     *
+     * @return nome del campo o null se il livello di partenza non è gestito
+     */
+    private String getClassFieldName() {
+        if (level == null) { //root
+            switch (startLevel) {
+                case 1:
+                    return IndexManager.LEVEL_1;
+                case 2:
+                    return IndexManager.LEVEL_2;
+                case 3:
+                    return IndexManager.LEVEL_3;
+                case 4:
+                    return IndexManager.LEVEL_4;
+                case 5:
+                    return IndexManager.LEVEL_5;
+                default:
+                    return null;
+            }
+        }
+        return getNodeCodeForFilter();
+    }
+
     /**
      * Ritorna il codice del nodo da associare nel motore di classificazione
      *
@@ -345,9 +345,9 @@ public class NodeData {
      * Ritorna il classificatore bayesiano in una specifica lingua
      *
      * @param language lingua del classificatore
-     * @return classificatore bayesiano
+     * @return modello bayesiano compilato
      */
-    public SimpleNaiveBayesClassifier getClassifier(String language) {
+    public BayesModel getClassifier(String language) {
         return classifiers.get(language);
     }
 
@@ -362,6 +362,17 @@ public class NodeData {
 
     }
 
+    /**
+     * Ritorna il classificatore KNN vettoriale per una specifica lingua
+     *
+     * @since 1.9.3
+     * @param language lingua del classificatore
+     * @return classificatore KNN vettoriale (null se non attivo)
+     */
+    public KnnModel getVectorKnn(String language) {
+        return vectorKnns.get(language);
+    }
+
     private Element getXml() {
         Element element = new Element("Node");
         element.setAttribute("nodeName", nodeName);
@@ -564,19 +575,19 @@ public class NodeData {
         for (String row : rows) {
             String[] doc = row.split("\t");
             if (doc.length > 0) {
-                String level1 = (String) intern.intern(doc[0]);
+                String level1 = intern.intern(doc[0]);
                 if (level1 != null) {
                     if (!categories.contains(level1)) { //Nuova categoria di livello 1
                         addNode(root, categories, level1, k, intern);
                     }
                     if (doc.length > 1) {
-                        String level2 = (String) intern.intern(doc[1]);
+                        String level2 = intern.intern(doc[1]);
                         if (!categories.contains(level2)) { //Nuova categoria di livello 2
                             NodeData parent = root.getNode(level1);
                             addNode(parent, categories, level2, k, intern);
                         }
                         if (doc.length > 2) {
-                            String level3 = (String) intern.intern(doc[2]);
+                            String level3 = intern.intern(doc[2]);
                             if (!categories.contains(level3)) { //Nuova categoria di livello 3
                                 NodeData p1 = root.getNode(level1);
                                 if (p1 != null) {
@@ -585,7 +596,7 @@ public class NodeData {
                                 }
                             }
                             if (doc.length > 3) {
-                                String level4 = (String) intern.intern(doc[3]);
+                                String level4 = intern.intern(doc[3]);
                                 if (!categories.contains(level4)) { //Nuova categoria di livello 4
                                     NodeData p1 = root.getNode(level1);
                                     if (p1 != null) {
@@ -597,7 +608,7 @@ public class NodeData {
                                     }
                                 }
                                 if (doc.length > 4) {
-                                    String level5 = (String) intern.intern(doc[4]);
+                                    String level5 = intern.intern(doc[4]);
                                     if (!categories.contains(level5)) { //Nuova categoria di livello 5
                                         NodeData p1 = root.getNode(level1);
                                         if (p1 != null) {
@@ -612,7 +623,7 @@ public class NodeData {
                                         }
                                     }
                                     if (doc.length > 5) {
-                                        String level6 = (String) intern.intern(doc[5]);
+                                        String level6 = intern.intern(doc[5]);
                                         if (!categories.contains(level6)) { //Nuova categoria di livello 6
                                             NodeData p1 = root.getNode(level1);
                                             if (p1 != null) {
@@ -643,16 +654,16 @@ public class NodeData {
     private static void addNode(NodeData parent, Set<String> cats, String name, int k, InternPool intern) {
         if (parent != null) {
             if (name.trim().length() > 0) {
-                NodeData node = parent.getNode((String) intern.intern(name));
+                NodeData node = parent.getNode(intern.intern(name));
                 if (node == null) {
                     try {
-                        node = new NodeData((String) intern.intern(name), parent, k, intern);
+                        node = new NodeData(intern.intern(name), parent, k, intern);
                     } catch (Exception exception) {
                         LogGui.printException(exception);
                     }
                 }
             }
-            cats.add((String) intern.intern(name));
+            cats.add(intern.intern(name));
         }
     }
 
@@ -17,14 +17,11 @@ package org.thesemproject.opensem.classification;
 
 import static org.thesemproject.opensem.classification.IndexManager.BODY;
 import org.thesemproject.opensem.tagcloud.TagCloudResults;
-import java.io.StringReader;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.CharArrayReader;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.core.SimpleAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 
 /**
  * Tokenizzatore di testi utilizzando l'analizzatore sintattico multilingua
@@ -57,24 +54,17 @@ public class Tokenizer {
      * @throws Exception Eccezione
      */
     public static String tokenize(String text, Analyzer analyzer, int tokens) throws Exception {
-        TokenizerFilter tf = new TokenizerFilter() {
-            private final StringBuilder body = new StringBuilder();
-
-            @Override
-            public void applyTo(String term) {
-                if (term != null) {
-                    if (term.trim().length() > 0) {
-                        body.append(term).append(" ");
-                    }
+        final StringBuilder body = new StringBuilder(text == null ? 0 : text.length());
+        CharTokenizerFilter tf = (char[] buffer, int offset, int length) -> {
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] > ' ') { //Come term.trim().length() > 0
+                    body.append(buffer, offset, length).append(' ');
+                    break;
                 }
             }
-
-            public String toString() {
-                return body.toString().trim();
-            }
         };
         tokenize(text, analyzer, tokens, tf);
-        return tf.toString();
+        return body.toString().trim();
     }
 
     /**
@@ -110,7 +100,13 @@ public class Tokenizer {
         tokenize(text, new SimpleAnalyzer(), -1, tf);
     }
 
-    private static Pattern preplace = Pattern.compile("\\P{L}"); //[^a-zA-Z]
+    /**
+     * Dimensione massima del buffer di normalizzazione che resta associato al
+     * thread. Testi più lunghi usano un buffer temporaneo
+     */
+    private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+    private static final ThreadLocal<NormalizationBuffer> buffers = ThreadLocal.withInitial(NormalizationBuffer::new);
 
     /**
      * Tokenizza un testo utilizzando il filtro passato come parametro
@@ -125,6 +121,29 @@ public class Tokenizer {
      * @throws Exception Eccezione
      */
     public static void tokenize(String text, Analyzer analyzer, int tokens, TokenizerFilter filter) throws Exception {
+        tokenize(text, analyzer, tokens, (char[] buffer, int offset, int length) -> {
+            filter.applyTo(new String(buffer, offset, length));
+        });
+    }
+
+    /**
+     * Tokenizza un testo passando i token al filtro direttamente come porzioni
+     * del buffer dell'analizzatore, senza creare una stringa per ogni token.
+     *
+     * Il testo viene messo in minuscolo e ogni carattere che non è una lettera
+     * viene sostituito da uno spazio in un buffer riutilizzato dal thread;
+     * l'analizzatore legge direttamente da questo buffer
+     *
+     * @since 1.9.3
+     *
+     * @param text testo da tokenizzare
+     * @param analyzer analizzatore sintattico
+     * @param tokens numero massimo di token da tenere
+     * @param filter filtro che riceve i token. Il buffer è valido solo durante
+     * la chiamata
+     * @throws Exception Eccezione
+     */
+    public static void tokenize(String text, Analyzer analyzer, int tokens, CharTokenizerFilter filter) throws Exception {
         if (text == null) {
             return;
         }
@@ -132,30 +151,74 @@ public class Tokenizer {
             return;
         }
         text = text.toLowerCase();
-        Matcher m = preplace.matcher(text);
-        StringBuffer sb = new StringBuffer();
-        while (m.find()) {
-            m.appendReplacement(sb, " ");
+        //Il filtro può tokenizzare a sua volta (vedi getTagClasses): in quel caso si usa un buffer temporaneo
+        NormalizationBuffer nb = buffers.get();
+        boolean owner = !nb.busy && text.length() <= MAX_RETAINED_BUFFER;
+        char[] chars;
+        if (owner) {
+            nb.busy = true;
+            if (nb.chars.length < text.length()) {
+                nb.chars = new char[Math.max(text.length(), nb.chars.length * 2)];
+            }
+            chars = nb.chars;
+        } else {
+            chars = new char[text.length()];
         }
-        m.appendTail(sb);
-        TokenStream tokenStream = analyzer.tokenStream(BODY, new StringReader(sb.toString()));
-        OffsetAttribute offsetAttribute = tokenStream.addAttribute(OffsetAttribute.class);
-        CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
-        tokenStream.reset();
-        int tokenNumber = 0;
-        while (tokenStream.incrementToken()) {
-            int startOffset = offsetAttribute.startOffset();
-            int endOffset = offsetAttribute.endOffset();
-            String term = charTermAttribute.toString();
-            filter.applyTo(term);
-            tokenNumber++;
-            if (tokens != -1) {
-                if (tokenNumber > tokens) {
-                    break;
+        try {
+            int length = normalize(text, chars);
+            TokenStream tokenStream = analyzer.tokenStream(BODY, new CharArrayReader(chars, 0, length));
+            try {
+                CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+                tokenStream.reset();
+                int tokenNumber = 0;
+                while (tokenStream.incrementToken()) {
+                    filter.applyTo(charTermAttribute.buffer(), 0, charTermAttribute.length());
+                    tokenNumber++;
+                    if (tokens != -1) {
+                        if (tokenNumber > tokens) {
+                            break;
+                        }
+                    }
                 }
+            } finally {
+                tokenStream.close();
+            }
+        } finally {
+            if (owner) {
+                nb.busy = false;
             }
         }
-        tokenStream.close();
+    }
+
+    /**
+     * Sostituisce con uno spazio ogni code point che non è una lettera (come
+     * la regex \P{L}). Un code point fuori dal BMP occupa due char ma viene
+     * sostituito da un solo spazio
+     *
+     * @param text testo (già in minuscolo)
+     * @param chars buffer di destinazione, lungo almeno quanto il testo
+     * @return numero di caratteri scritti
+     */
+    private static int normalize(String text, char[] chars) {
+        int length = 0;
+        int len = text.length();
+        for (int i = 0; i < len;) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(i + 1));
+                if (Character.isLetter(cp)) {
+                    chars[length++] = c;
+                    chars[length++] = text.charAt(i + 1);
+                } else {
+                    chars[length++] = ' ';
+                }
+                i += 2;
+            } else {
+                chars[length++] = Character.isLetter(c) ? c : ' ';
+                i++;
+            }
+        }
+        return length;
     }
 
     /**
@@ -219,4 +282,33 @@ public class Tokenizer {
 
     }
 
+    /**
+     * Filtro di tokenizzazione che riceve il token come porzione di un buffer
+     * di caratteri, senza creare stringhe.
+     *
+     * @since 1.9.3
+     */
+    public interface CharTokenizerFilter {
+
+        /**
+         * Applica la tokenizzazione al termine
+         *
+         * @param buffer buffer che contiene il termine (valido solo durante la
+         * chiamata)
+         * @param offset posizione di inizio del termine
+         * @param length lunghezza del termine
+         */
+        public void applyTo(char[] buffer, int offset, int length);
+
+    }
+
+    /**
+     * Buffer di normalizzazione associato al thread
+     */
+    private static class NormalizationBuffer {
+
+        private char[] chars = new char[1024];
+        private boolean busy = false;
+    }
+
 }
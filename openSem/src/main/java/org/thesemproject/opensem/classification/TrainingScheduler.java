@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.classification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.LeafReader;
+import org.thesemproject.opensem.gui.LogGui;
+
+/**
+ * Schedulatore dell'istruzione del motore di classificazione.
+ *
+ * Istruisce in parallelo le lingue e, all'interno di ogni lingua, i nodi
+ * dell'albero utilizzando un fork join pool limitato. L'istruzione di un nodo
+ * dipende solo dall'indice della lingua e dal nome del nodo quindi i nodi sono
+ * tra loro indipendenti e l'albero risultante è lo stesso dell'istruzione
+ * sequenziale.
+ *
+ * @since 1.9.3
+ */
+public class TrainingScheduler {
+
+    private final ForkJoinPool pool;
+    private final AtomicInteger submitted;
+    private final AtomicInteger completed;
+    private final int progressStep;
+
+    /**
+     * Crea lo schedulatore con un thread per processore
+     */
+    public TrainingScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea lo schedulatore
+     *
+     * @param threads numero massimo di thread di istruzione
+     */
+    public TrainingScheduler(int threads) {
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        this.submitted = new AtomicInteger(0);
+        this.completed = new AtomicInteger(0);
+        this.progressStep = 10;
+    }
+
+    /**
+     * Esegue in parallelo un insieme di attività (ad esempio l'istruzione di
+     * più lingue) e ne attende la terminazione
+     *
+     * @param <T> tipo del risultato
+     * @param tasks attività da eseguire
+     * @return risultati nello stesso ordine delle attività
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<ForkJoinTask<T>> forks = new ArrayList<>(tasks.size());
+        tasks.stream().forEach((task) -> {
+            forks.add(pool.submit(task));
+        });
+        List<T> ret = new ArrayList<>(forks.size());
+        forks.stream().forEach((fork) -> {
+            ret.add(fork.join());
+        });
+        return ret;
+    }
+
+    /**
+     * Istruisce in parallelo i nodi di una lingua e attende la fine
+     * dell'istruzione. Può essere invocato sia dall'esterno sia da un'attività
+     * già in esecuzione sul pool (in quel caso il thread chiamante partecipa
+     * all'istruzione invece di restare in attesa)
+     *
+     * @param nodes nodi da istruire
+     * @param ar reader lucene
+     * @param ts insieme di istruzione della lingua
+     * @param vectors indice vettoriale della lingua (null se il KNN vettoriale
+     * non è attivo)
+     * @param analyzer analizzatore sintattico
+     * @param language lingua
+     */
+    public void trainNodes(List<NodeData> nodes, LeafReader ar, BayesTrainingSet ts, KnnVectorIndex vectors, Analyzer analyzer, String language) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(nodes.size());
+        submitted.addAndGet(nodes.size());
+        nodes.stream().forEach((node) -> {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                node.train(ar, ts, vectors, analyzer, language);
+                progress(language);
+            }));
+        });
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        }
+    }
+
+    private void progress(String language) {
+        int done = completed.incrementAndGet();
+        int total = submitted.get();
+        if (done % progressStep == 0 || done == total) {
+            LogGui.info("Training progress (" + language + "): " + done + "/" + total + " nodes");
+        }
+    }
+
+    /**
+     * Ritorna il numero di nodi istruiti
+     *
+     * @return nodi istruiti
+     */
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Ritorna il numero di nodi da istruire
+     *
+     * @return nodi sottomessi
+     */
+    public int getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * Chiude il pool dei thread
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -17,6 +17,10 @@ package org.thesemproject.opensem.gui;
 
 import java.io.File;
 import java.io.RandomAccessFile;
+import org.thesemproject.opensem.classification.KnnVectorIndex;
+import org.thesemproject.opensem.classification.MulticlassEngine;
+import org.thesemproject.opensem.parser.OcrScheduler;
+import org.thesemproject.opensem.parser.ParsedTextCache;
 
 /**
  * Gestisce il salvataggio su file .ini dei parametri dell'interfaccia grafica
@@ -33,6 +37,12 @@ public class SemConfiguration {
     private String language;
     private String learningFactor;
     private String ocrPath;
+    private String ocrProcesses;
+    private String parseCacheFolder;
+    private String parseCacheSize;
+    private String parallelSegments;
+    private String vectorKnn;
+    private String knnCandidates;
 
     private final static String FILE_NAME = "./configuration.ini";
 
@@ -52,7 +62,9 @@ public class SemConfiguration {
                     if (line.startsWith("th")) {
                         threshold = line.substring(line.indexOf("=") + 1);
                     }
-                    if (line.startsWith("k")) {
+                    if (line.startsWith("knnCandidates")) {
+                        knnCandidates = line.substring(line.indexOf("=") + 1);
+                    } else if (line.startsWith("k")) {
                         kFactor = line.substring(line.indexOf("=") + 1);
                     }
                     if (line.startsWith("segment")) {
@@ -67,9 +79,23 @@ public class SemConfiguration {
                     if (line.startsWith("learning")) {
                         learningFactor = line.substring(line.indexOf("=") + 1);
                     }
-                    if (line.startsWith("ocr")) {
+                    if (line.startsWith("ocrProcesses")) {
+                        ocrProcesses = line.substring(line.indexOf("=") + 1);
+                    } else if (line.startsWith("ocr")) {
                         ocrPath = line.substring(line.indexOf("=") + 1);
                     }
+                    if (line.startsWith("parseCacheFolder")) {
+                        parseCacheFolder = line.substring(line.indexOf("=") + 1);
+                    }
+                    if (line.startsWith("parseCacheSize")) {
+                        parseCacheSize = line.substring(line.indexOf("=") + 1);
+                    }
+                    if (line.startsWith("parallelSegments")) {
+                        parallelSegments = line.substring(line.indexOf("=") + 1);
+                    }
+                    if (line.startsWith("vectorKnn")) {
+                        vectorKnn = line.substring(line.indexOf("=") + 1);
+                    }
                 }
                 RAF.close();
             } else {
@@ -82,6 +108,12 @@ public class SemConfiguration {
                 language = "it";
                 learningFactor = "10";
                 ocrPath = "";
+                getOcrProcesses();
+                getParseCacheFolder();
+                getParseCacheSize();
+                getParallelSegments();
+                getVectorKnn();
+                getKnnCandidates();
                 writeToFile(RAF);
                 RAF.close();
             }
@@ -151,7 +183,13 @@ public class SemConfiguration {
         RAF.writeBytes("last=" + lastFolder + "\r\n");
         RAF.writeBytes("lang=" + language + "\r\n");
         RAF.writeBytes("ocrPath=" + ocrPath + "\r\n");
+        RAF.writeBytes("ocrProcesses=" + getOcrProcesses() + "\r\n");
         RAF.writeBytes("learning=" + learningFactor + "\r\n");
+        RAF.writeBytes("parseCacheFolder=" + getParseCacheFolder() + "\r\n");
+        RAF.writeBytes("parseCacheSize=" + getParseCacheSize() + "\r\n");
+        RAF.writeBytes("parallelSegments=" + getParallelSegments() + "\r\n");
+        RAF.writeBytes("vectorKnn=" + getVectorKnn() + "\r\n");
+        RAF.writeBytes("knnCandidates=" + getKnnCandidates() + "\r\n");
     }
 
     /**
@@ -224,4 +262,105 @@ public class SemConfiguration {
         return ocrPath;
     }
 
+    /**
+     * Ritorna il numero massimo di processi OCR contemporanei (chiave
+     * ocrProcesses, predefinito il numero di processori)
+     *
+     * @since 1.9.3
+     * @return numero di processi
+     */
+    public String getOcrProcesses() {
+        if (ocrProcesses == null) {
+            ocrProcesses = String.valueOf(OcrScheduler.getMaxProcesses());
+        }
+        return ocrProcesses;
+    }
+
+    /**
+     * Ritorna la cartella della cache dei risultati del parsing (chiave
+     * parseCacheFolder, vuota per non usare la cache)
+     *
+     * @since 1.9.3
+     * @return cartella della cache
+     */
+    public String getParseCacheFolder() {
+        if (parseCacheFolder == null) {
+            parseCacheFolder = "./parsecache";
+        }
+        return parseCacheFolder;
+    }
+
+    /**
+     * Ritorna la dimensione massima in MB della cache dei risultati del
+     * parsing (chiave parseCacheSize, 0 per non usare la cache)
+     *
+     * @since 1.9.3
+     * @return dimensione massima in MB
+     */
+    public String getParseCacheSize() {
+        if (parseCacheSize == null) {
+            parseCacheSize = String.valueOf(ParsedTextCache.DEFAULT_MAX_SIZE / (1024 * 1024));
+        }
+        return parseCacheSize;
+    }
+
+    /**
+     * Ritorna il numero di thread usati per elaborare in parallelo i segmenti
+     * di un documento (chiave parallelSegments, 1 per l'elaborazione
+     * sequenziale)
+     *
+     * @since 1.9.3
+     * @return numero di thread
+     */
+    public String getParallelSegments() {
+        if (parallelSegments == null) {
+            parallelSegments = "1";
+        }
+        return parallelSegments;
+    }
+
+    /**
+     * Ritorna true se il classificatore usa il KNN vettoriale (chiave
+     * vectorKnn, predefinito false)
+     *
+     * @since 1.9.3
+     * @return "true" se il KNN vettoriale è attivo
+     */
+    public String getVectorKnn() {
+        if (vectorKnn == null) {
+            vectorKnn = "false";
+        }
+        return vectorKnn;
+    }
+
+    /**
+     * Ritorna il budget di documenti candidati del KNN vettoriale (chiave
+     * knnCandidates)
+     *
+     * @since 1.9.3
+     * @return budget dei candidati
+     */
+    public String getKnnCandidates() {
+        if (knnCandidates == null) {
+            knnCandidates = String.valueOf(KnnVectorIndex.DEFAULT_CANDIDATES);
+        }
+        return knnCandidates;
+    }
+
+    /**
+     * Applica la configurazione del KNN vettoriale a un motore di
+     * classificazione (prima della init)
+     *
+     * @since 1.9.3
+     * @param me motore di classificazione
+     */
+    public void configure(MulticlassEngine me) {
+        me.setVectorKnn(Boolean.parseBoolean(getVectorKnn().trim()));
+        try {
+            me.setKnnCandidates(Integer.parseInt(getKnnCandidates().trim()));
+        } catch (NumberFormatException e) {
+            LogGui.printException(e);
+        }
+    }
+
 }
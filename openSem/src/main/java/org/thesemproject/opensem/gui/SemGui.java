@@ -37,6 +37,8 @@ import org.thesemproject.opensem.gui.utils.FilesAndSegmentsUtils;
 import org.thesemproject.opensem.gui.utils.PatternsUtils;
 import org.thesemproject.opensem.gui.utils.TablesUtils;
 import org.thesemproject.opensem.parser.DocumentParser;
+import org.thesemproject.opensem.parser.OcrScheduler;
+import org.thesemproject.opensem.parser.ParsedTextCache;
 import org.thesemproject.opensem.gui.process.ReadClassifyWrite;
 import org.thesemproject.opensem.gui.process.ReadSegmentWrite;
 import org.thesemproject.opensem.gui.process.ReadFolderToTable;
@@ -135,6 +137,10 @@ public class SemGui extends javax.swing.JFrame {
      */
     public SemGui() {
         cc = new SemConfiguration();
+        cc.configure(ME);
+        initParseCache();
+        initSegmentParallelism();
+        initOcrProcesses();
         evaluations = new RankEvaluations();
         initComponents();
         GuiUtils.prepareTables(this);
@@ -240,6 +246,51 @@ public class SemGui extends javax.swing.JFrame {
         categorieSegmentsPanel.setCellRenderer(new MyCellRenderer());
     }
 
+    /**
+     * Attiva la cache dei risultati del parsing con cartella e dimensione
+     * della configurazione. Con cartella vuota o dimensione 0 la cache non
+     * viene usata
+     */
+    private void initParseCache() {
+        try {
+            String folder = cc.getParseCacheFolder().trim();
+            long size = Long.parseLong(cc.getParseCacheSize().trim());
+            if (folder.length() > 0 && size > 0) {
+                DP.setCache(new ParsedTextCache(new File(folder), size * 1024 * 1024));
+            } else {
+                LogGui.info("Parsed text cache disabled");
+            }
+        } catch (NumberFormatException e) {
+            LogGui.printException(e);
+        }
+    }
+
+    /**
+     * Imposta il numero di thread con cui il segmentatore elabora i segmenti
+     * di un documento, letto dalla configurazione
+     */
+    private void initSegmentParallelism() {
+        try {
+            SE.setParallelism(Integer.parseInt(cc.getParallelSegments().trim()));
+            LogGui.info("Segment parallelism: " + SE.getParallelism());
+        } catch (NumberFormatException e) {
+            LogGui.printException(e);
+        }
+    }
+
+    /**
+     * Imposta il numero massimo di processi OCR contemporanei letto dalla
+     * configurazione
+     */
+    private void initOcrProcesses() {
+        try {
+            OcrScheduler.setMaxProcesses(Integer.parseInt(cc.getOcrProcesses().trim()));
+            LogGui.info("OCR processes: " + OcrScheduler.getMaxProcesses());
+        } catch (NumberFormatException e) {
+            LogGui.printException(e);
+        }
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -11207,6 +11258,7 @@ public class SemGui extends javax.swing.JFrame {
                     ME.closeAllReaders();
                 }
                 ME = new MulticlassEngine();
+                cc.configure(ME);
                 if (ME.init(percorsoIndice.getText(), Integer.parseInt(fattoreK.getText()), rebuildIndex.isSelected())) {
                     StopWordsUtils.populateStopWords(this);
                     LuceneIndexUtils.populateIndex(this);
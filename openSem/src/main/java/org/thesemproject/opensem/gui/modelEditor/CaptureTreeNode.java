@@ -101,8 +101,8 @@ public class CaptureTreeNode extends ModelTreeNode {
      * @param cc configurazione del nodo
      */
     public void setConfiguration(CaptureConfiguration cc) {
-        captureType = (String) intern.intern(cc.getType());
-        captureFormat = (String) intern.intern(cc.getFormat());
+        captureType = intern.intern(cc.getType());
+        captureFormat = intern.intern(cc.getFormat());
         temporary = cc.isTemporary();
         notSubscribe = cc.isNotSubscribe();
         startPeriod = cc.isStartPeriod();
@@ -119,9 +119,9 @@ public class CaptureTreeNode extends ModelTreeNode {
     public void addPattern(int position, String value, String normalization) {
         String[] row = new String[4];
         row[0] = String.valueOf(value.hashCode());
-        row[1] = (String) intern.intern(value.toLowerCase());
-        row[2] = (String) intern.intern(String.valueOf(position));
-        row[3] = (String) intern.intern(normalization);
+        row[1] = intern.intern(value.toLowerCase());
+        row[2] = intern.intern(String.valueOf(position));
+        row[3] = intern.intern(normalization);
         patterns.put(row[0], row);
     }
 
@@ -188,9 +188,9 @@ public class CaptureTreeNode extends ModelTreeNode {
     public void updatePattern(String id, int position, String value, String normalization) {
         String[] row = new String[4];
         row[0] = id;
-        row[1] = (String) intern.intern(value.toLowerCase());
-        row[2] = (String) intern.intern(String.valueOf(position));
-        row[3] = (String) intern.intern(normalization);
+        row[1] = intern.intern(value.toLowerCase());
+        row[2] = intern.intern(String.valueOf(position));
+        row[3] = intern.intern(normalization);
         patterns.put(id, row);
     }
 
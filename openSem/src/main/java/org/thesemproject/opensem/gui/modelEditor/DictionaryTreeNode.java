@@ -72,8 +72,8 @@ public class DictionaryTreeNode extends ModelTreeNode {
         }
 
         String[] row = new String[2];
-        row[0] = (String) intern.intern(name);
-        row[1] = (String) intern.intern(value.toLowerCase());
+        row[0] = intern.intern(name);
+        row[1] = intern.intern(value.toLowerCase());
         tableContent.put(name, row);
     }
 
@@ -108,7 +108,7 @@ public class DictionaryTreeNode extends ModelTreeNode {
     public void updateDefinition(String name, String value) {
         String[] row = tableContent.get(name);
         if (row != null) {
-            row[1] = (String) intern.intern(value);
+            row[1] = intern.intern(value);
             tableContent.put(name, row);
         }
     }
@@ -84,7 +84,7 @@ public class FormulaTreeNode extends ModelTreeNode {
         String[] row = new String[2];
         String key = String.valueOf(value.hashCode());
         row[0] = key;
-        row[1] = (String) intern.intern(value);
+        row[1] = intern.intern(value);
         captures.put(key, row);
     }
 
@@ -115,7 +115,7 @@ public class FormulaTreeNode extends ModelTreeNode {
     public void updateCapture(String key, String value) {
         String[] row = new String[2];
         row[0] = key;
-        row[1] = (String) intern.intern(value.toLowerCase());
+        row[1] = intern.intern(value.toLowerCase());
         captures.put(key, row);
     }
 
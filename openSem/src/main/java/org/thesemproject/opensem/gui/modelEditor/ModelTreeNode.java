@@ -128,7 +128,7 @@ public class ModelTreeNode extends DefaultMutableTreeNode {
      */
     public ModelTreeNode(String nodeName, int nodeType) {
         super(intern.intern(nodeName));
-        this.nodeName = (String) intern.intern(nodeName);
+        this.nodeName = intern.intern(nodeName);
         this.nodeType = nodeType;
     }
 
@@ -68,7 +68,7 @@ public class SegmentTreeNode extends ModelTreeNode {
         String[] row = new String[2];
         String key = String.valueOf(value.hashCode());
         row[0] = key;
-        row[1] = (String) intern.intern(value.toLowerCase());
+        row[1] = intern.intern(value.toLowerCase());
         patterns.put(key, row);
     }
 
@@ -126,7 +126,7 @@ public class SegmentTreeNode extends ModelTreeNode {
     public void updatePattern(String key, String value) {
         String[] row = new String[2];
         row[0] = key;
-        row[1] = (String) intern.intern(value.toLowerCase());
+        row[1] = intern.intern(value.toLowerCase());
         patterns.put(key, row);
     }
 
@@ -75,7 +75,7 @@ public class TableTreeNode extends ModelTreeNode {
      * @param value valore della tabella
      */
     public void addRecord(String value) {
-        tableContent.add((String) intern.intern(value));
+        tableContent.add(intern.intern(value));
     }
 
     /**
@@ -0,0 +1,92 @@
+/* 
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.gui.process;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.bson.Document;
+import org.thesemproject.opensem.classification.ClassificationPath;
+import org.thesemproject.opensem.utils.BSonUtils;
+
+/**
+ * Scrive i risultati della classificazione su un file CSV (UTF-8, separatore
+ * ';'). Per ogni riga: foglio e riga di input, testo e, per i primi due
+ * percorsi di classificazione, nodo e punteggio di ogni livello
+ *
+ * @since 1.9.3
+ */
+public class ClassificationCsvWriter implements ClassificationResultWriter {
+
+    private static final String[] RANKS = {"1st", "2nd"};
+
+    private final CSVPrinter printer;
+    private final List<Object> record;
+
+    /**
+     * Crea il file
+     *
+     * @param fileName nome del file csv
+     * @throws IOException Eccezione di input/output
+     */
+    public ClassificationCsvWriter(String fileName) throws IOException {
+        printer = new CSVPrinter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8)), CSVFormat.DEFAULT.withDelimiter(';'));
+        record = new ArrayList<>();
+        record.add("Sheet");
+        record.add("Row");
+        record.add("Text");
+        for (String rank : RANKS) {
+            for (int i = 1; i <= ClassificationPath.MAX_DEEP; i++) {
+                record.add(rank + " Level" + i);
+                record.add(rank + " Score" + i);
+            }
+        }
+        printer.printRecord(record);
+    }
+
+    @Override
+    public void write(Document document) throws IOException {
+        record.clear();
+        record.add(document.getInteger("Sheet"));
+        record.add(document.getInteger("RowId"));
+        record.add(document.getString(BSonUtils.TEXT));
+        for (int p = 1; p <= RANKS.length; p++) {
+            String[] path = (String[]) document.get("BayesPath" + p);
+            double[] score = (double[]) document.get("BayesScore" + p);
+            for (int i = 0; i < ClassificationPath.MAX_DEEP; i++) {
+                if (path != null && path[i] != null) {
+                    record.add(path[i]);
+                    record.add(score[i]);
+                } else {
+                    record.add("");
+                    record.add("");
+                }
+            }
+        }
+        printer.printRecord(record);
+    }
+
+    @Override
+    public void close() throws IOException {
+        printer.close();
+    }
+}
@@ -0,0 +1,126 @@
+/* 
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.gui.process;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.bson.Document;
+import org.thesemproject.opensem.classification.ClassificationPath;
+import org.thesemproject.opensem.gui.LogGui;
+import org.thesemproject.opensem.utils.BSonUtils;
+
+/**
+ * Scrive i risultati della classificazione su un file excel in streaming.
+ *
+ * Ogni documento va nella riga successiva alla sua riga di input (la riga 0
+ * è l'intestazione). Le righe devono arrivare in ordine: SXSSFWorkbook tiene
+ * in memoria solo le ultime righe scritte. Se la riga di input è già stata
+ * superata (ad esempio nel secondo foglio di input) il documento va nella
+ * prima riga libera.
+ *
+ * @since 1.9.3
+ */
+public class ClassificationExcelWriter implements ClassificationResultWriter {
+
+    private final String fileName;
+    private final SXSSFWorkbook workbook;
+    private final Sheet sheet;
+    private int lastRow;
+
+    /**
+     * Crea il file
+     *
+     * @param fileName nome del file xlsx
+     */
+    public ClassificationExcelWriter(String fileName) {
+        this.fileName = fileName;
+        workbook = new SXSSFWorkbook();
+        sheet = workbook.createSheet();
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Text");
+        header.createCell(1).setCellValue("1st Level1");
+        header.createCell(2).setCellValue("1st Score1");
+        header.createCell(3).setCellValue("1st Level2");
+        header.createCell(4).setCellValue("1st Score2");
+        header.createCell(5).setCellValue("1st Level3");
+        header.createCell(6).setCellValue("1st Score3");
+        header.createCell(7).setCellValue("1st Level4");
+        header.createCell(8).setCellValue("1st Score4");
+        header.createCell(7).setCellValue("1st Level5");
+        header.createCell(8).setCellValue("1st Score5");
+        header.createCell(9).setCellValue("1st Level6");
+        header.createCell(10).setCellValue("1st Score6");
+        header.createCell(11).setCellValue("2nd Level1");
+        header.createCell(12).setCellValue("2nd Score1");
+        header.createCell(13).setCellValue("2nd Level2");
+        header.createCell(14).setCellValue("2nd Score2");
+        header.createCell(15).setCellValue("2nd Level3");
+        header.createCell(16).setCellValue("2nd Score3");
+        header.createCell(17).setCellValue("2nd Level4");
+        header.createCell(18).setCellValue("2nd Score4");
+        header.createCell(19).setCellValue("2nd Level5");
+        header.createCell(20).setCellValue("2nd Score5");
+        header.createCell(21).setCellValue("2nd Level6");
+        header.createCell(22).setCellValue("2nd Score6");
+        lastRow = 0;
+    }
+
+    @Override
+    public void write(Document document) throws IOException {
+        int idRow = Math.max(document.getInteger("RowId") + 1, lastRow + 1);
+        lastRow = idRow;
+        Row row = sheet.createRow(idRow);
+        row.createCell(0).setCellValue(document.getString(BSonUtils.TEXT));
+        String[] bayesPath1 = (String[]) document.get("BayesPath1");
+        String[] bayesPath2 = (String[]) document.get("BayesPath2");
+        double[] score1 = (double[]) document.get("BayesScore1");
+        double[] score2 = (double[]) document.get("BayesScore2");
+        if (bayesPath1 != null) {
+            for (int i = 0; i < ClassificationPath.MAX_DEEP; i++) {
+                String node = bayesPath1[i];
+                if (node != null) {
+                    double score = score1[i];
+                    row.createCell((2 * i) + 1).setCellValue(node);
+                    row.createCell((2 * i) + 2).setCellValue(score);
+                }
+            }
+            if (bayesPath2 != null) {
+                for (int i = 0; i < ClassificationPath.MAX_DEEP; i++) {
+                    String node = bayesPath2[i];
+                    if (node != null) {
+                        double score = score2[i];
+                        row.createCell((2 * i) + 9).setCellValue(node);
+                        row.createCell((2 * i) + 10).setCellValue(score);
+                    }
+                }
+            }
+        }
+        if (row.getRowNum() % 1000 == 0) {
+            LogGui.info("Write: " + row.getRowNum());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(fileName)) {
+            workbook.write(fos);
+        }
+        workbook.dispose();
+    }
+}
@@ -0,0 +1,83 @@
+/* 
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.gui.process;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.bson.Document;
+import org.thesemproject.opensem.classification.ClassificationPath;
+import org.thesemproject.opensem.utils.BSonUtils;
+
+/**
+ * Scrive i risultati della classificazione su un file JSON lines: un oggetto
+ * per riga con foglio ("sheet") e riga ("row") di input, testo ("text") e i
+ * percorsi di classificazione ("classifications"), ognuno con i nodi
+ * ("path") e i punteggi ("score") dei livelli
+ *
+ * @since 1.9.3
+ */
+public class ClassificationJsonWriter implements ClassificationResultWriter {
+
+    private final JsonGenerator generator;
+
+    /**
+     * Crea il file
+     *
+     * @param fileName nome del file jsonl
+     * @throws IOException Eccezione di input/output
+     */
+    public ClassificationJsonWriter(String fileName) throws IOException {
+        generator = new JsonFactory().createGenerator(new FileOutputStream(fileName), JsonEncoding.UTF8);
+        generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+    }
+
+    @Override
+    public void write(Document document) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("sheet", document.getInteger("Sheet"));
+        generator.writeNumberField("row", document.getInteger("RowId"));
+        generator.writeStringField("text", document.getString(BSonUtils.TEXT));
+        generator.writeArrayFieldStart("classifications");
+        for (int p = 1; document.containsKey("BayesPath" + p); p++) {
+            String[] path = (String[]) document.get("BayesPath" + p);
+            double[] score = (double[]) document.get("BayesScore" + p);
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("path");
+            for (int i = 0; i < ClassificationPath.MAX_DEEP && path[i] != null; i++) {
+                generator.writeString(path[i]);
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("score");
+            for (int i = 0; i < ClassificationPath.MAX_DEEP && path[i] != null; i++) {
+                generator.writeNumber(score[i]);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.writeRaw('\n');
+        generator.close();
+    }
+}
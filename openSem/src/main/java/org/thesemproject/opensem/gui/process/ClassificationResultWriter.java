@@ -0,0 +1,46 @@
+/* 
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.gui.process;
+
+import java.io.IOException;
+import org.bson.Document;
+
+/**
+ * Scrive i risultati della classificazione batch di ReadClassifyWrite. I
+ * documenti arrivano nell'ordine delle righe lette e contengono il foglio
+ * ("Sheet"), la riga ("RowId"), il testo e i primi due percorsi di
+ * classificazione con i punteggi ("BayesPath1", "BayesScore1", "BayesPath2",
+ * "BayesScore2")
+ *
+ * @since 1.9.3
+ */
+public interface ClassificationResultWriter {
+
+    /**
+     * Scrive un documento
+     *
+     * @param document documento classificato
+     * @throws IOException Eccezione di input/output
+     */
+    void write(Document document) throws IOException;
+
+    /**
+     * Completa e chiude il file
+     *
+     * @throws IOException Eccezione di input/output
+     */
+    void close() throws IOException;
+}
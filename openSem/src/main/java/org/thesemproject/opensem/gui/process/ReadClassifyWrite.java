@@ -15,23 +15,20 @@
  */
 package org.thesemproject.opensem.gui.process;
 
-import org.thesemproject.opensem.utils.ParallelProcessor;
-import org.thesemproject.opensem.utils.FinalBoolean;
+import org.thesemproject.opensem.utils.Pipeline;
+import org.thesemproject.opensem.utils.ReorderBuffer;
 import org.thesemproject.opensem.classification.MulticlassEngine;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.thesemproject.opensem.classification.ClassificationPath;
 import org.thesemproject.opensem.gui.LogGui;
 import org.thesemproject.opensem.parser.DocumentParser;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import org.thesemproject.opensem.parser.SpreadsheetReader;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.streaming.SXSSFWorkbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import java.util.Map;
 import org.bson.Document;
 import org.thesemproject.opensem.utils.BSonUtils;
 
@@ -43,30 +40,44 @@ import org.thesemproject.opensem.utils.BSonUtils;
 public class ReadClassifyWrite {
 
     /**
-     * Coda che gestice i dati letti da Excel
+     * Dimensione delle code tra lettura, classificazione e scrittura
+     *
+     * @since 1.9.3
      */
-    protected final Queue<Document> toDoList;
+    protected static final int QUEUE_SIZE = 50;
 
     /**
-     * Coda che cestisce i dati da scrivere
+     * Numero di processori
      */
-    protected final Queue<Document> toWriteList;
+    protected final int processors;
 
     /**
-     * true se il sistema sta ancora leggendo, false se il sistema ha finito di
-     * leggere
+     * Numero massimo di documenti classificati insieme da un thread
+     *
+     * @since 1.9.3
      */
-    protected final FinalBoolean isReading;
+    protected static final int BATCH_SIZE = 16;
 
     /**
-     * Integer atomico per essere dichiarato final ma modificabile nel thread
+     * Risultati in excel
+     *
+     * @since 1.9.3
      */
-    protected final AtomicInteger classifingThread;
+    public static final String FORMAT_XLSX = "xlsx";
 
     /**
-     * Numero di processori
+     * Risultati in CSV
+     *
+     * @since 1.9.3
      */
-    protected final int processors;
+    public static final String FORMAT_CSV = "csv";
+
+    /**
+     * Risultati in JSON lines (un oggetto JSON per riga)
+     *
+     * @since 1.9.3
+     */
+    public static final String FORMAT_JSONL = "jsonl";
 
     /**
      * Inizializza il processo
@@ -74,16 +85,13 @@ public class ReadClassifyWrite {
      * @param processors numero di processori
      */
     public ReadClassifyWrite(int processors) {
-        toDoList = new LinkedBlockingQueue<>(50);
-        toWriteList = new LinkedBlockingQueue<>(50);
         this.processors = processors;
-        isReading = new FinalBoolean(false);
-        classifingThread = new AtomicInteger(0);
     }
 
     /**
      * Esegue il processo. Di fatto legge con un processo, scrive con un
-     * processo e classifica con n processi in parallelo
+     * processo e classifica con n processi in parallelo. Se il file di input è
+     * un CSV i risultati vengono scritti in CSV, altrimenti in excel
      *
      * @param inputFile file di input
      * @param descriptionColumn colonna descrizione
@@ -91,159 +99,170 @@ public class ReadClassifyWrite {
      * @param dp parser
      */
     public void process(final String inputFile, final int descriptionColumn, final MulticlassEngine me, final DocumentParser dp) {
+        process(inputFile, descriptionColumn, me, dp, inputFile.toLowerCase().endsWith(".csv") ? FORMAT_CSV : FORMAT_XLSX);
+    }
+
+    /**
+     * Esegue il processo scrivendo i risultati nel formato indicato sul file
+     * inputFile.class.[formato].
+     *
+     * I documenti classificati vengono rimessi nell'ordine di lettura prima di
+     * essere scritti: la lettura si ferma quando ci sono troppi documenti non
+     * ancora scritti, quindi la memoria usata non dipende dalla dimensione del
+     * file
+     *
+     * @since 1.9.3
+     * @param inputFile file di input
+     * @param descriptionColumn colonna descrizione
+     * @param me motore di classificazione
+     * @param dp parser
+     * @param format formato di output (FORMAT_XLSX, FORMAT_CSV o FORMAT_JSONL)
+     */
+    public void process(final String inputFile, final int descriptionColumn, final MulticlassEngine me, final DocumentParser dp, final String format) {
+        final String outputFile = inputFile + ".class." + format;
+        final ClassificationResultWriter writer;
+        try {
+            writer = getWriter(outputFile, format);
+        } catch (IOException e) {
+            LogGui.printException(e);
+            return;
+        }
         //Costruisce 2+n processi: uno per leggere, n per classificare, uno per scrivere
-        isReading.setValue(true); //dice che sta leggendo
-        classifingThread.set(processors); //dice che sta classificando
-        final ParallelProcessor executor = new ParallelProcessor(processors + 2, 6000); //100 ore
+        Pipeline<Document> pipeline = new Pipeline<>(QUEUE_SIZE);
         AtomicInteger count = new AtomicInteger(0);
-        for (int j = 0; j < processors; j++) {
-            executor.add(() -> {
-                LogGui.info("Init classification thread ");
-                while (true) {
-                    Document document = toDoList.poll(); //Prende la testa della coda
-                    if (document == null) {
-                        //Se è nullo o la coda è vuota o ha finito
-                        if (!isReading.getValue()) {
-                            //Nessuno sta leggendo... Lavoro finito
-                            classifingThread.getAndDecrement();
-                            break;
-                        }
-                    } else {
-                        //Classifica il document
-                        int pos = count.getAndIncrement();
-                        if (pos % 10 == 0) {
-                            LogGui.info("Process: " + pos);
-                        }
-                        String text = document.getString(BSonUtils.TEXT);
-                        String language = dp.getLanguageFromText(text);
-                        List<ClassificationPath> list = me.bayesClassify(text, language);
-                        for (int i = 0; i < list.size(); i++) {
-                            document.put("BayesPath" + (i + 1), list.get(i).getPath());
-                            document.put("BayesScore" + (i + 1), list.get(i).getScore());
-                        }
-                        //Lo aggiunge in coda toWrite
-                        toWriteList.offer(document);
-                    }
-                }
-                LogGui.info("End classification thread...");
-            } //Quello che classifica
-            );
-        }
-        executor.add(() -> {
+        ReorderBuffer<Document> buffer = new ReorderBuffer<>(QUEUE_SIZE * 4 + processors * BATCH_SIZE, (document) -> {
+            try {
+                writer.write(document);
+            } catch (Exception e) {
+                LogGui.printException(e);
+            }
+        });
+        pipeline.setSource("read", (toDoList) -> {
             //Legge il file... e agginge in coda
             LogGui.info("Start reading ");
-            FileInputStream fis;
             try {
-                fis = new FileInputStream(inputFile);
-                Workbook workbook = new XSSFWorkbook(fis);
-                int numberOfSheets = workbook.getNumberOfSheets();
-                for (int i = 0; i < numberOfSheets; i++) {
-                    Sheet sheet = workbook.getSheetAt(i);
-                    for (Row row : sheet) {
-                        Document document = new Document();
-                        document.put("RowId", row.getRowNum());
-                        document.put(BSonUtils.TEXT, row.getCell(descriptionColumn).getStringCellValue());
-                        toDoList.offer(document); //Aggiunge in coda
-                        if (row.getRowNum() % 1000 == 0) {
-                            LogGui.info("Read: " + row.getRowNum());
-                        }
+                //Le righe vengono lette una alla volta senza caricare tutto il file
+                SpreadsheetReader.read(inputFile, (sheet, row) -> {
+                    Document document = new Document();
+                    document.put("Sheet", sheet);
+                    document.put("RowId", row.getRowNum());
+                    document.put(BSonUtils.TEXT, row.getCell(descriptionColumn).getStringCellValue());
+                    try {
+                        document.put("Seq", buffer.acquire()); //Aspetta se ci sono troppi documenti non ancora scritti
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Read interrupted");
                     }
-                }
-                fis.close();
+                    toDoList.accept(document); //Aggiunge in coda (aspetta se è piena)
+                    if (row.getRowNum() % 1000 == 0) {
+                        LogGui.info("Read: " + row.getRowNum());
+                    }
+                });
             } catch (Exception e) {
                 LogGui.printException(e);
             }
             //Finito di leggere
             LogGui.info("End reading " + inputFile + "... ");
-            isReading.setValue(false);
         } //Quello che legge
         );
-        executor.add(() -> {
-            LogGui.info("Start writing " + inputFile + ".class.xlsx... ");
+        pipeline.addStage("classify", processors, BATCH_SIZE, (batch, toWriteList) -> {
+            //Classifica insieme il blocco di documenti preso dalla coda
+            int pos = count.getAndAdd(batch.size());
+            if (pos / 10 != (pos + batch.size()) / 10) {
+                LogGui.info("Process: " + pos);
+            }
             try {
-                final FileOutputStream fos = new FileOutputStream(inputFile + ".class.xlsx");
-                Workbook workbook = new SXSSFWorkbook();
-                Sheet sheet = workbook.createSheet();
-                Row header = sheet.createRow(0);
-                header.createCell(0).setCellValue("Text");
-                header.createCell(1).setCellValue("1st Level1");
-                header.createCell(2).setCellValue("1st Score1");
-                header.createCell(3).setCellValue("1st Level2");
-                header.createCell(4).setCellValue("1st Score2");
-                header.createCell(5).setCellValue("1st Level3");
-                header.createCell(6).setCellValue("1st Score3");
-                header.createCell(7).setCellValue("1st Level4");
-                header.createCell(8).setCellValue("1st Score4");
-                header.createCell(7).setCellValue("1st Level5");
-                header.createCell(8).setCellValue("1st Score5");
-                header.createCell(9).setCellValue("1st Level6");
-                header.createCell(10).setCellValue("1st Score6");
-                header.createCell(11).setCellValue("2nd Level1");
-                header.createCell(12).setCellValue("2nd Score1");
-                header.createCell(13).setCellValue("2nd Level2");
-                header.createCell(14).setCellValue("2nd Score2");
-                header.createCell(15).setCellValue("2nd Level3");
-                header.createCell(16).setCellValue("2nd Score3");
-                header.createCell(17).setCellValue("2nd Level4");
-                header.createCell(18).setCellValue("2nd Score4");
-                header.createCell(19).setCellValue("2nd Level5");
-                header.createCell(20).setCellValue("2nd Score5");
-                header.createCell(21).setCellValue("2nd Level6");
-                header.createCell(22).setCellValue("2nd Score6");
-                while (true) {
-                    //Ciclo infinito
-                    Document document = toWriteList.poll(); //Prende la testa della coda
-                    if (document == null) {
-                        //Non c'è da scrivere
-                        if (classifingThread.get() <= 0) {
-                            //Ha finito di classificare ho finito
-                            break;
-                        }
-                    } else {
-                        //Scrive...
-                        int idRow = document.getInteger("RowId");
-                        Row row = sheet.createRow(idRow + 1);
-                        row.createCell(0).setCellValue(document.getString(BSonUtils.TEXT));
-                        String[] bayesPath1 = (String[]) document.get("BayesPath1");
-                        String[] bayesPath2 = (String[]) document.get("BayesPath2");
-                        double[] score1 = (double[]) document.get("BayesScore1");
-                        double[] score2 = (double[]) document.get("BayesScore2");
-                        if (bayesPath1 != null) {
-                            for (int i = 0; i < ClassificationPath.MAX_DEEP; i++) {
-                                String node = bayesPath1[i];
-                                if (node != null) {
-                                    double score = score1[i];
-                                    row.createCell((2 * i) + 1).setCellValue(node);
-                                    row.createCell((2 * i) + 2).setCellValue(score);
-                                }
-                            }
-                            if (bayesPath2 != null) {
-                                for (int i = 0; i < ClassificationPath.MAX_DEEP; i++) {
-                                    String node = bayesPath2[i];
-                                    if (node != null) {
-                                        double score = score2[i];
-                                        row.createCell((2 * i) + 9).setCellValue(node);
-                                        row.createCell((2 * i) + 10).setCellValue(score);
-                                    }
-                                }
-                            }
-                        }
-                        if (row.getRowNum() % 1000 == 0) {
-                            LogGui.info("Write: " + row.getRowNum());
-                        }
-                    }
-                }
-                workbook.write(fos);
-                fos.close();
+                classify(batch, me, dp);
             } catch (Exception e) {
-                LogGui.printException(e);
+                LogGui.printException(e); //I documenti vanno scritti comunque per non bloccare l'ordinamento
             }
-            //Fine chiude il file
-            LogGui.info("End writing " + inputFile + ".class.xlsx... ");
+            //Li aggiunge in coda toWrite
+            batch.stream().forEach(toWriteList);
+        } //Quello che classifica
+        );
+        pipeline.addStage("write", 1, QUEUE_SIZE, (documents, output) -> {
+            documents.stream().forEach((document) -> {
+                //Scrive quando tutti i precedenti sono arrivati
+                buffer.add(document.getLong("Seq"), document);
+            });
         } //Quello che scrive
         );
-        executor.waitTermination();
+        LogGui.info("Start writing " + outputFile + "... ");
+        pipeline.run();
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LogGui.printException(e);
+        }
+        //Fine chiude il file
+        LogGui.info("End writing " + outputFile + " (" + buffer.getWritten() + " rows)... ");
         LogGui.info("Terminated...");
     }
 
+    /**
+     * Crea lo scrittore dei risultati
+     *
+     * @since 1.9.3
+     * @param outputFile file di output
+     * @param format formato (FORMAT_XLSX, FORMAT_CSV o FORMAT_JSONL)
+     * @return scrittore
+     * @throws IOException Eccezione di input/output
+     */
+    protected ClassificationResultWriter getWriter(String outputFile, String format) throws IOException {
+        switch (format) {
+            case FORMAT_CSV:
+                return new ClassificationCsvWriter(outputFile);
+            case FORMAT_JSONL:
+                return new ClassificationJsonWriter(outputFile);
+            case FORMAT_XLSX:
+                return new ClassificationExcelWriter(outputFile);
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + format);
+        }
+    }
+
+    /**
+     * Classifica un blocco di documenti raggruppandoli per lingua e usando la
+     * classificazione batch del motore
+     *
+     * @since 1.9.3
+     * @param batch documenti da classificare
+     * @param me motore di classificazione
+     * @param dp parser
+     */
+    protected void classify(List<Document> batch, MulticlassEngine me, DocumentParser dp) {
+        Map<String, List<Document>> byLanguage = new LinkedHashMap<>();
+        batch.stream().forEach((document) -> {
+            String language = dp.getLanguageFromText(document.getString(BSonUtils.TEXT));
+            List<Document> documents = byLanguage.get(language);
+            if (documents == null) {
+                documents = new ArrayList<>();
+                byLanguage.put(language, documents);
+            }
+            documents.add(document);
+        });
+        byLanguage.entrySet().stream().forEach((entry) -> {
+            List<Document> documents = entry.getValue();
+            List<String> texts = new ArrayList<>(documents.size());
+            documents.stream().forEach((document) -> {
+                texts.add(document.getString(BSonUtils.TEXT));
+            });
+            List<List<ClassificationPath>> results = me.bayesClassifyBatch(texts, entry.getKey());
+            if (results == null) {
+                return;
+            }
+            for (int j = 0; j < documents.size(); j++) {
+                Document document = documents.get(j);
+                List<ClassificationPath> list = results.get(j);
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0; i < list.size(); i++) {
+                    document.put("BayesPath" + (i + 1), list.get(i).getPath());
+                    document.put("BayesScore" + (i + 1), list.get(i).getScore());
+                }
+            }
+        });
+    }
+
 }
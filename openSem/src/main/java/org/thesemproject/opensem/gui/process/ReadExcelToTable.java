@@ -19,15 +19,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.thesemproject.opensem.gui.SemDocument;
 import org.thesemproject.opensem.gui.LogGui;
 import org.thesemproject.opensem.parser.DocumentParser;
-import java.io.FileInputStream;
 import java.util.Map;
 import javax.swing.JLabel;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableModel;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.thesemproject.opensem.parser.SpreadsheetReader;
 import org.thesemproject.opensem.utils.interning.InternPool;
 
 /**
@@ -61,74 +57,74 @@ public class ReadExcelToTable {
         AtomicInteger countEmpty = new AtomicInteger(0);
 
         LogGui.info("Start reading ");
-        FileInputStream fis;
         try {
-            fis = new FileInputStream(inputFile);
-            Workbook workbook = new XSSFWorkbook(fis);
-            int numberOfSheets = workbook.getNumberOfSheets();
-            for (int i = 0; i < numberOfSheets; i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                int cr = 0;
-                for (Row excelRow : sheet) {
-                    String text = "";
-                    double kpi = 0;
+            //Le righe vengono lette una alla volta senza caricare tutto il file
+            final int[] currentSheet = {-1};
+            final int[] rowCount = {0};
+            SpreadsheetReader.read(inputFile, (sheet, excelRow) -> {
+                if (sheet != currentSheet[0]) {
+                    currentSheet[0] = sheet;
+                    rowCount[0] = 0; //Il conteggio riparte da ogni foglio
+                }
+                int cr = rowCount[0];
+                String text = "";
+                double kpi = 0;
 
-                    try {
-                        text = excelRow.getCell(0).getStringCellValue();
-                        cr++;
-                    } catch (Exception e) {
-                        text = "!ERROR: " + e.getLocalizedMessage();
-                    }
+                try {
+                    text = excelRow.getCell(0).getStringCellValue();
+                    cr++;
+                } catch (Exception e) {
+                    text = "!ERROR: " + e.getLocalizedMessage();
+                }
 
-                    int intKpi = 0;
-                    try {
-                        kpi = excelRow.getCell(1).getNumericCellValue();
-                        intKpi = (int) kpi;
-                    } catch (Exception e) {
-                        LogGui.printException(e);
-                    }
-                    if (text == null) {
-                        text = "";
-                    }
-                    if (text.trim().length() == 0) {
-                        countEmpty.getAndIncrement();
-                    }
-                    if (text.startsWith("!ERROR")) {
-                        countEmpty.getAndIncrement();
-                    }
-                    if (cr % 3 == 0) {
-                        infoLabel.setText("Ho letto " + cr + " righe ");
-                        LogGui.info("Ho letto " + cr + " righe ");
-                    }
+                int intKpi = 0;
+                try {
+                    kpi = excelRow.getCell(1).getNumericCellValue();
+                    intKpi = (int) kpi;
+                } catch (Exception e) {
+                    LogGui.printException(e);
+                }
+                if (text == null) {
+                    text = "";
+                }
+                if (text.trim().length() == 0) {
+                    countEmpty.getAndIncrement();
+                }
+                if (text.startsWith("!ERROR")) {
+                    countEmpty.getAndIncrement();
+                }
+                if (cr % 3 == 0) {
+                    infoLabel.setText("Ho letto " + cr + " righe ");
+                    LogGui.info("Ho letto " + cr + " righe ");
+                }
 
-                    Object[] row = new Object[11];
-                    row[0] = new Integer(cr + startId - 1);
-                    row[1] = inputFile + "." + cr;
-                    row[2] = dp.getLanguageFromText(text);
-                    row[3] = new Integer(0);
-                    row[4] = new Integer(0);
-                    row[5] = new Integer(0);
-                    row[6] = new Integer(0);
-                    row[7] = new Integer(0);
-                    row[8] = text.trim();
-                    row[9] = "";
-                    if (intKpi != 0) {
-                        row[10] = intKpi;
-                    }
-                    synchronized (table) {
-                        DefaultTableModel model = (DefaultTableModel) table.getModel();
-                        model.addRow(row);
-                        SemDocument dto = new SemDocument();
-                        dto.setRow(row);
-                        dto.setLanguage((String) row[2]);
-                        tableList.put((cr + startId - 1), dto);
-                    }
-                    if (excelRow.getRowNum() % 1000 == 0) {
-                        LogGui.info("Read: " + excelRow.getRowNum());
-                    }
+                Object[] row = new Object[11];
+                row[0] = new Integer(cr + startId - 1);
+                row[1] = inputFile + "." + cr;
+                row[2] = dp.getLanguageFromText(text);
+                row[3] = new Integer(0);
+                row[4] = new Integer(0);
+                row[5] = new Integer(0);
+                row[6] = new Integer(0);
+                row[7] = new Integer(0);
+                row[8] = text.trim();
+                row[9] = "";
+                if (intKpi != 0) {
+                    row[10] = intKpi;
+                }
+                synchronized (table) {
+                    DefaultTableModel model = (DefaultTableModel) table.getModel();
+                    model.addRow(row);
+                    SemDocument dto = new SemDocument();
+                    dto.setRow(row);
+                    dto.setLanguage((String) row[2]);
+                    tableList.put((cr + startId - 1), dto);
+                }
+                if (excelRow.getRowNum() % 1000 == 0) {
+                    LogGui.info("Read: " + excelRow.getRowNum());
                 }
-            }
-            fis.close();
+                rowCount[0] = cr;
+            });
         } catch (Exception e) {
             LogGui.printException(e);
         }
@@ -19,6 +19,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.thesemproject.opensem.gui.SemDocument;
 import org.thesemproject.opensem.gui.LogGui;
 import org.thesemproject.opensem.parser.DocumentParser;
+import org.thesemproject.opensem.parser.ParsedText;
 import java.io.File;
 import java.util.Collections;
 import java.util.HashSet;
@@ -138,9 +139,13 @@ public class ReadFolderToTable {
                     }
                     String text;
                     String html = "";
+                    String language = null;
                     try {
-                        text = dp.getTextFromFile(file, ocrInstallPath);
-                        html = dp.getHtmlFromFile(file);
+                        //Testo, html e lingua vengono presi dalla cache se il file è già stato letto
+                        ParsedText parsed = dp.getParsedText(file, ocrInstallPath, true);
+                        text = parsed.getText();
+                        html = parsed.getHtml();
+                        language = parsed.getLanguage();
                     } catch (Exception e) {
                         text = "!ERROR: " + e.getLocalizedMessage();
 
@@ -166,7 +171,7 @@ public class ReadFolderToTable {
                     Object[] row = new Object[10];
                     row[0] = idImported + startId;
                     row[1] = file.getName();
-                    row[2] = dp.getLanguageFromText(text);
+                    row[2] = language != null ? language : dp.getLanguageFromText(text);
                     row[3] = 0;
                     row[4] = 0;
                     row[5] = 0;
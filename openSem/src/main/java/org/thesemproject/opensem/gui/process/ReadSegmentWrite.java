@@ -16,12 +16,12 @@
 package org.thesemproject.opensem.gui.process;
 
 import org.thesemproject.opensem.segmentation.SegmentationUtils;
-import org.thesemproject.opensem.utils.ParallelProcessor;
-import org.thesemproject.opensem.utils.FinalBoolean;
+import org.thesemproject.opensem.utils.Pipeline;
 import org.thesemproject.opensem.classification.MulticlassEngine;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.thesemproject.opensem.gui.LogGui;
 import org.thesemproject.opensem.parser.DocumentParser;
+import org.thesemproject.opensem.parser.ParsedText;
 import org.thesemproject.opensem.segmentation.SegmentConfiguration;
 import org.thesemproject.opensem.segmentation.SegmentEngine;
 import org.thesemproject.opensem.segmentation.SegmentationResults;
@@ -29,8 +29,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
 import org.bson.Document;
 import org.thesemproject.opensem.utils.BSonUtils;
 import static org.apache.uima.util.FileUtils.getFiles;
@@ -43,24 +41,11 @@ import static org.apache.uima.util.FileUtils.getFiles;
 public class ReadSegmentWrite {
 
     /**
-     * Coda dei documenti letti
-     */
-    protected final Queue<Document> toDoList;
-
-    /**
-     * Coda dei documenti processati
-     */
-    protected final Queue<Document> toWriteList;
-
-    /**
-     * true se sta ancora popolando la toDoList
-     */
-    protected final FinalBoolean isReading;
-
-    /**
-     * integer final modificabile
+     * Dimensione delle code tra lettura, segmentazione e scrittura
+     *
+     * @since 1.9.3
      */
-    protected final AtomicInteger segmentThread;
+    protected static final int QUEUE_SIZE = 50;
 
     /**
      * numero processori
@@ -73,11 +58,7 @@ public class ReadSegmentWrite {
      * @param processors numero di processori
      */
     public ReadSegmentWrite(int processors) {
-        toDoList = new LinkedBlockingQueue<>(50);
-        toWriteList = new LinkedBlockingQueue<>(50);
         this.processors = processors;
-        isReading = new FinalBoolean(false);
-        segmentThread = new AtomicInteger(0);
     }
 
     /**
@@ -92,43 +73,9 @@ public class ReadSegmentWrite {
      */
     public void process(final String inputDir, final DocumentParser dp, final SegmentEngine se, final MulticlassEngine me, boolean writeHtml, String ocrInstallPath) {
         //Costruisce 2+n processi: uno per leggere, n per classificare, uno per scrivere
-        isReading.setValue(true); //dice che sta leggendo
-        segmentThread.set(processors); //dice che sta classificando
-        final ParallelProcessor executor = new ParallelProcessor(processors + 2, 6000); //100 ore
+        Pipeline<Document> pipeline = new Pipeline<>(QUEUE_SIZE);
         AtomicInteger count = new AtomicInteger(0);
-        for (int j = 0; j < processors; j++) {
-            executor.add(() -> {
-                LogGui.info("Init tagging thread ");
-                while (true) {
-                    Document document = toDoList.poll(); //Prende la testa della coda
-                    if (document == null) {
-                        //Se è nullo o la coda è vuota o ha finito
-                        if (!isReading.getValue()) {
-                            //Nessuno sta leggendo... Lavoro finito
-                            segmentThread.getAndDecrement();
-                            break;
-                        }
-                    } else {
-                        //Classifica il document
-                        int pos = count.getAndIncrement();
-                        LogGui.info("Tag: " + document.getString(BSonUtils.SOURCE));
-                        String text = document.getString(BSonUtils.TEXT);
-                        String language = document.getString("Language");
-                        try {
-                            //Lo aggiunge in coda toWrite
-                            Map<SegmentConfiguration, List<SegmentationResults>> result = se.getSegments(text, me, language);
-                            document.put("SegmentResult", result);
-                            toWriteList.offer(SegmentationUtils.getDocument(document, result));
-                        } catch (Exception e) {
-                            LogGui.printException(e);
-                        }
-                    }
-                }
-                LogGui.info("End classification thread...");
-            } //Quello che classifica
-            );
-        }
-        executor.add(() -> {
+        pipeline.setSource("read", (toDoList) -> {
             //Legge il file... e agginge in coda
             LogGui.info("Start reading ");
             File directory = new File(inputDir);
@@ -137,68 +84,73 @@ public class ReadSegmentWrite {
                 LogGui.info("Read: " + file);
                 return file;
             }).map((file) -> {
-                String text = dp.getTextFromFile(file, ocrInstallPath);
+                ParsedText parsed = dp.getParsedText(file, ocrInstallPath, false); //Dalla cache se il file è già stato letto
                 Document document = new Document();
-                document.put(BSonUtils.TEXT, text);
+                document.put(BSonUtils.TEXT, parsed.getText());
                 document.put(BSonUtils.SOURCE, file.getName());
-                document.put("Language", dp.getLanguageFromText(text));
+                document.put("Language", parsed.getLanguage());
                 return document;
-            }).forEach((document) -> {
-                toDoList.offer(document); //Aggiunge in coda
-            });
+            }).forEach(toDoList); //Aggiunge in coda (aspetta se è piena)
             //Finito di leggere
             LogGui.info("End reading " + inputDir + "... ");
-            isReading.setValue(false);
         } //Quello che legge
         );
-        executor.add(() -> {
-            String destDir = inputDir + "/results/";
-            File fdest = new File(destDir);
-            if (!fdest.exists()) {
-                fdest.mkdirs();
+        pipeline.addStage("segment", processors, 1, (documents, toWriteList) -> {
+            for (Document document : documents) {
+                //Classifica il document
+                int pos = count.getAndIncrement();
+                LogGui.info("Tag: " + document.getString(BSonUtils.SOURCE));
+                String text = document.getString(BSonUtils.TEXT);
+                String language = document.getString("Language");
+                try {
+                    //Lo aggiunge in coda toWrite
+                    Map<SegmentConfiguration, List<SegmentationResults>> result = se.getSegments(text, me, language);
+                    document.put("SegmentResult", result);
+                    toWriteList.accept(SegmentationUtils.getDocument(document, result));
+                } catch (Exception e) {
+                    LogGui.printException(e);
+                }
             }
-            LogGui.info("Start writing results into " + fdest.getAbsolutePath() + "/tagResult.xlsx... ");
-            try {
-                final FileOutputStream fos = new FileOutputStream(fdest.getAbsolutePath() + "/tagResult.xlsx");
-                SegmentationExcelWriter sew = new SegmentationExcelWriter(se);
-                AtomicInteger rr = new AtomicInteger(0);
-                while (true) {
-                    //Ciclo infinito
-                    Document document = toWriteList.poll(); //Prende la testa della coda
-                    if (document == null) {
-                        //Non c'è da scrivere
-                        if (segmentThread.get() <= 0) {
-                            //Ha finito di taggare ho finito
-                            break;
-                        }
-                    } else //Scrive...
-                    {
-                        Map<SegmentConfiguration, List<SegmentationResults>> identifiedSegments = (Map<SegmentConfiguration, List<SegmentationResults>>) document.get("SegmentResult");
-                        if (writeHtml) {
-                            try {
-                                FileOutputStream fHtml = new FileOutputStream(fdest.getAbsolutePath() + "/" + document.getString(BSonUtils.SOURCE) + ".html");
-                                fHtml.write(SegmentationUtils.getHtml(identifiedSegments, document.getString("Language")).getBytes());
-                                fHtml.close();
-                            } catch (Exception e) {
-                                LogGui.printException(e);
-                            }
+        } //Quello che classifica
+        );
+        String destDir = inputDir + "/results/";
+        File fdest = new File(destDir);
+        if (!fdest.exists()) {
+            fdest.mkdirs();
+        }
+        LogGui.info("Start writing results into " + fdest.getAbsolutePath() + "/tagResult.xlsx... ");
+        try {
+            final FileOutputStream fos = new FileOutputStream(fdest.getAbsolutePath() + "/tagResult.xlsx");
+            SegmentationExcelWriter sew = new SegmentationExcelWriter(se);
+            AtomicInteger rr = new AtomicInteger(0);
+            pipeline.addStage("write", 1, QUEUE_SIZE, (documents, output) -> {
+                for (Document document : documents) {
+                    //Scrive...
+                    Map<SegmentConfiguration, List<SegmentationResults>> identifiedSegments = (Map<SegmentConfiguration, List<SegmentationResults>>) document.get("SegmentResult");
+                    if (writeHtml) {
+                        try {
+                            FileOutputStream fHtml = new FileOutputStream(fdest.getAbsolutePath() + "/" + document.getString(BSonUtils.SOURCE) + ".html");
+                            fHtml.write(SegmentationUtils.getHtml(identifiedSegments, document.getString("Language")).getBytes());
+                            fHtml.close();
+                        } catch (Exception e) {
+                            LogGui.printException(e);
                         }
-                        int resultsRow = rr.incrementAndGet();
-                        String fileName = document.getString(BSonUtils.SOURCE);
-                        String language = document.getString("Language");
-                        sew.addDocument(resultsRow, fileName, document.getString(BSonUtils.TEXT), "", language, identifiedSegments);
                     }
+                    int resultsRow = rr.incrementAndGet();
+                    String fileName = document.getString(BSonUtils.SOURCE);
+                    String language = document.getString("Language");
+                    sew.addDocument(resultsRow, fileName, document.getString(BSonUtils.TEXT), "", language, identifiedSegments);
                 }
-                sew.write(fos);
-                fos.close();
-            } catch (Exception e) {
-                LogGui.printException(e);
-            }
-            //Fine chiude il file
-            LogGui.info("End writing " + fdest.getAbsolutePath() + "/tagResult.xlsx... ");
-        } //Quello che scrive
-        );
-        executor.waitTermination();
+            } //Quello che scrive
+            );
+            pipeline.run();
+            sew.write(fos);
+            fos.close();
+        } catch (Exception e) {
+            LogGui.printException(e);
+        }
+        //Fine chiude il file
+        LogGui.info("End writing " + fdest.getAbsolutePath() + "/tagResult.xlsx... ");
         LogGui.info("Terminated...");
     }
 }
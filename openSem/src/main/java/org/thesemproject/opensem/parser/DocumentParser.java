@@ -30,6 +30,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.imageio.ImageIO;
 import javax.xml.transform.TransformerConfigurationException;
 import org.apache.tika.exception.TikaException;
@@ -50,10 +52,18 @@ import org.xml.sax.SAXException;
  */
 public class DocumentParser {
 
+    /**
+     * Numero minimo di caratteri della prima pagina per individuare la
+     * lingua di un documento da riconoscere con l'OCR
+     */
+    private static final int MIN_OCR_SAMPLE = 200;
+
     AutoDetectParser adp;
 
     InternPool intern;
 
+    private volatile ParsedTextCache cache;
+
     /**
      * Istanzia il parser
      */
@@ -82,60 +92,131 @@ public class DocumentParser {
         TesseractOCRConfig config = new TesseractOCRConfig();
         config.setTesseractPath(path);
         if (language != null) {
-            String lang = "eng";
-            if ("it".equals(language)) {
-                lang = "ita";
-            }
-            if ("bg".equals(language)) {
-                lang = "bul";
-            }
-            if ("br".equals(language)) {
-                lang = "por";
-            }
-            if ("cz".equals(language)) {
-                lang = "ces";
-            }
-            if ("en".equals(language)) {
-                lang = "eng";
-            }
-            if ("de".equals(language)) {
-                lang = "deu";
-            }
-            if ("es".equals(language)) {
-                lang = "spa";
-            }
-            if ("fr".equals(language)) {
-                lang = "fra";
-            }
-            if ("nl".equals(language)) {
-                lang = "nld";
-            }
-            if ("pl".equals(language)) {
-                lang = "pol";
-            }
-            if ("pt".equals(language)) {
-                lang = "por";
-            }
-            if ("ru".equals(language)) {
-                lang = "rus";
-            }
-            if ("ro".equals(language)) {
-                lang = "ron";
-            }
-            if ("tr".equals(language)) {
-                lang = "tur";
-            }
-            if ("sk".equals(language)) {
-                lang = "slk";
-            }
-
-            config.setLanguage(lang);
+            config.setLanguage(getTesseractLanguage(language));
         }
         ParseContext tesseractContext = new ParseContext();
         tesseractContext.set(TesseractOCRConfig.class, config);
         return tesseractContext;
     }
 
+    /**
+     * Ritorna il modello Tesseract di una lingua (eng se la lingua non ha un
+     * modello)
+     */
+    private static String getTesseractLanguage(String language) {
+        String lang = "eng";
+        if ("it".equals(language)) {
+            lang = "ita";
+        }
+        if ("bg".equals(language)) {
+            lang = "bul";
+        }
+        if ("br".equals(language)) {
+            lang = "por";
+        }
+        if ("cz".equals(language)) {
+            lang = "ces";
+        }
+        if ("en".equals(language)) {
+            lang = "eng";
+        }
+        if ("de".equals(language)) {
+            lang = "deu";
+        }
+        if ("es".equals(language)) {
+            lang = "spa";
+        }
+        if ("fr".equals(language)) {
+            lang = "fra";
+        }
+        if ("nl".equals(language)) {
+            lang = "nld";
+        }
+        if ("pl".equals(language)) {
+            lang = "pol";
+        }
+        if ("pt".equals(language)) {
+            lang = "por";
+        }
+        if ("ru".equals(language)) {
+            lang = "rus";
+        }
+        if ("ro".equals(language)) {
+            lang = "ron";
+        }
+        if ("tr".equals(language)) {
+            lang = "tur";
+        }
+        if ("sk".equals(language)) {
+            lang = "slk";
+        }
+        return lang;
+    }
+
+    /**
+     * Imposta la cache dei risultati del parsing usata da getParsedText
+     *
+     * @since 1.9.3
+     * @param cache cache (null per non usare la cache)
+     */
+    public void setCache(ParsedTextCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Ritorna la cache dei risultati del parsing
+     *
+     * @since 1.9.3
+     * @return cache o null se non viene usata
+     */
+    public ParsedTextCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Estrae testo, lingua e (se richiesta) vista HTML di un file. Se è
+     * impostata una cache e il file (con lo stesso contenuto e lo stesso
+     * percorso OCR) è già stato processato il risultato viene preso dalla
+     * cache senza fare il parsing. I file che danno errore non vengono messi
+     * in cache
+     *
+     * @since 1.9.3
+     * @param file file da parsare
+     * @param ocrInstallPath percorso dove è installato l'OCR
+     * @param withHtml true se serve anche la vista HTML
+     * @return risultato del parsing
+     */
+    public ParsedText getParsedText(File file, String ocrInstallPath, boolean withHtml) {
+        ParsedTextCache ptc = cache;
+        String key = null;
+        ParsedText cached = null;
+        if (ptc != null) {
+            try {
+                key = ptc.getKey(file, "ocr=" + (ocrInstallPath == null ? "" : ocrInstallPath));
+                cached = ptc.get(key);
+            } catch (IOException e) {
+                LogGui.printException(e);
+            }
+            if (cached != null && (!withHtml || cached.getHtml() != null)) {
+                return new ParsedText(cached.getText(), cached.getHtml(), intern.intern(cached.getLanguage()));
+            }
+        }
+        String text = cached != null ? cached.getText() : getTextFromFile(file, ocrInstallPath);
+        if (text == null) {
+            text = "";
+        }
+        String language = cached != null ? intern.intern(cached.getLanguage()) : getLanguageFromText(text);
+        String html = withHtml ? getHtmlFromFile(file) : null;
+        ParsedText ret = new ParsedText(text, html, language);
+        if (key != null && !text.startsWith("!ERROR")) {
+            if (html != null && html.startsWith("!ERROR")) {
+                html = null;
+            }
+            ptc.put(key, new ParsedText(text, html, language));
+        }
+        return ret;
+    }
+
     /**
      * Estrare il testo da un file
      *
@@ -167,30 +248,11 @@ public class DocumentParser {
                         LogGui.info("PDF without content... Try OCR...");
                         LogGui.info("Exctrat images...");
                         Map<String, BufferedImage> imgs = getImagesFromFile(file);
-                        List<File> images = new ArrayList<>();
-                        int count = 0;
-                        for (BufferedImage img : imgs.values()) {
-                            File image = File.createTempFile("Page", "-" + String.valueOf(count++) + ".jpg");
-                            ImageIO.write(img, "jpg", image);
-                            images.add(image);
-                        }
-                        LogGui.info("Images extracted: " + images.size());
                         if (imgs != null) {
-                            LogGui.info("Extract with ita pattern...");
-                            ret = extractTextFromImages(images, "ita", ocrInstallPath);
-                            if (ret.length() > 0) {
-                                String lang = getLanguageFromText(ret);
-                                LogGui.info("Detected language: " + lang);
-                                if (!lang.equalsIgnoreCase("it")) { //Seconda passata
-                                    LogGui.info("Extract with " + lang + " pattern...");
-                                    ret = extractTextFromImages(images, lang, ocrInstallPath);
-                                }
-                            }
+                            LogGui.info("Images extracted: " + imgs.size());
+                            ret = extractTextFromImages(new ArrayList<>(imgs.values()), ocrInstallPath);
                         }
                         LogGui.info("Done...");
-                        for (File image : images) {
-                            image.delete();
-                        }
                     }
                 }
             }
@@ -200,21 +262,125 @@ public class DocumentParser {
         }
     }
 
-    private synchronized String extractTextFromImages(List<File> images, String language, String path) throws TikaException, IOException, SAXException {
-        String ret = "";
-        BodyContentHandler handler;
-        Metadata metadata;
-        //Prende tutte le immagini (in ordine)
-        TesseractOCRParser top = new TesseractOCRParser();
-        for (File image : images) {
-            handler = new BodyContentHandler(1000000);
-            metadata = new Metadata();
-            InputStream is = image.toURI().toURL().openStream();
-            top.parse(is, handler, metadata, getOCR(language, path)); //fa il parsing..
-            is.close();
-            ret += handler.toString();
+    /**
+     * Riconosce il testo delle pagine. La prima pagina viene riconosciuta con
+     * il modello italiano e serve a individuare la lingua: se la lingua
+     * ha un altro modello la pagina viene riconosciuta di nuovo. Le pagine
+     * vengono poi riconosciute in parallelo con il modello della lingua. Se
+     * la prima pagina non ha abbastanza testo per individuare la lingua tutte
+     * le pagine vengono riconosciute con il modello italiano e la lingua viene
+     * individuata sul testo completo (con una seconda passata se serve)
+     */
+    private String extractTextFromImages(List<BufferedImage> images, String path) throws TikaException, IOException, SAXException {
+        List<OcrPage> pages = new ArrayList<>(images.size());
+        for (BufferedImage image : images) {
+            pages.add(new OcrPage(image));
+        }
+        try {
+            if (pages.isEmpty()) {
+                return "";
+            }
+            String firstLanguage = getTesseractLanguage("it");
+            LogGui.info("Extract sample page with " + firstLanguage + " pattern...");
+            String sample = extractTextFromImages(pages.subList(0, 1), "it", path);
+            if (sample.trim().length() >= MIN_OCR_SAMPLE) {
+                String lang = getLanguageFromText(sample);
+                LogGui.info("Detected language: " + lang);
+                if (getTesseractLanguage(lang).equals(firstLanguage)) {
+                    return sample + extractTextFromImages(pages.subList(1, pages.size()), lang, path);
+                }
+                LogGui.info("Extract with " + lang + " pattern...");
+                return extractTextFromImages(pages, lang, path);
+            }
+            String ret = sample + extractTextFromImages(pages.subList(1, pages.size()), "it", path);
+            if (ret.length() > 0) {
+                String lang = getLanguageFromText(ret);
+                LogGui.info("Detected language: " + lang);
+                if (!getTesseractLanguage(lang).equals(firstLanguage)) { //Seconda passata
+                    LogGui.info("Extract with " + lang + " pattern...");
+                    ret = extractTextFromImages(pages, lang, path);
+                }
+            }
+            return ret;
+        } finally {
+            for (OcrPage page : pages) {
+                page.delete();
+            }
+        }
+    }
+
+    /**
+     * Riconosce in parallelo il testo delle pagine (il numero di processi è
+     * limitato da OcrScheduler) e lo ritorna nell'ordine delle pagine
+     */
+    private String extractTextFromImages(List<OcrPage> pages, String language, String path) throws TikaException, IOException, SAXException {
+        List<Future<String>> texts = new ArrayList<>(pages.size());
+        for (OcrPage page : pages) {
+            texts.add(OcrScheduler.submit(() -> {
+                BodyContentHandler handler = new BodyContentHandler(1000000);
+                Metadata metadata = new Metadata();
+                try (InputStream is = page.getFile().toURI().toURL().openStream()) {
+                    new TesseractOCRParser().parse(is, handler, metadata, getOCR(language, path)); //fa il parsing..
+                }
+                return handler.toString();
+            }));
+        }
+        StringBuilder ret = new StringBuilder();
+        try {
+            for (Future<String> text : texts) {
+                ret.append(text.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TikaException("OCR interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+            if (cause instanceof TikaException) {
+                throw (TikaException) cause;
+            }
+            throw new TikaException("OCR error", cause);
+        } finally {
+            for (Future<String> text : texts) {
+                text.cancel(true);
+            }
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Pagina da riconoscere: l'immagine viene scritta su file (una volta sola
+     * anche se la pagina viene riconosciuta due volte) dal thread di OCR
+     */
+    private static class OcrPage {
+
+        private final BufferedImage image;
+        private File file;
+
+        OcrPage(BufferedImage image) {
+            this.image = image;
+        }
+
+        synchronized File getFile() throws IOException {
+            if (file == null) {
+                File tmp = File.createTempFile("Page", ".jpg");
+                ImageIO.write(image, "jpg", tmp);
+                file = tmp;
+            }
+            return file;
+        }
+
+        synchronized void delete() {
+            if (file != null) {
+                file.delete();
+                file = null;
+            }
         }
-        return ret;
     }
 
     /**
@@ -341,7 +507,7 @@ public class DocumentParser {
         if (!MyAnalyzer.languagesSet.contains(lang)) {
             lang = "it";
         }
-        return (String) intern.intern(lang);
+        return intern.intern(lang);
     }
 
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.parser;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coda comune dei lavori di OCR.
+ *
+ * Ogni pagina viene riconosciuta da un processo Tesseract separato. Le pagine
+ * di tutti i documenti (anche di parser diversi usati da thread diversi)
+ * passano da questa coda, che limita il numero di processi Tesseract attivi
+ * contemporaneamente: il limite è il numero di processori, modificabile con
+ * setMaxProcesses.
+ *
+ * I thread della coda sono daemon e si chiudono dopo un minuto di inattività.
+ *
+ * @since 1.9.3
+ */
+public class OcrScheduler {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor(Runtime.getRuntime().availableProcessors());
+
+    private static ThreadPoolExecutor createExecutor(int processes) {
+        ThreadFactory factory = (runnable) -> {
+            Thread thread = new Thread(runnable, "ocr-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(processes, processes, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private OcrScheduler() {
+    }
+
+    /**
+     * Imposta il numero massimo di processi Tesseract contemporanei. Il
+     * nuovo limite vale anche per le pagine già in coda
+     *
+     * @param processes numero di processi (almeno 1)
+     */
+    public static synchronized void setMaxProcesses(int processes) {
+        processes = Math.max(1, processes);
+        if (processes > EXECUTOR.getMaximumPoolSize()) {
+            EXECUTOR.setMaximumPoolSize(processes);
+            EXECUTOR.setCorePoolSize(processes);
+        } else {
+            EXECUTOR.setCorePoolSize(processes);
+            EXECUTOR.setMaximumPoolSize(processes);
+        }
+    }
+
+    /**
+     * Ritorna il numero massimo di processi Tesseract contemporanei
+     *
+     * @return numero di processi
+     */
+    public static int getMaxProcesses() {
+        return EXECUTOR.getMaximumPoolSize();
+    }
+
+    /**
+     * Mette in coda il riconoscimento di una pagina
+     *
+     * @param <T> tipo del risultato
+     * @param task riconoscimento
+     * @return risultato futuro
+     */
+    static <T> Future<T> submit(Callable<T> task) {
+        return EXECUTOR.submit(task);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.parser;
+
+/**
+ * Risultato del parsing di un file: testo, vista HTML e lingua individuata
+ * sul testo
+ *
+ * @since 1.9.3
+ */
+public class ParsedText {
+
+    private final String text;
+    private final String html;
+    private final String language;
+
+    /**
+     * Crea il risultato
+     *
+     * @param text testo estratto
+     * @param html vista HTML (null se non estratta)
+     * @param language lingua del testo
+     */
+    public ParsedText(String text, String html, String language) {
+        this.text = text;
+        this.html = html;
+        this.language = language;
+    }
+
+    /**
+     * Ritorna il testo estratto dal file
+     *
+     * @return testo
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Ritorna la vista HTML del file
+     *
+     * @return vista HTML o null se non è stata estratta
+     */
+    public String getHtml() {
+        return html;
+    }
+
+    /**
+     * Ritorna la lingua del testo
+     *
+     * @return lingua
+     */
+    public String getLanguage() {
+        return language;
+    }
+}
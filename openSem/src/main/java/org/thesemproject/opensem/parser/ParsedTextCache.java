@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.thesemproject.opensem.gui.LogGui;
+
+/**
+ * Cache su disco dei risultati del parsing dei file (testo, vista HTML e
+ * lingua).
+ *
+ * La chiave è l'hash SHA-256 del contenuto del file e delle impostazioni del
+ * parser (ad esempio il percorso dell'OCR): un file rinominato o spostato
+ * viene ritrovato, un file modificato no. Ogni risultato è un file compresso
+ * nella cartella della cache.
+ *
+ * La dimensione della cartella è limitata: quando viene superata vengono
+ * cancellati i risultati usati meno di recente. L'ordine di uso è la data di
+ * modifica dei file, aggiornata a ogni lettura, così resta valido anche tra
+ * un'esecuzione e l'altra.
+ *
+ * L'oggetto può essere usato da più thread: i file della cache vengono
+ * sostituiti o cancellati solo insieme alla voce corrispondente, sotto lo
+ * stesso lock.
+ *
+ * @since 1.9.3
+ */
+public class ParsedTextCache {
+
+    /**
+     * Dimensione massima predefinita della cache (1GB)
+     */
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024L * 1024L;
+
+    /**
+     * Versione del formato dei risultati e del parsing: cambiandola i
+     * risultati già in cache non vengono più usati
+     */
+    private static final String VERSION = "1";
+
+    private static final String EXTENSION = ".ptc";
+
+    private final File directory;
+    private final long maxSize;
+    private final LinkedHashMap<String, Entry> entries;
+    private long size;
+
+    /**
+     * Apre (o crea) la cache
+     *
+     * @param directory cartella della cache
+     * @param maxSize dimensione massima in byte
+     */
+    public ParsedTextCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true); //Ordine di accesso: il primo è il meno usato
+        this.size = 0;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                String key = file.getName().substring(0, file.getName().length() - EXTENSION.length());
+                entries.put(key, new Entry(file.length()));
+                size += file.length();
+            }
+        }
+        LogGui.info("Parsed text cache " + directory.getAbsolutePath() + ": " + entries.size() + " files, " + (size / (1024 * 1024)) + " MB");
+        evict();
+    }
+
+    /**
+     * Calcola la chiave di un file
+     *
+     * @param file file
+     * @param settings impostazioni del parser che cambiano il risultato
+     * @return chiave
+     * @throws IOException Eccezione di input/output
+     */
+    public String getKey(File file, String settings) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        digest.update((VERSION + "|" + settings + "|").getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[65536];
+        try (InputStream is = new FileInputStream(file)) {
+            for (int n = is.read(buffer); n != -1; n = is.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Ritorna il risultato in cache
+     *
+     * @param key chiave
+     * @return risultato o null se non è in cache
+     */
+    public ParsedText get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key); //get aggiorna anche l'ordine di uso
+        }
+        if (entry == null) {
+            return null;
+        }
+        File file = getFile(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            ParsedText ret = new ParsedText(readString(in), readString(in), readString(in));
+            file.setLastModified(System.currentTimeMillis());
+            return ret;
+        } catch (FileNotFoundException e) { //Cancellato nel frattempo da un altro thread: non è in cache
+            return null;
+        } catch (IOException e) {
+            LogGui.info("Invalid parsed text cache file " + file.getName() + ": " + e.getLocalizedMessage());
+            remove(key, entry);
+            return null;
+        }
+    }
+
+    /**
+     * Mette in cache un risultato (sostituisce quello con la stessa chiave)
+     *
+     * @param key chiave
+     * @param value risultato
+     */
+    public void put(String key, ParsedText value) {
+        File file = getFile(key);
+        try {
+            File tmp = File.createTempFile("ptc", ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+                writeString(out, value.getText());
+                writeString(out, value.getHtml());
+                writeString(out, value.getLanguage());
+            }
+            Entry entry = new Entry(tmp.length());
+            synchronized (this) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Entry old = entries.put(key, entry);
+                size += entry.length - (old == null ? 0 : old.length);
+            }
+            evict();
+        } catch (IOException e) {
+            LogGui.printException(e);
+        }
+    }
+
+    /**
+     * Ritorna il numero di risultati in cache
+     *
+     * @return numero di risultati
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Ritorna lo spazio occupato dalla cache
+     *
+     * @return dimensione in byte
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Cancella un risultato non valido, solo se nel frattempo non è stato
+     * sostituito o cancellato da un altro thread
+     *
+     * @param key chiave
+     * @param entry voce letta
+     */
+    private synchronized void remove(String key, Entry entry) {
+        if (entries.get(key) == entry) {
+            entries.remove(key);
+            size -= entry.length;
+            getFile(key).delete();
+        }
+    }
+
+    /**
+     * Cancella i risultati usati meno di recente finché la cache non rientra
+     * nella dimensione massima
+     */
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Entry> entry = it.next();
+            size -= entry.getValue().length;
+            getFile(entry.getKey()).delete();
+            it.remove();
+        }
+    }
+
+    /**
+     * Voce della cache. Il confronto è per identità: una voce sostituita da
+     * un nuovo risultato con la stessa chiave è una voce diversa
+     */
+    private static class Entry {
+
+        private final long length;
+
+        private Entry(long length) {
+            this.length = length;
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.thesemproject.opensem.enrichment.CSVFileParser;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Legge le righe di un file Excel (xlsx) o CSV una alla volta.
+ *
+ * I fogli xlsx vengono letti con un parser SAX: in memoria ci sono solo la
+ * riga corrente e la tabella delle stringhe condivise, non tutto il
+ * workbook. Le celle hanno gli stessi valori (e gli stessi errori) che
+ * darebbero le celle di XSSFWorkbook con getStringCellValue e
+ * getNumericCellValue.
+ *
+ * I file con estensione .csv vengono letti con CSVFileParser (UTF-8, il
+ * separatore tra ';', ',' e tabulazione è quello più presente nella prima
+ * riga) e sono visti come un unico foglio di celle di testo; il valore
+ * numerico di una cella CSV è il testo convertito in numero.
+ *
+ * @since 1.9.3
+ */
+public class SpreadsheetReader {
+
+    /**
+     * Nomi dei tipi di cella di POI (Cell.CELL_TYPE_*) nei messaggi di errore
+     */
+    private static final String[] CELL_TYPE_NAMES = {"numeric", "text", "formula", "blank", "boolean", "error"};
+    private static final Pattern UTF_PATTERN = Pattern.compile("_x([0-9A-F]{4})_");
+
+    /**
+     * Gestore delle righe lette
+     */
+    public interface RowHandler {
+
+        /**
+         * Riceve una riga
+         *
+         * @param sheet indice del foglio (da 0)
+         * @param row riga
+         * @throws Exception eccezione che interrompe la lettura
+         */
+        void row(int sheet, SheetRow row) throws Exception;
+    }
+
+    /**
+     * Legge il file passando le righe al gestore, foglio per foglio e
+     * nell'ordine del foglio
+     *
+     * @param fileName file xlsx o csv
+     * @param handler gestore delle righe
+     * @throws Exception eccezione in lettura o del gestore
+     */
+    public static void read(String fileName, RowHandler handler) throws Exception {
+        if (fileName.toLowerCase().endsWith(".csv")) {
+            readCsv(fileName, handler);
+        } else {
+            readXlsx(fileName, handler);
+        }
+    }
+
+    private static void readXlsx(String fileName, RowHandler handler) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(fileName, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            List<String> sharedStrings = new ArrayList<>();
+            try (InputStream sst = reader.getSharedStringsData()) {
+                XMLReader parser = SAXHelper.newXMLReader();
+                parser.setContentHandler(new SharedStringsHandler(sharedStrings));
+                parser.parse(new InputSource(sst));
+            } catch (IllegalArgumentException e) {
+                //Nessuna tabella delle stringhe condivise
+            }
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            int sheet = 0;
+            while (sheets.hasNext()) {
+                try (InputStream sheetData = sheets.next()) {
+                    XMLReader parser = SAXHelper.newXMLReader();
+                    parser.setContentHandler(new SheetHandler(sheet, sharedStrings, handler));
+                    parser.parse(new InputSource(sheetData));
+                } catch (HandlerException e) {
+                    throw e.getException();
+                }
+                sheet++;
+            }
+        }
+    }
+
+    private static void readCsv(String fileName, RowHandler handler) throws Exception {
+        String delimiter = ";";
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(new File(fileName)), StandardCharsets.UTF_8))) {
+            String first = br.readLine();
+            if (first != null) {
+                int max = -1;
+                for (String d : new String[]{";", ",", "\t"}) {
+                    int count = first.split(Pattern.quote(d), -1).length;
+                    if (count > max) {
+                        max = count;
+                        delimiter = d;
+                    }
+                }
+            }
+        }
+        CSVParser parser = CSVFileParser.getParser(fileName, "\t".equals(delimiter) ? "\\t" : delimiter, "\"", null, null, "UTF-8");
+        if (parser == null) {
+            throw new IOException("Unable to read " + fileName);
+        }
+        try {
+            for (CSVRecord record : parser) {
+                SheetRow row = new SheetRow((int) record.getRecordNumber() - 1);
+                int col = 0;
+                for (String value : record) {
+                    row.add(col++, new SheetCell(value));
+                }
+                handler.row(0, row);
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Riga di un foglio
+     */
+    public static class SheetRow {
+
+        private final int rowNum;
+        private final List<SheetCell> cells;
+
+        private SheetRow(int rowNum) {
+            this.rowNum = rowNum;
+            this.cells = new ArrayList<>();
+        }
+
+        private void add(int col, SheetCell cell) {
+            while (cells.size() <= col) {
+                cells.add(null);
+            }
+            cells.set(col, cell);
+        }
+
+        /**
+         * Ritorna il numero della riga (da 0)
+         *
+         * @return numero della riga
+         */
+        public int getRowNum() {
+            return rowNum;
+        }
+
+        /**
+         * Ritorna una cella
+         *
+         * @param col colonna (da 0)
+         * @return cella o null se la cella non è presente
+         */
+        public SheetCell getCell(int col) {
+            return col < cells.size() ? cells.get(col) : null;
+        }
+    }
+
+    /**
+     * Cella di un foglio
+     */
+    public static class SheetCell {
+
+        private final int cellType;
+        private final int cachedType;
+        private final String value;
+        private final boolean csv;
+
+        private SheetCell(int cellType, int cachedType, String value) {
+            this.cellType = cellType;
+            this.cachedType = cachedType;
+            this.value = value;
+            this.csv = false;
+        }
+
+        private SheetCell(String value) {
+            this.cellType = Cell.CELL_TYPE_STRING;
+            this.cachedType = Cell.CELL_TYPE_STRING;
+            this.value = value;
+            this.csv = true;
+        }
+
+        /**
+         * Ritorna il valore di testo della cella
+         *
+         * @return testo (vuoto per le celle vuote)
+         * @throws IllegalStateException se la cella non è di testo
+         */
+        public String getStringCellValue() {
+            switch (cellType) {
+                case Cell.CELL_TYPE_BLANK:
+                    return "";
+                case Cell.CELL_TYPE_STRING:
+                    return value;
+                case Cell.CELL_TYPE_FORMULA:
+                    if (cachedType != Cell.CELL_TYPE_STRING) {
+                        throw typeMismatch(Cell.CELL_TYPE_STRING, cachedType, true);
+                    }
+                    return value;
+                default:
+                    throw typeMismatch(Cell.CELL_TYPE_STRING, cellType, false);
+            }
+        }
+
+        /**
+         * Ritorna il valore numerico della cella
+         *
+         * @return valore (0 per le celle vuote)
+         * @throws IllegalStateException se la cella non è numerica
+         */
+        public double getNumericCellValue() {
+            if (csv) {
+                try {
+                    return Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    throw typeMismatch(Cell.CELL_TYPE_NUMERIC, Cell.CELL_TYPE_STRING, false);
+                }
+            }
+            switch (cellType) {
+                case Cell.CELL_TYPE_BLANK:
+                    return 0.0;
+                case Cell.CELL_TYPE_FORMULA:
+                    if (cachedType != Cell.CELL_TYPE_NUMERIC) {
+                        throw typeMismatch(Cell.CELL_TYPE_NUMERIC, cachedType, true);
+                    }
+                    return getNumber();
+                case Cell.CELL_TYPE_NUMERIC:
+                    return getNumber();
+                default:
+                    throw typeMismatch(Cell.CELL_TYPE_NUMERIC, cellType, false);
+            }
+        }
+
+        private double getNumber() {
+            if (value != null && !value.isEmpty()) {
+                try {
+                    return Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    throw typeMismatch(Cell.CELL_TYPE_NUMERIC, Cell.CELL_TYPE_STRING, false);
+                }
+            }
+            return 0.0;
+        }
+
+        private static IllegalStateException typeMismatch(int expected, int actual, boolean formula) {
+            return new IllegalStateException("Cannot get a " + CELL_TYPE_NAMES[expected] + " value from a " + CELL_TYPE_NAMES[actual] + " " + (formula ? "formula " : "") + "cell");
+        }
+    }
+
+    /**
+     * Decodifica le sequenze _xHHHH_ come XSSFRichTextString
+     */
+    private static String utfDecode(String value) {
+        if (value == null || value.indexOf("_x") == -1) {
+            return value;
+        }
+        StringBuilder buf = new StringBuilder();
+        Matcher m = UTF_PATTERN.matcher(value);
+        int idx = 0;
+        while (m.find()) {
+            buf.append(value, idx, m.start());
+            buf.append((char) Integer.parseInt(m.group(1), 16));
+            idx = m.end();
+        }
+        buf.append(value.substring(idx));
+        return buf.toString();
+    }
+
+    /**
+     * Testo di un elemento rich text (si o is): se ci sono run è la
+     * concatenazione dei run, altrimenti il testo dell'elemento t. Il testo
+     * fonetico (rPh) viene ignorato
+     */
+    private static class RichText {
+
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder runs = new StringBuilder();
+        private boolean hasText;
+        private boolean hasRuns;
+        private int depth;
+        private boolean inRun;
+        private boolean inPhonetic;
+        private StringBuilder target;
+
+        void reset() {
+            text.setLength(0);
+            runs.setLength(0);
+            hasText = false;
+            hasRuns = false;
+            depth = 0;
+            inRun = false;
+            inPhonetic = false;
+            target = null;
+        }
+
+        void start(String name) {
+            depth++;
+            if ("r".equals(name) && depth == 1) {
+                inRun = true;
+                hasRuns = true;
+            } else if ("rPh".equals(name)) {
+                inPhonetic = true;
+            } else if ("t".equals(name) && !inPhonetic) {
+                if (inRun) {
+                    target = runs;
+                } else if (depth == 1) {
+                    hasText = true;
+                    target = text;
+                }
+            }
+        }
+
+        void end(String name) {
+            depth--;
+            if ("t".equals(name)) {
+                target = null;
+            } else if ("r".equals(name) && depth == 0) {
+                inRun = false;
+            } else if ("rPh".equals(name)) {
+                inPhonetic = false;
+            }
+        }
+
+        void characters(char[] ch, int start, int length) {
+            if (target != null) {
+                target.append(ch, start, length);
+            }
+        }
+
+        String getString() {
+            if (hasRuns) {
+                return utfDecode(runs.toString());
+            }
+            return hasText ? utfDecode(text.toString()) : null;
+        }
+    }
+
+    private static class SharedStringsHandler extends DefaultHandler {
+
+        private final List<String> strings;
+        private final RichText richText = new RichText();
+        private boolean inItem;
+
+        SharedStringsHandler(List<String> strings) {
+            this.strings = strings;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("si".equals(localName)) {
+                inItem = true;
+                richText.reset();
+            } else if (inItem) {
+                richText.start(localName);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if ("si".equals(localName)) {
+                inItem = false;
+                strings.add(richText.getString());
+            } else if (inItem) {
+                richText.end(localName);
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inItem) {
+                richText.characters(ch, start, length);
+            }
+        }
+    }
+
+    /**
+     * Eccezione del gestore delle righe da far uscire dal parser SAX
+     */
+    private static class HandlerException extends SAXException {
+
+        private static final long serialVersionUID = 1L;
+
+        HandlerException(Exception e) {
+            super(e);
+        }
+    }
+
+    private static class SheetHandler extends DefaultHandler {
+
+        private final int sheet;
+        private final List<String> sharedStrings;
+        private final RowHandler handler;
+        private final RichText richText = new RichText();
+        private final StringBuilder v = new StringBuilder();
+        private SheetRow row;
+        private int lastRow = -1;
+        private int lastCol;
+        private int col;
+        private String type;
+        private boolean hasFormula;
+        private boolean hasV;
+        private boolean inV;
+        private boolean inInline;
+        private boolean hasInline;
+
+        SheetHandler(int sheet, List<String> sharedStrings, RowHandler handler) {
+            this.sheet = sheet;
+            this.sharedStrings = sharedStrings;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (inInline) {
+                richText.start(localName);
+                return;
+            }
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    lastRow = r == null ? lastRow + 1 : Integer.parseInt(r) - 1;
+                    row = new SheetRow(lastRow);
+                    lastCol = -1;
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    col = ref == null ? lastCol + 1 : getColumn(ref);
+                    lastCol = col;
+                    type = attributes.getValue("t");
+                    if (type == null) {
+                        type = "n";
+                    }
+                    hasFormula = false;
+                    hasV = false;
+                    hasInline = false;
+                    v.setLength(0);
+                    break;
+                case "f":
+                    hasFormula = true;
+                    break;
+                case "v":
+                    hasV = true;
+                    inV = true;
+                    break;
+                case "is":
+                    inInline = true;
+                    hasInline = true;
+                    richText.reset();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (inInline) {
+                if ("is".equals(localName)) {
+                    inInline = false;
+                } else {
+                    richText.end(localName);
+                }
+                return;
+            }
+            switch (localName) {
+                case "v":
+                    inV = false;
+                    break;
+                case "c":
+                    row.add(col, getCell());
+                    break;
+                case "row":
+                    try {
+                        handler.row(sheet, row);
+                    } catch (Exception e) {
+                        throw new HandlerException(e);
+                    }
+                    row = null;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inInline) {
+                richText.characters(ch, start, length);
+            } else if (inV) {
+                v.append(ch, start, length);
+            }
+        }
+
+        /**
+         * Costruisce la cella come XSSFCell: tipo, tipo del valore in cache
+         * per le formule e valore
+         */
+        private SheetCell getCell() {
+            String value = hasV ? v.toString() : null;
+            int baseType;
+            String text = null;
+            switch (type) {
+                case "b":
+                    baseType = Cell.CELL_TYPE_BOOLEAN;
+                    break;
+                case "e":
+                    baseType = Cell.CELL_TYPE_ERROR;
+                    break;
+                case "s":
+                    baseType = Cell.CELL_TYPE_STRING;
+                    text = hasV ? sharedStrings.get(Integer.parseInt(value)) : "";
+                    break;
+                case "inlineStr":
+                    baseType = Cell.CELL_TYPE_STRING;
+                    if (hasInline) {
+                        text = richText.getString();
+                    } else {
+                        text = hasV ? utfDecode(value) : "";
+                    }
+                    break;
+                case "str":
+                    baseType = Cell.CELL_TYPE_STRING;
+                    text = hasV ? utfDecode(value) : "";
+                    break;
+                default:
+                    baseType = Cell.CELL_TYPE_NUMERIC;
+                    break;
+            }
+            if (hasFormula) {
+                if (baseType == Cell.CELL_TYPE_STRING) {
+                    text = hasV ? utfDecode(value) : "";
+                }
+                return new SheetCell(Cell.CELL_TYPE_FORMULA, baseType, baseType == Cell.CELL_TYPE_STRING ? text : value);
+            }
+            if (baseType == Cell.CELL_TYPE_NUMERIC && !hasV) {
+                return new SheetCell(Cell.CELL_TYPE_BLANK, Cell.CELL_TYPE_BLANK, null);
+            }
+            return new SheetCell(baseType, baseType, baseType == Cell.CELL_TYPE_STRING ? text : value);
+        }
+
+        private static int getColumn(String ref) {
+            int col = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                col = col * 26 + (c - 'A' + 1);
+            }
+            return col - 1;
+        }
+    }
+}
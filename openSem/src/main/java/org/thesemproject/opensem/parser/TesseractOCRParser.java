@@ -29,12 +29,12 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
@@ -85,7 +85,7 @@ public class TesseractOCRParser extends AbstractParser {
         MediaType.image("png"), MediaType.image("jpeg"), MediaType.image("tiff"),
         MediaType.image("x-ms-bmp"), MediaType.image("gif")
     })));
-    private static Map<String, Boolean> TESSERACT_PRESENT = new HashMap<String, Boolean>();
+    private static Map<String, Boolean> TESSERACT_PRESENT = new ConcurrentHashMap<String, Boolean>();
 
     /**
      * Ritorna i tipi supportati
@@ -28,6 +28,7 @@ public class CapturePattern implements Serializable {
     int position;
     Pattern pattern;
     String fixValue;
+    transient TableMatcher tableMatcher;
 
     /**
      * Definisce un pattern di cattura
@@ -103,4 +104,25 @@ public class CapturePattern implements Serializable {
         this.fixValue = fixValue;
     }
 
+    /**
+     * Ritorna il riconoscitore della tabella da usare al posto del pattern
+     * (solo per i pattern costruiti su una tabella)
+     *
+     * @return riconoscitore della tabella o null se si usa il pattern
+     * @since 1.9.3
+     */
+    public TableMatcher getTableMatcher() {
+        return tableMatcher;
+    }
+
+    /**
+     * Imposta il riconoscitore della tabella
+     *
+     * @param tableMatcher riconoscitore della tabella
+     * @since 1.9.3
+     */
+    public void setTableMatcher(TableMatcher tableMatcher) {
+        this.tableMatcher = tableMatcher;
+    }
+
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.segmentation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.thesemproject.opensem.classification.ClassificationPath;
+
+/**
+ * Piano di esecuzione di una lista di catture.
+ *
+ * Viene costruito una volta sola a partire dalle configurazioni e contiene
+ * tutto quello che durante l'estrazione verrebbe altrimenti ricalcolato per
+ * ogni riga: il modo di uso del valore di normalizzazione (gruppo, valore
+ * fisso o normalizzazione su tabella), il percorso di classificazione da
+ * assegnare, le catture bloccate come insieme di bit e il piano delle
+ * sottocatture. I Matcher vengono creati una volta per thread e riusati con
+ * reset.
+ *
+ * Il piano è immutabile e può essere usato da più thread.
+ *
+ * @since 1.9.3
+ */
+public class CapturePlan {
+
+    /**
+     * Viene catturato il gruppo indicato dalla posizione
+     */
+    static final int MODE_GROUP = 0;
+
+    /**
+     * Viene catturato il valore fisso
+     */
+    static final int MODE_FIX = 1;
+
+    /**
+     * Viene catturato il valore della tabella più simile al gruppo
+     */
+    static final int MODE_NORMALIZE = 2;
+
+    final Capture[] captures;
+    final String[] blockedNames;
+    private final int patternCount;
+    private final ThreadLocal<Matcher[]> matchers;
+
+    /**
+     * Costruisce il piano
+     *
+     * @param captureConfigurations catture nell'ordine di esecuzione
+     */
+    public CapturePlan(List<CaptureConfiguration> captureConfigurations) {
+        Map<String, Integer> blockedIndex = new LinkedHashMap<>();
+        for (CaptureConfiguration cc : captureConfigurations) {
+            for (String blocked : cc.getBlockedCaptures()) {
+                if (!blockedIndex.containsKey(blocked)) {
+                    blockedIndex.put(blocked, blockedIndex.size());
+                }
+            }
+        }
+        blockedNames = blockedIndex.keySet().toArray(new String[blockedIndex.size()]);
+        captures = new Capture[captureConfigurations.size()];
+        int matcherIndex = 0;
+        for (int c = 0; c < captures.length; c++) {
+            CaptureConfiguration cc = captureConfigurations.get(c);
+            List<CapturePattern> patterns = cc.getPatterns();
+            Step[] steps = new Step[patterns.size()];
+            for (int p = 0; p < steps.length; p++) {
+                steps[p] = new Step(patterns.get(p), matcherIndex++);
+            }
+            long[] blocked = new long[(blockedNames.length + 63) >> 6];
+            for (String name : cc.getBlockedCaptures()) {
+                int id = blockedIndex.get(name);
+                blocked[id >> 6] |= 1L << id;
+            }
+            captures[c] = new Capture(cc, steps, blocked);
+        }
+        patternCount = matcherIndex;
+        matchers = ThreadLocal.withInitial(() -> new Matcher[patternCount]);
+    }
+
+    /**
+     * Ritorna i Matcher del thread corrente, uno per pattern del piano
+     *
+     * @return matcher del thread (non ancora creati se null)
+     */
+    Matcher[] getMatchers() {
+        return matchers.get();
+    }
+
+    /**
+     * Ritorna il Matcher di un passo sul testo, riusando quello del thread
+     *
+     * @param threadMatchers matcher del thread
+     * @param step passo
+     * @param text testo
+     * @return matcher posizionato all'inizio del testo
+     */
+    static Matcher matcher(Matcher[] threadMatchers, Step step, String text) {
+        Matcher m = threadMatchers[step.matcherIndex];
+        if (m == null) {
+            m = step.pattern.matcher(text);
+            threadMatchers[step.matcherIndex] = m;
+        } else {
+            m.reset(text);
+        }
+        return m;
+    }
+
+    /**
+     * Cattura compilata
+     */
+    static class Capture {
+
+        final CaptureConfiguration configuration;
+        final Step[] steps;
+        final long[] blocked;
+        final List<ClassificationPath> classificationPaths;
+        final CapturePlan subPlan;
+
+        private Capture(CaptureConfiguration configuration, Step[] steps, long[] blocked) {
+            this.configuration = configuration;
+            this.steps = steps;
+            this.blocked = blocked;
+            ClassificationPath cp = configuration.getClassificationPath();
+            this.classificationPaths = (configuration.isIsOrphan() || cp == null) ? null : Collections.singletonList(cp);
+            List<CaptureConfiguration> subCaptures = configuration.getSubCaptures();
+            this.subPlan = subCaptures.isEmpty() ? null : new CapturePlan(subCaptures);
+        }
+    }
+
+    /**
+     * Pattern di cattura compilato
+     */
+    static class Step {
+
+        final Pattern pattern;
+        final TableMatcher tableMatcher;
+        final int position;
+        final int mode;
+        final String value;
+        final int matcherIndex;
+
+        private Step(CapturePattern pattern, int matcherIndex) {
+            this.pattern = pattern.getPattern();
+            this.position = pattern.getPosition();
+            this.tableMatcher = position == 0 ? pattern.getTableMatcher() : null;
+            String fv = pattern.getFixValue();
+            if (fv == null || fv.isEmpty()) {
+                this.mode = MODE_GROUP;
+                this.value = "";
+            } else if (fv.startsWith("#")) {
+                this.mode = MODE_NORMALIZE;
+                this.value = fv.substring(1);
+            } else {
+                this.mode = MODE_FIX;
+                this.value = fv;
+            }
+            this.matcherIndex = matcherIndex;
+        }
+    }
+}
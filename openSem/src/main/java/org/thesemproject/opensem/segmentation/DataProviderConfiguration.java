@@ -27,11 +27,17 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -45,13 +51,12 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.index.SlowCompositeReaderWrapper;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.store.RAMDirectory;
 
 /**
  * Rappresenta la configurazione di un dataprovider. Un dataprovider è un
@@ -107,7 +112,13 @@ public class DataProviderConfiguration implements Serializable{
     private final BiMap<String, String> fieldsPositions;
     private final BiMap<String, String> fieldsTable;
     private final Map<String, String> configurationValues;
+    private static final int BURN_BATCH_SIZE = 1000;
+    private static final int BURN_PROGRESS_ROWS = 100000;
+    private static final double BURN_RAM_BUFFER_MB = 256;
+
     private transient IndexReader reader;
+    private transient Directory directory;
+    private transient Map<List<List<String>>, DataProviderLookup> lookups;
 
     /**
      * Crea un data provider
@@ -314,52 +325,111 @@ public class DataProviderConfiguration implements Serializable{
      * memorizzando tutti i dati come non tokenizzati e non parsati. La
      * posizione di memorizzazione è una sottocartella con il nome del data
      * provider all'interno della cartella dataproviders della cartella di
-     * struttura
+     * struttura.
+     *
+     * Le righe vengono lette a blocchi e i documenti vengono costruiti in
+     * parallelo (un thread per processore). I blocchi vengono aggiunti
+     * all'indice nell'ordine del file: a parità di chiave l'arricchimento
+     * usa il primo documento.
      */
     public void burnToStorage() {
         closeIndex();
         File luceneFolder = getLuceneFolder();
         String encoding = getEncoding();
         Path iDir = Paths.get(luceneFolder.getAbsolutePath());
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
         try {
             IndexWriter indexWriter = IndexManager.getIndexWriter(iDir, true, IndexWriterConfig.OpenMode.CREATE, new WhitespaceAnalyzer());
+            indexWriter.getConfig().setRAMBufferSizeMB(BURN_RAM_BUFFER_MB);
+            //Il merge di segmenti adiacenti mantiene i documenti nell'ordine delle righe
+            indexWriter.getConfig().setMergePolicy(new LogByteSizeMergePolicy());
             CSVParser parser = CSVFileParser.getParser(configurationValues.get(FILE_NAME), configurationValues.get(CSV_DELIMITER), configurationValues.get(CSV_QUOTE), configurationValues.get(CSV_ESCAPE), configurationValues.get(CSV_LINE_SEPARATOR), encoding);
             BiMap<String, String> invFields = fieldsPositions.inverse();
+            boolean skipFirst = "true".equalsIgnoreCase(configurationValues.get(SKIP_FIRST));
+            Deque<Future<List<Document>>> pending = new ArrayDeque<>();
+            List<CSVRecord> batch = new ArrayList<>(BURN_BATCH_SIZE);
+            long start = System.currentTimeMillis();
+            long rows = 0;
             int count = 0;
             for (CSVRecord csvRecord : parser) {
                 count++;
-                if ("true".equalsIgnoreCase(configurationValues.get(SKIP_FIRST)) && count == 1) {
+                if (skipFirst && count == 1) {
                     continue;
                 }
-                int pos = 1;
-                Document doc = new Document();
-                for (String field : csvRecord) {
-                    String fieldName = invFields.get(String.valueOf(pos));
-                    String tmp = fields.get(fieldName);
-                    if (tmp == null) continue;
-                    if (tmp.equals("date")) {
-                        field = DateUtils.parseString(field);
-                        if (field == null) {
-                            field = "";
-                        }
+                batch.add(csvRecord);
+                if (batch.size() == BURN_BATCH_SIZE) {
+                    pending.add(submitBatch(executor, batch, invFields));
+                    batch = new ArrayList<>(BURN_BATCH_SIZE);
+                    if (pending.size() > 2 * threads) {
+                        rows = addBatch(indexWriter, pending.poll(), rows, start);
                     }
-                    doc.add(new StringField(fieldName, field, Field.Store.YES));
-                    String lowerField = field.toLowerCase();
-                    doc.add(new StringField(fieldName+"_lower", lowerField, Field.Store.YES));
-                    pos++;
                 }
-                indexWriter.addDocument(doc);
+            }
+            if (!batch.isEmpty()) {
+                pending.add(submitBatch(executor, batch, invFields));
+            }
+            while (!pending.isEmpty()) {
+                rows = addBatch(indexWriter, pending.poll(), rows, start);
             }
             indexWriter.commit();
             indexWriter.flush();
+            LogGui.info("Indexed " + rows + " rows (" + getRowsPerSecond(rows, start) + " rows/s)");
             LogGui.info("Close index...");
             indexWriter.close();
         } catch (Exception e) {
             LogGui.printException(e);
+        } finally {
+            executor.shutdownNow();
         }
         openIndex();
     }
 
+    private Future<List<Document>> submitBatch(ExecutorService executor, List<CSVRecord> batch, BiMap<String, String> invFields) {
+        return executor.submit(() -> {
+            List<Document> docs = new ArrayList<>(batch.size());
+            for (CSVRecord csvRecord : batch) {
+                docs.add(getDocument(csvRecord, invFields));
+            }
+            return docs;
+        });
+    }
+
+    private long addBatch(IndexWriter indexWriter, Future<List<Document>> batch, long rows, long start) throws Exception {
+        List<Document> docs = batch.get();
+        indexWriter.addDocuments(docs);
+        long ret = rows + docs.size();
+        if (ret / BURN_PROGRESS_ROWS != rows / BURN_PROGRESS_ROWS) {
+            LogGui.info("Indexed " + ret + " rows (" + getRowsPerSecond(ret, start) + " rows/s)");
+        }
+        return ret;
+    }
+
+    private static long getRowsPerSecond(long rows, long start) {
+        return rows * 1000 / Math.max(1, System.currentTimeMillis() - start);
+    }
+
+    private Document getDocument(CSVRecord csvRecord, BiMap<String, String> invFields) {
+        int pos = 1;
+        Document doc = new Document();
+        for (String field : csvRecord) {
+            String fieldName = invFields.get(String.valueOf(pos));
+            String tmp = fields.get(fieldName);
+            if (tmp == null) continue;
+            if (tmp.equals("date")) {
+                field = DateUtils.parseString(field);
+                if (field == null) {
+                    field = "";
+                }
+            }
+            doc.add(new StringField(fieldName, field, Field.Store.YES));
+            String lowerField = field.toLowerCase();
+            doc.add(new StringField(fieldName+"_lower", lowerField, Field.Store.YES));
+            pos++;
+        }
+        return doc;
+    }
+
     /**
      * Ritorna il tipo di enconding
      *
@@ -388,6 +458,9 @@ public class DataProviderConfiguration implements Serializable{
      * data provider)
      */
     public void closeIndex() {
+        synchronized (this) {
+            lookups = null;
+        }
         if (reader != null) {
             try {
                 reader.close();
@@ -395,6 +468,18 @@ public class DataProviderConfiguration implements Serializable{
                 LogGui.printException(iOException);
             }
         }
+        closeDirectory();
+    }
+
+    private void closeDirectory() {
+        if (directory != null) {
+            try {
+                directory.close();
+            } catch (IOException iOException) {
+                LogGui.printException(iOException);
+            }
+            directory = null;
+        }
     }
 
     /**
@@ -403,19 +488,16 @@ public class DataProviderConfiguration implements Serializable{
     public void openIndex() {
         closeIndex(); //Per sicurezza
         try {
-            reader = DirectoryReader.open(getFolderDir());
+            directory = getFolderDir();
+            reader = DirectoryReader.open(directory);
         } catch (IOException ex) {
             LogGui.printException(ex);
+            closeDirectory();
         }
     }
 
     private Directory getFolderDir() throws IOException {
-        RAMDirectory ret;
-        try (FSDirectory dir = FSDirectory.open(Paths.get(getLuceneFolder().getAbsolutePath()))) {
-            ret = new RAMDirectory(dir, null);
-
-        }
-        return ret;
+        return IndexManager.getReadDirectory(Paths.get(getLuceneFolder().getAbsolutePath()));
     }
 
     /**
@@ -426,6 +508,19 @@ public class DataProviderConfiguration implements Serializable{
      * @throws IOException Eccezione di input/output
      */
     public Document search(Query query) throws IOException {
+        return search(reader, query);
+    }
+
+    /**
+     * Cerca in un indice di lucene
+     *
+     * @param reader indice
+     * @param query query di ricerca
+     * @return primo Documento che ha matchato la ricerca
+     * @throws IOException Eccezione di input/output
+     * @since 1.9.3
+     */
+    static Document search(IndexReader reader, Query query) throws IOException {
 //        LogGui.info("Query: " + query.toString());
         IndexSearcher indexSearcher = new IndexSearcher(reader);
         ScoreDoc[] sDocs = indexSearcher.search(query, 1).scoreDocs;
@@ -436,6 +531,34 @@ public class DataProviderConfiguration implements Serializable{
         return null;
     }
 
+    /**
+     * Ritorna la tabella di lookup per l'arricchimento sui field chiave
+     * indicati. La tabella viene costruita alla prima richiesta sull'indice
+     * aperto e viene scartata quando l'indice viene chiuso (e quindi anche
+     * quando il dataprovider viene ricaricato con burnToStorage)
+     *
+     * @param keyFields field chiave
+     * @param importFields field da importare
+     * @return tabella di lookup o null se l'indice non è aperto
+     * @throws IOException Eccezione di input/output
+     * @since 1.9.3
+     */
+    public synchronized DataProviderLookup getLookup(List<String> keyFields, List<String> importFields) throws IOException {
+        if (reader == null) {
+            return null;
+        }
+        if (lookups == null) {
+            lookups = new HashMap<>();
+        }
+        List<List<String>> id = Arrays.asList(keyFields, importFields);
+        DataProviderLookup lookup = lookups.get(id);
+        if (lookup == null) {
+            lookup = new DataProviderLookup(reader, keyFields, importFields);
+            lookups.put(id, lookup);
+        }
+        return lookup;
+    }
+
     /**
      * Ritorna una collezione di stringhe come valori per popolare la tabella.
      * Viene usato sia dalla parte gui per far vedere i valori, sia in
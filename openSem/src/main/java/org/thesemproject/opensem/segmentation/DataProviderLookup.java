@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.segmentation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Tabella di lookup di un dataprovider per l'arricchimento.
+ *
+ * Associa ai valori (in minuscolo) dei field chiave i valori dei field da
+ * importare del primo documento dell'indice che ha quelle chiavi, cioè lo
+ * stesso documento che ritornerebbe la ricerca con una BooleanQuery di
+ * TermQuery sui field "_lower". La tabella viene costruita una volta sola
+ * leggendo l'indice ed è una mappa a indirizzamento aperto: l'arricchimento
+ * diventa un accesso per hash.
+ *
+ * Se l'indice ha più di MAX_TABLE_DOCS documenti la tabella non viene
+ * costruita: le ricerche vanno su lucene e i risultati (anche quelli vuoti)
+ * vengono tenuti in una cache LRU di CACHE_SIZE chiavi.
+ *
+ * L'oggetto può essere usato da più thread.
+ *
+ * @since 1.9.3
+ */
+public class DataProviderLookup {
+
+    /**
+     * Numero massimo di documenti di un indice per cui viene costruita la
+     * tabella
+     */
+    public static final int MAX_TABLE_DOCS = 1000000;
+
+    /**
+     * Numero di chiavi tenute nella cache quando la tabella non viene
+     * costruita
+     */
+    public static final int CACHE_SIZE = 10000;
+
+    private static final String[] NOT_FOUND = new String[0];
+
+    private final IndexReader reader;
+    private final String[] keyFields;
+    private final String[] importFields;
+    private final String[] tableKeys;
+    private final String[][] tableValues;
+    private final int mask;
+    private final Cache<String, String[]> cache;
+
+    /**
+     * Costruisce la tabella leggendo l'indice
+     *
+     * @param reader indice del dataprovider
+     * @param keyFields field chiave
+     * @param importFields field da importare
+     * @throws IOException Eccezione di input/output
+     */
+    public DataProviderLookup(IndexReader reader, List<String> keyFields, List<String> importFields) throws IOException {
+        this.reader = reader;
+        this.keyFields = keyFields.toArray(new String[keyFields.size()]);
+        this.importFields = importFields.toArray(new String[importFields.size()]);
+        final int maxDoc = reader.maxDoc();
+        if (maxDoc > MAX_TABLE_DOCS) {
+            tableKeys = null;
+            tableValues = null;
+            mask = 0;
+            cache = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+            return;
+        }
+        cache = null;
+        int capacity = Integer.highestOneBit(Math.max(maxDoc, 1) * 2 - 1) << 1;
+        tableKeys = new String[capacity];
+        tableValues = new String[capacity][];
+        mask = capacity - 1;
+        Set<String> toLoad = new HashSet<>();
+        for (String field : this.keyFields) {
+            toLoad.add(field + "_lower");
+        }
+        for (String field : this.importFields) {
+            toLoad.add(field);
+        }
+        Bits liveDocs = MultiFields.getLiveDocs(reader);
+        String[] values = new String[this.keyFields.length];
+        for (int i = 0; i < maxDoc; i++) {
+            if (liveDocs != null && !liveDocs.get(i)) {
+                continue;
+            }
+            Document doc = reader.document(i, toLoad);
+            boolean complete = true;
+            for (int k = 0; k < values.length; k++) {
+                values[k] = doc.get(this.keyFields[k] + "_lower");
+                if (values[k] == null) {
+                    complete = false; //Il documento non può essere trovato con queste chiavi
+                    break;
+                }
+            }
+            if (complete) {
+                String key = getKey(values);
+                int slot = getSlot(key);
+                if (tableKeys[slot] == null) { //A parità di chiave vince il primo documento
+                    tableKeys[slot] = key;
+                    tableValues[slot] = getImportValues(doc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cerca i valori da importare
+     *
+     * @param keyValues valori (già in minuscolo) dei field chiave, nello
+     * stesso ordine dei field passati al costruttore
+     * @return valori dei field da importare (null per i field non presenti)
+     * nello stesso ordine dei field passati al costruttore oppure null se
+     * nessun documento ha queste chiavi
+     * @throws IOException Eccezione di input/output
+     */
+    public String[] lookup(String[] keyValues) throws IOException {
+        if (keyFields.length == 0) {
+            return null; //Una BooleanQuery vuota non trova nulla
+        }
+        String key = getKey(keyValues);
+        if (cache == null) {
+            return tableValues[getSlot(key)];
+        }
+        String[] ret = cache.getIfPresent(key);
+        if (ret == null) {
+            ret = search(keyValues);
+            cache.put(key, ret);
+        }
+        return ret == NOT_FOUND ? null : ret;
+    }
+
+    private String[] search(String[] keyValues) throws IOException {
+        BooleanQuery.Builder bq = new BooleanQuery.Builder();
+        for (int k = 0; k < keyFields.length; k++) {
+            bq.add(new TermQuery(new Term(keyFields[k] + "_lower", keyValues[k])), BooleanClause.Occur.MUST);
+        }
+        Document doc = DataProviderConfiguration.search(reader, bq.build());
+        return doc == null ? NOT_FOUND : getImportValues(doc);
+    }
+
+    private String[] getImportValues(Document doc) {
+        String[] ret = new String[importFields.length];
+        for (int f = 0; f < ret.length; f++) {
+            ret[f] = doc.get(importFields[f]);
+        }
+        return ret;
+    }
+
+    /**
+     * Ritorna lo slot della chiave: quello che la contiene o il primo libero
+     */
+    private int getSlot(String key) {
+        int h = key.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (tableKeys[slot] != null && !tableKeys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Chiave composta: ogni valore è preceduto dalla sua lunghezza, così
+     * valori diversi non possono dare la stessa chiave
+     */
+    private static String getKey(String[] values) {
+        if (values.length == 1) {
+            return values[0];
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            sb.append(value.length()).append(':').append(value);
+        }
+        return sb.toString();
+    }
+}
@@ -16,13 +16,11 @@
 package org.thesemproject.opensem.segmentation;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.TermQuery;
 import org.thesemproject.opensem.gui.LogGui;
 
 /**
@@ -41,6 +39,7 @@ public class DataProviderRelationship implements Serializable {
     private final boolean override;
     private final Map<String, String> keys;
     private final Map<String, String> toImport;
+    private transient volatile LookupFields lookupFields;
 
     /**
      * Istanzia la relazione
@@ -95,31 +94,38 @@ public class DataProviderRelationship implements Serializable {
                 this.toImport.put(field, field);
             }
         }
+        lookupFields = null;
 
     }
 
     /**
-     * Arricchisce un segmentationResult incrociando il dataprovider
+     * Arricchisce un segmentationResult incrociando il dataprovider. I valori
+     * vengono cercati nella tabella di lookup del dataprovider costruita sui
+     * field chiave della relazione
+     *
      * @param sr segmentation result
-     * @param captures mappa delle catture 
+     * @param captures mappa delle catture
      */
     public void enrich(SegmentationResults sr, Map<String, CaptureConfiguration> captures) {
-        BooleanQuery.Builder bq = new BooleanQuery.Builder();
-        for (String field : keys.keySet()) {
-            String capture = keys.get(field);
+        LookupFields fields = getLookupFields();
+        List<String> keyFields = fields.keys;
+        List<String> importFields = fields.toImport;
+        String[] keyValues = new String[keyFields.size()];
+        for (int i = 0; i < keyValues.length; i++) {
+            String capture = keys.get(keyFields.get(i));
             String captureValue = sr.getCaptureResults().get(capture);
             if (captureValue == null) {
                 return;
             }
-            TermQuery tq = new TermQuery(new Term(field+"_lower", captureValue.toLowerCase()));
-            bq.add(tq, BooleanClause.Occur.MUST);
+            keyValues[i] = captureValue.toLowerCase();
         }
         try {
-            Document search = dpConfiguration.search(bq.build());
-            if (search != null) {
-                for (String field : toImport.keySet()) {
-                    String capture = toImport.get(field); //Dove voglio far andare dentro le cose
-                    String value = search.get(field);
+            DataProviderLookup lookup = dpConfiguration.getLookup(keyFields, importFields);
+            String[] values = lookup == null ? null : lookup.lookup(keyValues);
+            if (values != null) {
+                for (int i = 0; i < values.length; i++) {
+                    String capture = toImport.get(importFields.get(i)); //Dove voglio far andare dentro le cose
+                    String value = values[i];
                     if (value != null) {
                         if (override || (sr.getCaptureResults().get(capture) == null)) {
                             sr.addCaptureResult(captures.get(capture), value, override);
@@ -133,4 +139,28 @@ public class DataProviderRelationship implements Serializable {
         }
 
     }
+
+    private LookupFields getLookupFields() {
+        LookupFields ret = lookupFields;
+        if (ret == null) {
+            ret = new LookupFields(keys, toImport);
+            lookupFields = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Field chiave e field da importare della relazione, nell'ordine usato
+     * per la tabella di lookup
+     */
+    private static class LookupFields {
+
+        private final List<String> keys;
+        private final List<String> toImport;
+
+        private LookupFields(Map<String, String> keys, Map<String, String> toImport) {
+            this.keys = Collections.unmodifiableList(new ArrayList<>(keys.keySet()));
+            this.toImport = Collections.unmodifiableList(new ArrayList<>(toImport.keySet()));
+        }
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.segmentation;
+
+/**
+ * Normalizzatore delle righe da segmentare.
+ *
+ * Produce lo stesso risultato di
+ * line.toLowerCase().replaceAll("\t", "").replaceAll("(\\s+)", " ").trim().toLowerCase()
+ * con una sola scansione della riga su un buffer riusato: le tabulazioni
+ * vengono tolte, le sequenze di spazi sostituite da un solo spazio, i
+ * caratteri di controllo iniziali e finali eliminati e le lettere ASCII
+ * portate in minuscolo durante la copia. Le righe con caratteri non ASCII (o
+ * con un locale di default in cui le minuscole ASCII sono diverse) vengono
+ * portate in minuscolo con String.toLowerCase.
+ *
+ * L'oggetto riusa il buffer interno e non può essere usato da più thread.
+ *
+ * @since 1.9.3
+ */
+public class LineNormalizer {
+
+    private final StringBuilder buffer;
+    private final boolean asciiLowerCase;
+
+    /**
+     * Crea il normalizzatore
+     */
+    public LineNormalizer() {
+        this.buffer = new StringBuilder(256);
+        this.asciiLowerCase = "I".toLowerCase().equals("i");
+    }
+
+    /**
+     * Normalizza una riga
+     *
+     * @param line riga (senza ritorno a capo)
+     * @return riga normalizzata
+     */
+    public String normalize(CharSequence line) {
+        int length = line.length();
+        if (asciiLowerCase) {
+            for (int i = 0; i < length; i++) {
+                if (line.charAt(i) >= 128) {
+                    return collapse(line.toString().toLowerCase(), false).toLowerCase();
+                }
+            }
+            return collapse(line, true);
+        }
+        return collapse(line.toString().toLowerCase(), false).toLowerCase();
+    }
+
+    private String collapse(CharSequence line, boolean lowerCase) {
+        buffer.setLength(0);
+        boolean space = false;
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                continue;
+            }
+            if (c == ' ' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+                space = true;
+                continue;
+            }
+            if (space) {
+                buffer.append(' ');
+                space = false;
+            }
+            if (lowerCase && c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            buffer.append(c);
+        }
+        if (space) {
+            buffer.append(' ');
+        }
+        //Come String.trim
+        int start = 0;
+        int end = buffer.length();
+        while (start < end && buffer.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && buffer.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return buffer.substring(start, end);
+    }
+}
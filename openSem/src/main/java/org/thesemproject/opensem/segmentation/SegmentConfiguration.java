@@ -39,6 +39,9 @@ public class SegmentConfiguration implements Serializable {
     List<FormulaConfiguration> formulasAfterEnrich;
     boolean isDefault;
     boolean classify;
+    private transient volatile SegmentMatcher segmentsMatcher;
+    private transient volatile CapturePlan capturePlan;
+    private transient volatile CapturePlan sentenceCapturePlan;
 
     /**
      * Ritorna se un segmento è in grado di classificare
@@ -199,6 +202,7 @@ public class SegmentConfiguration implements Serializable {
      */
     public void setSegments(List<SegmentConfiguration> segments) {
         this.segments = segments;
+        this.segmentsMatcher = null;
     }
 
     /**
@@ -213,6 +217,23 @@ public class SegmentConfiguration implements Serializable {
      */
     public void addSegment(SegmentConfiguration subSegment) {
         this.segments.add(subSegment);
+        this.segmentsMatcher = null;
+    }
+
+    /**
+     * Ritorna il riconoscitore delle intestazioni dei sottosegmenti. Viene
+     * costruito al primo utilizzo
+     *
+     * @since 1.9.3
+     * @return riconoscitore dei sottosegmenti
+     */
+    public SegmentMatcher getSegmentsMatcher() {
+        SegmentMatcher matcher = segmentsMatcher;
+        if (matcher == null) {
+            matcher = new SegmentMatcher(segments);
+            segmentsMatcher = matcher;
+        }
+        return matcher;
     }
 
     /**
@@ -223,6 +244,7 @@ public class SegmentConfiguration implements Serializable {
      */
     public void addCapture(CaptureConfiguration captureConfiguration) {
         this.captureConfigurations.add(captureConfiguration);
+        this.capturePlan = null;
     }
 
     /**
@@ -251,6 +273,39 @@ public class SegmentConfiguration implements Serializable {
      */
     public void addSentenceCapture(CaptureConfiguration captureConfiguration) {
         this.sentenceCaptureConfigurations.add(captureConfiguration);
+        this.sentenceCapturePlan = null;
+    }
+
+    /**
+     * Ritorna il piano di esecuzione delle catture di segmento. Viene
+     * costruito al primo utilizzo
+     *
+     * @since 1.9.3
+     * @return piano delle catture di segmento
+     */
+    public CapturePlan getCapturePlan() {
+        CapturePlan plan = capturePlan;
+        if (plan == null) {
+            plan = new CapturePlan(captureConfigurations);
+            capturePlan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Ritorna il piano di esecuzione delle catture di sentenza. Viene
+     * costruito al primo utilizzo
+     *
+     * @since 1.9.3
+     * @return piano delle catture di sentenza
+     */
+    public CapturePlan getSentenceCapturePlan() {
+        CapturePlan plan = sentenceCapturePlan;
+        if (plan == null) {
+            plan = new CapturePlan(sentenceCaptureConfigurations);
+            sentenceCapturePlan = plan;
+        }
+        return plan;
     }
 
     /**
@@ -285,6 +340,7 @@ public class SegmentConfiguration implements Serializable {
             formulasAfterEnrich.add(formulaConfiguration);
         }
         this.captureConfigurations.add(formulaConfiguration.getCaptureConfigurations()); //Aggiunge nel sistema una cattura vuota per rappresentare la cosa a livello di motore.
+        this.capturePlan = null;
     }
 
     /**
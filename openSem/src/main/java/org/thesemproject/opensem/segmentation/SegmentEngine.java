@@ -20,12 +20,18 @@ import org.thesemproject.opensem.classification.MulticlassEngine;
 import org.thesemproject.opensem.gui.utils.GuiUtils;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import org.jdom2.Document;
 import org.jdom2.Element;
@@ -42,13 +48,12 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
-import org.thesemproject.opensem.classification.Tokenizer;
 import org.thesemproject.opensem.gui.modelEditor.CapturesGroupTreeNode;
 import org.thesemproject.opensem.gui.modelEditor.FormulaTreeNode;
+import org.thesemproject.opensem.utils.BKTree;
 
 /**
  * Motore di segmentazione. Applicando la configurazione del patternMatrix ad un
@@ -73,10 +78,13 @@ public class SegmentEngine {
     private final ModelTreeNode globalCapturesTreeNode;
     private final ModelTreeNode dataprovidersNode;
     private final List<SegmentConfiguration> patternMatrix;
+    private SegmentMatcher segmentMatcher;
     private final Map<String, Pattern> dictionary;
     private final Map<String, Pattern> tables;
+    private final Map<String, TableMatcher> tableMatchers;
     private final Map<String, DataProviderConfiguration> providers;
-    private final Map<String, Set<String>> tablesValues;
+    private final Map<String, BKTree> tablesIndexes;
+    private volatile ForkJoinPool segmentsPool;
 
     /**
      * Crea il segmentEngine vuoto. Il segmentEngine va poi inizializzato
@@ -84,8 +92,10 @@ public class SegmentEngine {
      */
     public SegmentEngine() {
         patternMatrix = new ArrayList<>();
+        segmentMatcher = new SegmentMatcher(patternMatrix);
         dictionary = new LinkedHashMap<>();
         tables = new LinkedHashMap<>();
+        tableMatchers = new HashMap<>();
         providers = new LinkedHashMap<>();
         bigRegexPattern = new ConcurrentHashMap<>();
         dictionaryNode = new DictionaryTreeNode("Dizionario");
@@ -94,7 +104,7 @@ public class SegmentEngine {
         globalCapturesTreeNode = new ModelTreeNode("Catture", ModelTreeNode.TYPE_CAPTURE);
         dataprovidersNode = new ModelTreeNode("Data Providers", ModelTreeNode.TYPE_DATA_PROVIDERS);
         visualStructure = new DefaultTreeModel(getCleansedModel());
-        tablesValues = new HashMap<>();
+        tablesIndexes = new HashMap<>();
     }
 
     /**
@@ -153,11 +163,7 @@ public class SegmentEngine {
      * gerarchicamente
      */
     public Map<SegmentConfiguration, List<SegmentationResults>> getSegments(String text, String language) {
-        if (text == null) {
-            return null;
-        }
-        text = text.toLowerCase();
-        return getSegments(Arrays.asList(text.split(CR)), language);
+        return getSegments(text, null, language);
     }
 
     /**
@@ -175,90 +181,146 @@ public class SegmentEngine {
         if (text == null) {
             return null;
         }
-        text = text.toLowerCase();
-        return startProcess(Arrays.asList(text.split(CR)), me, language);
+        try {
+            return getSegments(new StringReader(text), me, language);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); //Uno StringReader non genera eccezioni di I/O
+        }
     }
 
-    private Map<SegmentConfiguration, List<SegmentationResults>> getSegments(List<String> lines, String language) {
-        return startProcess(lines, null, language);
+    /**
+     * Segmenta un testo letto da un reader senza classificare i singoli
+     * segmenti
+     *
+     * @param reader reader da cui leggere il testo
+     * @param language lingua del testo
+     * @return risultato della segmentazione (vedi getSegments(String,
+     * String))
+     * @throws IOException Eccezione di input/output
+     * @since 1.9.3
+     */
+    public Map<SegmentConfiguration, List<SegmentationResults>> getSegments(Reader reader, String language) throws IOException {
+        return getSegments(reader, null, language);
     }
 
-    private Map<SegmentConfiguration, List<SegmentationResults>> startProcess(List<String> lines, MulticlassEngine me, String language) {
-        //Apre tutti gli indici dei dataproviders...
-
-        String line;
-        String previousLines = "";
-        String lastLine = "";
-        SegmentConfiguration currentSegment = null;
-        for (SegmentConfiguration segmentConfiguration : patternMatrix) {
-            if (segmentConfiguration.isDefault()) {
-                currentSegment = segmentConfiguration;
+    /**
+     * Segmenta un testo letto da un reader, classificando i segmenti marcati
+     * come classificabili.
+     *
+     * Il testo viene consumato riga per riga: ogni riga è normalizzata (spazi
+     * e minuscole) in una sola passata su un buffer riusato e assegnata
+     * subito al suo segmento, senza costruire copie dell'intero testo. Il
+     * risultato è lo stesso di getSegments(String, MulticlassEngine, String)
+     * sul testo completo. Catture, sottosegmenti e classificazione vengono
+     * eseguiti alla fine del testo perché un segmento non multiplo può
+     * ricevere righe fino all'ultima.
+     *
+     * Il reader non viene chiuso.
+     *
+     * @param reader reader da cui leggere il testo
+     * @param me motore di classificazione (deve essere inizializzato)
+     * @param language lingua del testo
+     * @return risultato della segmentazione (vedi getSegments(String,
+     * MulticlassEngine, String))
+     * @throws IOException Eccezione di input/output
+     * @since 1.9.3
+     */
+    public Map<SegmentConfiguration, List<SegmentationResults>> getSegments(Reader reader, MulticlassEngine me, String language) throws IOException {
+        DocumentSegmenter segmenter = new DocumentSegmenter();
+        LineNormalizer normalizer = new LineNormalizer();
+        StringBuilder line = new StringBuilder(256);
+        char[] buffer = new char[8192];
+        //Come in String.split le righe vuote finali vengono ignorate: quelle vuote si tengono da parte finché non arriva una riga piena
+        int emptyLines = 0;
+        boolean newLine = false;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (c != '\n') {
+                    line.append(c);
+                    continue;
+                }
+                newLine = true;
+                if (line.length() == 0) {
+                    emptyLines++;
+                    continue;
+                }
+                for (; emptyLines > 0; emptyLines--) {
+                    segmenter.addLine("");
+                }
+                segmenter.addLine(normalizer.normalize(line));
+                line.setLength(0);
             }
         }
-        if (currentSegment == null) {
-            currentSegment = new SegmentConfiguration("Not identified", false, false);
+        if (line.length() > 0 || !newLine) {
+            for (; emptyLines > 0; emptyLines--) {
+                segmenter.addLine("");
+            }
+            segmenter.addLine(normalizer.normalize(line));
         }
-        Map<SegmentConfiguration, List<SegmentationResults>> identifiedSegments = new LinkedHashMap<>();
-        for (String currLine : lines) {
-            line = currLine;
-            line = line.replaceAll(TAB, "").replaceAll("(\\s+)", " ").trim().toLowerCase();
+        return segmenter.finish(me, language);
+    }
+
+    /**
+     * Stato della segmentazione di un documento: riceve le righe normalizzate
+     * una alla volta e le assegna ai segmenti
+     */
+    private class DocumentSegmenter {
+
+        private final Map<SegmentConfiguration, List<SegmentationResults>> identifiedSegments;
+        private SegmentConfiguration currentSegment;
+        private String previousLines;
+        private String lastLine;
+
+        private DocumentSegmenter() {
+            identifiedSegments = new LinkedHashMap<>();
+            previousLines = "";
+            lastLine = "";
+            currentSegment = null;
+            for (SegmentConfiguration segmentConfiguration : patternMatrix) {
+                if (segmentConfiguration.isDefault()) {
+                    currentSegment = segmentConfiguration;
+                }
+            }
+            if (currentSegment == null) {
+                currentSegment = new SegmentConfiguration("Not identified", false, false);
+            }
+        }
+
+        private void addLine(String line) {
             if (line.length() != 0) {
                 boolean match = false;
-                for (SegmentConfiguration section : patternMatrix) {
-                    List<Pattern> patterns = section.getPatternList();
-                    for (Pattern pattern : patterns) {
-                        if (pattern.matcher(line).find()) { //ha matchato la sezione
-                            //A questo punto la riga va da sola e la previousline va nella sezione precedente
-                            if (previousLines.length() > 0) {
-                                addSentenceToResult(previousLines, currentSegment, identifiedSegments);
-                                previousLines = "";
-                                lastLine = "";
-                            }
-                            if (!section.getName().equals(currentSegment.getName())) {
-                                currentSegment = section; //Ho una nuova sezione
-                            }
-                            if (identifiedSegments.containsKey(currentSegment) && currentSegment.isMultiple()) { //Ho un cambio di sezione ma � multipla
-                                identifiedSegments.get(currentSegment).add(new SegmentationResults()); // Aggiungo un nuovo segmentresult ala lsita dei risultati
-                            }
-                            match = true;
-                            break;
+                SegmentMatcher.Match found = segmentMatcher.find(line, lastLine);
+                if (found != null && found.isJoined()) { //Match con linea precedente + \n linea
+                    line = lastLine + " " + line;
+                    if (previousLines.length() > 0) {
+                        int pos = previousLines.lastIndexOf(" " + lastLine);
+                        if (pos != -1) {
+                            previousLines = previousLines.substring(0, pos);
+                        } else if (previousLines.equals(lastLine)) {
+                            previousLines = "";
                         }
-                    }
-                    if (match) {
-                        break;
-                    } else //Provo a vedere se c'è un match con linea precedente + \n linea 
-                    {
-                        if (lastLine.length() != 0) {
-                            String newLine = lastLine + "@" + line;
-                            for (Pattern pattern : patterns) {
-                                if (pattern.matcher(newLine).find()) { //ha matchato la sezione
-                                    //A questo punto la riga va da sola e la previousline va nella sezione precedente
-                                    line = lastLine + " " + line;
-                                    if (previousLines.length() > 0) {
-                                        int pos = previousLines.lastIndexOf(" " + lastLine);
-                                        if (pos != -1) {
-                                            previousLines = previousLines.substring(0, pos);
-                                        } else if (previousLines.equals(lastLine)) {
-                                            previousLines = "";
-                                        }
-                                        if (previousLines.length() > 0) {
-                                            addSentenceToResult(previousLines, currentSegment, identifiedSegments);
-                                        }
-                                        previousLines = "";
-                                        lastLine = "";
-                                    }
-                                    if (!section.getName().equals(currentSegment.getName())) {
-                                        currentSegment = section; //Ho una nuova sezione
-                                    }
-                                    if (identifiedSegments.containsKey(currentSegment) && currentSegment.isMultiple()) { //Ho un cambio di sezione ma � multipla
-                                        identifiedSegments.get(currentSegment).add(new SegmentationResults()); // Aggiungo un nuovo segmentresult ala lsita dei risultati
-                                    }
-                                    match = true;
-                                    break;
-                                }
-                            }
+                        if (previousLines.length() > 0) {
+                            addSentenceToResult(previousLines, currentSegment, identifiedSegments);
                         }
+                        previousLines = "";
+                        lastLine = "";
                     }
+                    setCurrentSegment(found.getSegment());
+                    match = true;
+                    //Il segmento successivo viene provato ancora sulla riga unita
+                    found = segmentMatcher.findNext(found, line);
+                }
+                if (found != null) { //ha matchato la sezione
+                    //A questo punto la riga va da sola e la previousline va nella sezione precedente
+                    if (previousLines.length() > 0) {
+                        addSentenceToResult(previousLines, currentSegment, identifiedSegments);
+                        previousLines = "";
+                        lastLine = "";
+                    }
+                    setCurrentSegment(found.getSegment());
+                    match = true;
                 }
                 if (previousLines.length() != 0) {
                     previousLines = previousLines + " " + line;
@@ -276,16 +338,26 @@ public class SegmentEngine {
             }
             addLineToResult(line, currentSegment, identifiedSegments);
         }
-        if (previousLines.length() > 0) {
-            addSentenceToResult(previousLines, currentSegment, identifiedSegments);
-        }
-        //Fa le sottosezioni e le catture
-        for (SegmentConfiguration segmentBean : patternMatrix) { //Verifico se qualche sergment ha figli
-            processSegment(segmentBean, identifiedSegments, me, language);
+
+        private void setCurrentSegment(SegmentConfiguration section) {
+            if (!section.getName().equals(currentSegment.getName())) {
+                currentSegment = section; //Ho una nuova sezione
+            }
+            if (identifiedSegments.containsKey(currentSegment) && currentSegment.isMultiple()) { //Ho un cambio di sezione ma � multipla
+                identifiedSegments.get(currentSegment).add(new SegmentationResults()); // Aggiungo un nuovo segmentresult ala lsita dei risultati
+            }
         }
-        //Chiude tutti gli indici dei dataproviders...asdas
 
-        return identifiedSegments;
+        private Map<SegmentConfiguration, List<SegmentationResults>> finish(MulticlassEngine me, String language) {
+            if (previousLines.length() > 0) {
+                addSentenceToResult(previousLines, currentSegment, identifiedSegments);
+            }
+            //Fa le sottosezioni e le catture
+            for (SegmentConfiguration segmentBean : patternMatrix) { //Verifico se qualche sergment ha figli
+                processSegment(segmentBean, identifiedSegments, me, language);
+            }
+            return identifiedSegments;
+        }
     }
 
     private void buildPatternMatrix(File fXmlFile, MulticlassEngine me) throws JDOMException, Exception {
@@ -324,9 +396,10 @@ public class SegmentEngine {
         bigRegexPattern.clear();
         dictionary.clear();
         tables.clear();
+        tableMatchers.clear();
         closeAllReaders();
         providers.clear();
-        tablesValues.clear();
+        tablesIndexes.clear();
         visualStructure = new DefaultTreeModel(getCleansedModel());
         List<CaptureConfiguration> globalLinesCaptureConfigurations = new ArrayList<>();
         List<CaptureConfiguration> globalSentenciesCaptureConfigurations = new ArrayList<>();
@@ -512,7 +585,11 @@ public class SegmentEngine {
                                 try {
                                     Pattern pattern = Pattern.compile(tablePattern.toString());
                                     tables.put(name, pattern);
-                                    tablesValues.put(name, tValues);
+                                    tablesIndexes.put(name, new BKTree(tValues));
+                                    TableMatcher tableMatcher = TableMatcher.compile(sortedRecord);
+                                    if (tableMatcher != null) {
+                                        tableMatchers.put(name, tableMatcher);
+                                    }
                                 } catch (Exception e) {
                                     LogGui.info("Invalid table! " + name);
                                 }
@@ -554,6 +631,17 @@ public class SegmentEngine {
                 });
             }
         }
+        segmentMatcher = new SegmentMatcher(patternMatrix);
+        compileCapturePlans(patternMatrix);
+    }
+
+    private void compileCapturePlans(List<SegmentConfiguration> segmentConfigurations) {
+        segmentConfigurations.stream().forEach((sc) -> {
+            sc.getCapturePlan();
+            sc.getSentenceCapturePlan();
+            sc.getSegmentsMatcher();
+            compileCapturePlans(sc.getSegments());
+        });
     }
 
     private void processGlobalCapture(ModelTreeNode captureContainer, List<Element> children, List<CaptureConfiguration> globalSentenciesCaptureConfigurations, List<CaptureConfiguration> globalLinesCaptureConfigurations, MulticlassEngine me) {
@@ -876,7 +964,9 @@ public class SegmentEngine {
                 if (table != null) {
                     Pattern pattern = tables.get(table);
                     if (pattern != null) {
-                        cc.addCapturePattern(new CapturePattern(position, pattern, null));
+                        CapturePattern capturePattern = new CapturePattern(position, pattern, null);
+                        capturePattern.setTableMatcher(tableMatchers.get(table));
+                        cc.addCapturePattern(capturePattern);
                     } else {
                         LogGui.info("Invalid table: " + table);
                     }
@@ -957,7 +1047,7 @@ public class SegmentEngine {
         identifiedSegments.put(currentSegment, sent);
     }
 
-    private Map<SegmentConfiguration, List<SegmentationResults>> getSegments(List<SegmentConfiguration> patternMatrix, List<String> lines, MulticlassEngine me, String language) {
+    private Map<SegmentConfiguration, List<SegmentationResults>> getSegments(List<SegmentConfiguration> patternMatrix, SegmentMatcher segmentMatcher, List<String> lines, MulticlassEngine me, String language) {
         String line;
         String previousLine = "";
         SegmentConfiguration currentSegment = null;
@@ -970,32 +1060,23 @@ public class SegmentEngine {
             currentSegment = new SegmentConfiguration("Not identified", false, false);
         }
         Map<SegmentConfiguration, List<SegmentationResults>> identifiedSegments = new LinkedHashMap<>();
+        LineNormalizer normalizer = new LineNormalizer();
         for (String currLine : lines) {
-            line = currLine;
-            line = line.replaceAll(TAB, "").replaceAll("(\\s+)", " ").trim().toLowerCase();
+            line = normalizer.normalize(currLine);
             if (line.length() != 0) {
-                boolean match = false;
-                for (SegmentConfiguration section : patternMatrix) {
-                    List<Pattern> patterns = section.getPatternList();
-                    for (Pattern pattern : patterns) {
-                        if (pattern.matcher(line).find()) { //ha matchato la sezione
-                            //A questo punto la riga va da sola e la previousline va nella sezione precedente
-                            if (previousLine.length() > 0) {
-                                addSentenceToResult(previousLine, currentSegment, identifiedSegments);
-                                previousLine = "";
-                            }
-                            if (!section.getName().equals(currentSegment.getName())) {
-                                currentSegment = section; //Ho una nuova sezione
-                            }
-                            if (identifiedSegments.containsKey(currentSegment) && currentSegment.isMultiple()) { //Ho un cambio di sezione ma � multipla
-                                identifiedSegments.get(currentSegment).add(new SegmentationResults()); // Aggiungo un nuovo segmentresult ala lsita dei risultati
-                            }
-                            match = true;
-                            break;
-                        }
+                SegmentMatcher.Match found = segmentMatcher.find(line, "");
+                if (found != null) { //ha matchato la sezione
+                    SegmentConfiguration section = found.getSegment();
+                    //A questo punto la riga va da sola e la previousline va nella sezione precedente
+                    if (previousLine.length() > 0) {
+                        addSentenceToResult(previousLine, currentSegment, identifiedSegments);
+                        previousLine = "";
                     }
-                    if (match) {
-                        break;
+                    if (!section.getName().equals(currentSegment.getName())) {
+                        currentSegment = section; //Ho una nuova sezione
+                    }
+                    if (identifiedSegments.containsKey(currentSegment) && currentSegment.isMultiple()) { //Ho un cambio di sezione ma � multipla
+                        identifiedSegments.get(currentSegment).add(new SegmentationResults()); // Aggiungo un nuovo segmentresult ala lsita dei risultati
                     }
                 }
                 if (previousLine.length() != 0) {
@@ -1063,108 +1144,126 @@ public class SegmentEngine {
         List<SegmentConfiguration> segmentConfigurations = segmentBean.getSegments();
         List<SegmentationResults> segmentResults = identifiedSegments.get(segmentBean);
         List<DataProviderRelationship> relationships = segmentBean.getRelationships();
-        if (!(captureConfigurations.isEmpty() && segmentConfigurations.isEmpty())) {
-            if (segmentResults == null) {
-                return;
-            }
-            segmentResults.stream().map((sr) -> {
+        if (segmentResults == null) {
+            return;
+        }
+        boolean extract = !(captureConfigurations.isEmpty() && segmentConfigurations.isEmpty());
+        boolean classify = segmentBean.isClassify() && me != null && me.isIsInit();
+        if (!extract && !classify) {
+            return;
+        }
+        //Ogni segmento viene lavorato in modo indipendente dagli altri
+        forEachSegmentationResult(segmentResults, (sr) -> {
+            if (extract) {
                 if (!segmentConfigurations.isEmpty()) {
-                    Map<SegmentConfiguration, List<SegmentationResults>> subSegments = getSegments(segmentConfigurations, sr.getLines(), me, language);
+                    Map<SegmentConfiguration, List<SegmentationResults>> subSegments = getSegments(segmentConfigurations, segmentBean.getSegmentsMatcher(), sr.getLines(), me, language);
                     sr.setSubsentencies(subSegments);
                 }
-                return sr;
-            }).map((sr) -> {
                 if (!captureConfigurations.isEmpty()) {
-                    List<String> srLines = sr.getLines();
-                    extractCaptures(captureConfigurations, sr, srLines);
+                    extractCaptures(segmentBean.getCapturePlan(), sr, sr.getLines());
                 }
-                return sr;
-            }).filter((sr) -> (!sCaptureConfigurations.isEmpty())).forEach((sr) -> {
-                List<String> srLines = sr.getSentencies();
-                extractCaptures(sCaptureConfigurations, sr, srLines);
-            });
-            //Formule pre arricchimento
-            if (!formulasBefore.isEmpty()) {
-                segmentResults.stream().forEach((sr) -> {
-                    formulasBefore.stream().forEach((formula) -> {
-                        formula.applyFormula(sr, capturesIndex);
-                    });
+                if (!sCaptureConfigurations.isEmpty()) {
+                    extractCaptures(segmentBean.getSentenceCapturePlan(), sr, sr.getSentencies());
+                }
+                //Formule pre arricchimento
+                formulasBefore.stream().forEach((formula) -> {
+                    formula.applyFormula(sr, capturesIndex);
                 });
-
-            }
-            if (!relationships.isEmpty()) {
-                segmentResults.stream().forEach((sr) -> {
-                    relationships.stream().forEach((dpr) -> {
-                        dpr.enrich(sr, capturesIndex);
-                    });
+                relationships.stream().forEach((dpr) -> {
+                    dpr.enrich(sr, capturesIndex);
                 });
-            }
-
-            //Formule post arricchimento
-            if (!formulasAfter.isEmpty()) {
-                segmentResults.stream().forEach((sr) -> {
-                    formulasAfter.stream().forEach((formula) -> {
-                        formula.applyFormula(sr, capturesIndex);
-                    });
+                //Formule post arricchimento
+                formulasAfter.stream().forEach((formula) -> {
+                    formula.applyFormula(sr, capturesIndex);
                 });
             }
-        }
-        if (segmentBean.isClassify()) {
-            if (segmentResults == null) {
-                return;
-            }
-            if (me != null) {
-                if (me.isIsInit()) {
-                    segmentResults.stream().forEach((sr) -> {
-                        classify(sr, me, language);
-                    });
-                }
+            if (classify) {
+                classify(sr, me, language);
             }
+        });
+    }
+
+    /**
+     * Applica un'azione a tutti i segmenti di una lista, in parallelo sul pool
+     * dell'engine se l'elaborazione parallela è attiva. L'ordine della lista
+     * non cambia e ogni azione lavora solo sul proprio segmento, quindi il
+     * risultato è lo stesso dell'elaborazione sequenziale
+     */
+    private void forEachSegmentationResult(List<SegmentationResults> segmentResults, Consumer<SegmentationResults> action) {
+        ForkJoinPool pool = segmentsPool;
+        if (pool == null || segmentResults.size() < 2) {
+            segmentResults.stream().forEach(action);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(segmentResults.size());
+        segmentResults.stream().forEach((sr) -> {
+            tasks.add(ForkJoinTask.adapt(() -> action.accept(sr)));
+        });
+        ForkJoinTask<?> all = ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks));
+        if (ForkJoinTask.getPool() == pool) {
+            all.invoke(); //Segmenti annidati: si è già in un thread del pool
+        } else {
+            pool.invoke(all);
         }
     }
 
-    private void extractCaptures(List<CaptureConfiguration> captureConfigurations, SegmentationResults sr, List<String> srLines) {
-        Set<String> toRemove = new HashSet<>();
-        for (CaptureConfiguration captureConfiguration : captureConfigurations) {
+    private void extractCaptures(CapturePlan plan, SegmentationResults sr, List<String> srLines) {
+        int lineCount = srLines.size();
+        String[] lines = srLines.toArray(new String[lineCount]);
+        boolean[] blank = new boolean[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            blank[i] = isBlank(lines[i]);
+        }
+        Matcher[] matchers = plan.getMatchers();
+        long[] toRemove = null;
+        for (CapturePlan.Capture capture : plan.captures) {
+            CaptureConfiguration captureConfiguration = capture.configuration;
             if (captureConfiguration.isNotSubscribe()) {
                 if (sr.getCaptureResults().get(captureConfiguration.getName()) != null) {
                     continue;
                 }
             }
-            List<CapturePattern> patterns = captureConfiguration.getPatterns();
             String capturedValue = null;
-            for (CapturePattern pattern : patterns) {
+            for (CapturePlan.Step step : capture.steps) {
                 boolean continueWithNext = true;
-                for (String text : srLines) {
-                    if (text.trim().length() == 0) {
+                for (int i = 0; i < lineCount; i++) {
+                    if (blank[i]) {
                         continue;
                     }
-                    Pattern p = pattern.getPattern();
-                    String fv = pattern.getFixValue();
-                    if (fv == null) {
-                        fv = "";
+                    String text = lines[i];
+                    Matcher match = null;
+                    String tableValue = null;
+                    if (step.tableMatcher != null) {
+                        tableValue = step.tableMatcher.find(text);
+                    } else {
+                        match = CapturePlan.matcher(matchers, step, text);
                     }
-                    Matcher match = p.matcher(text);
-                    if (match.find()) {
+                    if (tableValue != null || (match != null && match.find())) {
                         try {
-                            boolean isTableNormalized = fv.startsWith("#");
-                            String value = (fv.isEmpty() || isTableNormalized) ? match.group(pattern.getPosition()) : fv;
-                            if (isTableNormalized) {
-                                value = searchSimilar(value, fv.substring(1));
+                            String value;
+                            if (step.mode == CapturePlan.MODE_FIX) {
+                                value = step.value;
+                            } else {
+                                value = match == null ? tableValue : match.group(step.position);
+                                if (step.mode == CapturePlan.MODE_NORMALIZE) {
+                                    value = searchSimilar(value, step.value);
+                                }
                             }
                             sr.addCaptureResult(captureConfiguration, value);
-                            if (!captureConfiguration.isIsOrphan()) {
-                                ClassificationPath cp = captureConfiguration.getClassificationPath();
-                                if (cp != null) {
-                                    List<ClassificationPath> cps = new ArrayList<>();
-                                    cps.add(cp);
-                                    sr.addClassificationPath(cps);
-                                    sr.setClassifyByCapture(true);
-                                }
+                            if (capture.classificationPaths != null) {
+                                sr.addClassificationPath(capture.classificationPaths);
+                                sr.setClassifyByCapture(true);
                             }
                             continueWithNext = false;
                             capturedValue = value;
-                            toRemove.addAll(captureConfiguration.getBlockedCaptures());
+                            if (plan.blockedNames.length > 0) {
+                                if (toRemove == null) {
+                                    toRemove = new long[capture.blocked.length];
+                                }
+                                for (int b = 0; b < toRemove.length; b++) {
+                                    toRemove[b] |= capture.blocked[b];
+                                }
+                            }
                             break;
                         } catch (Exception e) {
                             LogGui.info("Exception during capture: " + captureConfiguration.getName() + " " + captureConfiguration.getType());
@@ -1178,23 +1277,36 @@ public class SegmentEngine {
 
             }
             if (capturedValue != null) {
-                if (captureConfiguration.getSubCaptures().size() > 0) {
-                    List<String> list = new ArrayList<>();
-                    list.add(sr.getCaptureConfigurationResults().get(captureConfiguration));
-                    if (list.size() > 0) {
-                        extractCaptures(captureConfiguration.getSubCaptures(), sr, list);
-                    }
+                if (capture.subPlan != null) {
+                    extractCaptures(capture.subPlan, sr, Collections.singletonList(sr.getCaptureConfigurationResults().get(captureConfiguration)));
                     if (captureConfiguration.isTemporary()) {
                         sr.removeCaptureConfigurationResults(captureConfiguration);
                     }
                 }
             }
         }
-        for (String block : toRemove) {
-            sr.removeCaptureConfigurationResults(block);
+        if (toRemove != null) {
+            for (int id = 0; id < plan.blockedNames.length; id++) {
+                if ((toRemove[id >> 6] & (1L << id)) != 0) {
+                    sr.removeCaptureConfigurationResults(plan.blockedNames[id]);
+                }
+            }
         }
     }
 
+    private static boolean isBlank(String text) {
+        if (text == null) {
+            return true;
+        }
+        //Come text.trim().length() == 0, senza creare stringhe
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void classify(SegmentationResults sr, MulticlassEngine me, String language) {
         if (me != null) {
            // if (!sr.isClassifyByCapture()) {
@@ -1218,6 +1330,42 @@ public class SegmentEngine {
         return patternMatrix;
     }
 
+    /**
+     * Attiva o disattiva l'elaborazione parallela dei segmenti di un documento.
+     *
+     * Se attiva sottosegmentazione, catture, formule, arricchimento e
+     * classificazione dei segmenti identificati nello stesso documento vengono
+     * eseguiti in parallelo su un pool condiviso da tutti i documenti
+     * elaborati dall'engine. Il risultato non cambia: l'ordine dei segmenti è
+     * quello del testo e ogni segmento è elaborato in modo indipendente.
+     *
+     * Conviene con documenti lunghi e molti segmenti ripetuti, quando i
+     * documenti da elaborare sono meno dei processori disponibili.
+     *
+     * @param threads numero di thread del pool (0 o 1 per l'elaborazione
+     * sequenziale)
+     * @since 1.9.3
+     */
+    public synchronized void setParallelism(int threads) {
+        ForkJoinPool old = segmentsPool;
+        segmentsPool = threads > 1 ? new ForkJoinPool(threads) : null;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Ritorna il numero di thread usati per elaborare i segmenti di un
+     * documento
+     *
+     * @return numero di thread (1 se l'elaborazione è sequenziale)
+     * @since 1.9.3
+     */
+    public int getParallelism() {
+        ForkJoinPool pool = segmentsPool;
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
     /**
      * Chiude tutti i readers dei data providers
      */
@@ -1228,38 +1376,12 @@ public class SegmentEngine {
     }
 
     private String searchSimilar(String value, String tableName) {
-        final AtomicInteger distance = new AtomicInteger(Integer.MAX_VALUE);
-        final FinalString ret = new FinalString(value);
-        Set<String> tableValues = tablesValues.get(tableName);
-        if (tableValues == null) {
+        BKTree tableIndex = tablesIndexes.get(tableName);
+        if (tableIndex == null) {
             return value;
         }
-        tableValues.stream().forEach((tvalue) -> {
-            final int d2 = Tokenizer.distance(value, tvalue);
-            if (d2 < distance.get()) {
-                distance.set(d2);
-                ret.set(tvalue);
-            }
-        });
-
-        return ret.toString();
-    }
-
-    class FinalString {
-
-        private String s;
-
-        public FinalString(String s) {
-            this.s = s;
-        }
-
-        public void set(String s) {
-            this.s = s;
-        }
-
-        public String toString() {
-            return s;
-        }
+        String nearest = tableIndex.getNearest(value);
+        return nearest == null ? value : nearest;
     }
 
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.segmentation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.thesemproject.opensem.utils.AhoCorasick;
+import org.thesemproject.opensem.utils.RegexLiterals;
+
+/**
+ * Riconoscitore delle intestazioni di segmento.
+ *
+ * Mette insieme i pattern di un elenco di segmenti (nell'ordine di
+ * dichiarazione) e per ogni riga ritorna il primo segmento che la riconosce,
+ * con la stessa semantica del ciclo segmento per segmento e pattern per
+ * pattern: per ogni segmento si provano prima i pattern sulla riga e poi,
+ * se c'è, sulla riga precedente unita alla corrente con "@". Come nel ciclo
+ * originale, dopo un riconoscimento sulle righe unite il segmento successivo
+ * viene provato ancora sulla riga unita (vedi findNext).
+ *
+ * Per ogni pattern vengono estratti i letterali necessari (vedi
+ * RegexLiterals) e tutti i letterali sono compilati in un unico automa di
+ * Aho-Corasick: una scansione della riga dice quali pattern possono
+ * riconoscerla e solo quelli (più i pattern senza letterali) vengono
+ * eseguiti.
+ *
+ * L'oggetto è immutabile e può essere usato da più thread.
+ *
+ * @since 1.9.3
+ */
+public class SegmentMatcher {
+
+    private final SegmentConfiguration[] segments;
+    private final Pattern[][] patterns;
+    private final int[][] patternIds;
+    private final boolean[] filtered;
+    private final int[][] keywordPatterns;
+    private final AhoCorasick automaton;
+    private final int patternCount;
+
+    /**
+     * Costruisce il riconoscitore
+     *
+     * @param segmentConfigurations segmenti nell'ordine di dichiarazione
+     */
+    public SegmentMatcher(List<SegmentConfiguration> segmentConfigurations) {
+        segments = segmentConfigurations.toArray(new SegmentConfiguration[segmentConfigurations.size()]);
+        patterns = new Pattern[segments.length][];
+        patternIds = new int[segments.length][];
+        List<Boolean> filteredList = new ArrayList<>();
+        List<String> keywords = new ArrayList<>();
+        Map<String, Integer> keywordIndex = new HashMap<>();
+        List<List<Integer>> keywordPatternList = new ArrayList<>();
+        int id = 0;
+        for (int s = 0; s < segments.length; s++) {
+            List<Pattern> list = segments[s].getPatternList();
+            patterns[s] = list.toArray(new Pattern[list.size()]);
+            patternIds[s] = new int[patterns[s].length];
+            for (int p = 0; p < patterns[s].length; p++) {
+                patternIds[s][p] = id;
+                Set<String> literals = RegexLiterals.getRequiredLiterals(patterns[s][p]);
+                filteredList.add(literals != null);
+                if (literals != null) {
+                    for (String literal : literals) {
+                        Integer keyword = keywordIndex.get(literal);
+                        if (keyword == null) {
+                            keyword = keywords.size();
+                            keywordIndex.put(literal, keyword);
+                            keywords.add(literal);
+                            keywordPatternList.add(new ArrayList<>());
+                        }
+                        keywordPatternList.get(keyword).add(id);
+                    }
+                }
+                id++;
+            }
+        }
+        patternCount = id;
+        filtered = new boolean[patternCount];
+        for (int i = 0; i < patternCount; i++) {
+            filtered[i] = filteredList.get(i);
+        }
+        keywordPatterns = new int[keywords.size()][];
+        for (int k = 0; k < keywordPatterns.length; k++) {
+            List<Integer> ids = keywordPatternList.get(k);
+            keywordPatterns[k] = new int[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                keywordPatterns[k][i] = ids.get(i);
+            }
+        }
+        automaton = keywords.isEmpty() ? null : new AhoCorasick(keywords);
+    }
+
+    /**
+     * Cerca il primo segmento che riconosce la riga
+     *
+     * @param line riga (normalizzata)
+     * @param lastLine riga precedente non riconosciuta (vuota se non c'è)
+     * @return segmento riconosciuto o null
+     */
+    public Match find(String line, String lastLine) {
+        long[] lineCandidates = getCandidates(line);
+        String joined = null;
+        long[] joinedCandidates = null;
+        for (int s = 0; s < segments.length; s++) {
+            if (matches(s, line, lineCandidates)) {
+                return new Match(segments[s], s, false);
+            }
+            if (lastLine.length() != 0 && patterns[s].length > 0) {
+                if (joined == null) {
+                    joined = lastLine + "@" + line;
+                    joinedCandidates = getCandidates(joined);
+                }
+                if (matches(s, joined, joinedCandidates)) {
+                    return new Match(segments[s], s, true);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prova il segmento che segue un riconoscimento sulle righe unite. Nel
+     * ciclo originale un riconoscimento sulle righe unite non interrompe il
+     * ciclo sui segmenti: il segmento successivo viene provato (solo sulla
+     * riga) con la riga unita, e se la riconosce diventa il segmento
+     * corrente
+     *
+     * @param joined riconoscimento sulle righe unite
+     * @param line riga unita (riga precedente, spazio, riga corrente)
+     * @return riconoscimento del segmento successivo o null
+     */
+    public Match findNext(Match joined, String line) {
+        int s = joined.index + 1;
+        if (!joined.joined || s >= segments.length) {
+            return null;
+        }
+        if (matches(s, line, getCandidates(line))) {
+            return new Match(segments[s], s, false);
+        }
+        return null;
+    }
+
+    private boolean matches(int segment, String text, long[] candidates) {
+        Pattern[] segmentPatterns = patterns[segment];
+        for (int p = 0; p < segmentPatterns.length; p++) {
+            int id = patternIds[segment][p];
+            if (filtered[id] && (candidates[id >> 6] & (1L << id)) == 0) {
+                continue; //Nel testo non c'è nessun letterale necessario al pattern
+            }
+            if (segmentPatterns[p].matcher(text).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long[] getCandidates(String text) {
+        long[] candidates = new long[(patternCount + 63) >> 6];
+        if (automaton != null) {
+            automaton.search(text, (int keyword, int end) -> {
+                for (int id : keywordPatterns[keyword]) {
+                    candidates[id >> 6] |= 1L << id;
+                }
+                return true;
+            });
+        }
+        return candidates;
+    }
+
+    /**
+     * Risultato del riconoscimento
+     */
+    public static class Match {
+
+        private final SegmentConfiguration segment;
+        private final int index;
+        private final boolean joined;
+
+        private Match(SegmentConfiguration segment, int index, boolean joined) {
+            this.segment = segment;
+            this.index = index;
+            this.joined = joined;
+        }
+
+        /**
+         * Ritorna il segmento riconosciuto
+         *
+         * @return segmento
+         */
+        public SegmentConfiguration getSegment() {
+            return segment;
+        }
+
+        /**
+         * Ritorna true se il segmento è stato riconosciuto sulla riga
+         * precedente unita alla corrente
+         *
+         * @return true se riconosciuto sulle due righe unite
+         */
+        public boolean isJoined() {
+            return joined;
+        }
+    }
+}
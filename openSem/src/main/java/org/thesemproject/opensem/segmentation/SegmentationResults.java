@@ -211,7 +211,9 @@ public class SegmentationResults implements Serializable {
                 if (toFormat) {
                     value = formatter.format(format, real).toString();
                 } else {
-                    value = DECIMAL_FORMAT.format(real);
+                    synchronized (DECIMAL_FORMAT) { //DecimalFormat non è thread safe
+                        value = DECIMAL_FORMAT.format(real);
+                    }
                 }
             } catch (NumberFormatException e) {
                 return;
@@ -232,10 +234,14 @@ public class SegmentationResults implements Serializable {
                             return;
                         }
                     }
-                    value = myFormatter.format(real);
+                    synchronized (myFormatter) {
+                        value = myFormatter.format(real);
+                    }
 
                 } else {
-                    value = DECIMAL_FORMAT.format(real);
+                    synchronized (DECIMAL_FORMAT) { //DecimalFormat non è thread safe
+                        value = DECIMAL_FORMAT.format(real);
+                    }
                 }
             } catch (NumberFormatException e) {
                 return;
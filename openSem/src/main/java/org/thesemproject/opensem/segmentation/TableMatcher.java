@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.segmentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.thesemproject.opensem.utils.AhoCorasick;
+
+/**
+ * Riconoscitore dei valori di una tabella.
+ *
+ * Sostituisce la regex "v1|v2|..." costruita con i valori della tabella
+ * (ordinati per lunghezza decrescente e con gli spazi trasformati in
+ * (\s*)) con un automa di Aho-Corasick, restituendo la stessa occorrenza
+ * della regex: quella che inizia prima nel testo e, a parità di inizio, il
+ * primo valore nell'ordine della tabella.
+ *
+ * Per gestire la tolleranza sugli spazi i valori vengono inseriti
+ * nell'automa senza spazi e la ricerca avviene sul testo privato dei
+ * caratteri di spaziatura. Ogni occorrenza viene poi verificata sul testo
+ * originale: i caratteri che nel valore sono contigui devono esserlo anche
+ * nel testo.
+ *
+ * Se un valore contiene caratteri speciali delle regex, spaziature diverse
+ * dallo spazio o spazi iniziali o finali la tabella non può essere gestita e
+ * va usata la regex.
+ *
+ * L'oggetto è immutabile e può essere usato da più thread.
+ *
+ * @since 1.9.3
+ */
+public class TableMatcher {
+
+    private static final String REGEX_SPECIAL_CHARS = "\\^$.|?*+()[]{}";
+
+    private final AhoCorasick automaton;
+    private final int[] keywordLength;
+    private final int[][] keywordGaps;
+    private final int maxLength;
+
+    private TableMatcher(List<String> keywords, List<int[]> gaps) {
+        this.automaton = new AhoCorasick(keywords);
+        this.keywordLength = new int[keywords.size()];
+        this.keywordGaps = gaps.toArray(new int[gaps.size()][]);
+        int max = 0;
+        for (int k = 0; k < keywordLength.length; k++) {
+            keywordLength[k] = keywords.get(k).length();
+            max = Math.max(max, keywordLength[k]);
+        }
+        this.maxLength = max;
+    }
+
+    /**
+     * Costruisce il riconoscitore di una tabella
+     *
+     * @param sortedValues valori della tabella nell'ordine in cui compaiono
+     * nella regex
+     * @return riconoscitore o null se la tabella deve essere gestita con la
+     * regex
+     */
+    public static TableMatcher compile(List<String> sortedValues) {
+        if (sortedValues.isEmpty()) {
+            return null;
+        }
+        List<String> keywords = new ArrayList<>(sortedValues.size());
+        List<int[]> gaps = new ArrayList<>(sortedValues.size());
+        for (String value : sortedValues) {
+            if (value == null || value.isEmpty() || value.startsWith(" ") || value.endsWith(" ")) {
+                return null;
+            }
+            StringBuilder keyword = new StringBuilder(value.length());
+            List<Integer> valueGaps = new ArrayList<>();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ' ') {
+                    if (value.charAt(i - 1) != ' ') {
+                        valueGaps.add(keyword.length() - 1);
+                    }
+                    continue;
+                }
+                if (isSpace(c) || REGEX_SPECIAL_CHARS.indexOf(c) != -1 || Character.isSurrogate(c)) {
+                    return null;
+                }
+                keyword.append(c);
+            }
+            int[] g = new int[valueGaps.size()];
+            for (int i = 0; i < g.length; i++) {
+                g[i] = valueGaps.get(i);
+            }
+            keywords.add(keyword.toString());
+            gaps.add(g);
+        }
+        return new TableMatcher(keywords, gaps);
+    }
+
+    /**
+     * Cerca il primo valore della tabella presente nel testo
+     *
+     * @param text testo
+     * @return porzione di testo riconosciuta (come group(0) della regex) o
+     * null se nessun valore è presente
+     */
+    public String find(String text) {
+        int length = text.length();
+        char[] chars = new char[length];
+        int[] offsets = new int[length];
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (!isSpace(c)) {
+                chars[n] = c;
+                offsets[n] = i;
+                n++;
+            }
+        }
+        final int[] best = {-1, Integer.MAX_VALUE}; //{valore, inizio}
+        automaton.search(new String(chars, 0, n), (int keyword, int end) -> {
+            if (end - maxLength > best[1]) {
+                return false; //Nessuna occorrenza successiva può iniziare prima
+            }
+            int start = end - keywordLength[keyword];
+            if (start < best[1] || (start == best[1] && keyword < best[0])) {
+                if (isContiguous(keyword, start, offsets)) {
+                    best[0] = keyword;
+                    best[1] = start;
+                }
+            }
+            return true;
+        });
+        if (best[0] == -1) {
+            return null;
+        }
+        int last = best[1] + keywordLength[best[0]] - 1;
+        return text.substring(offsets[best[1]], offsets[last] + 1);
+    }
+
+    private boolean isContiguous(int keyword, int start, int[] offsets) {
+        int[] gaps = keywordGaps[keyword];
+        int g = 0;
+        int last = start + keywordLength[keyword] - 1;
+        for (int i = start; i < last; i++) {
+            if (g < gaps.length && gaps[g] == i - start) {
+                g++; //Nel valore c'è uno spazio: nel testo possono esserci spaziature
+                continue;
+            }
+            if (offsets[i + 1] != offsets[i] + 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpace(char c) {
+        //Stessi caratteri di \s
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
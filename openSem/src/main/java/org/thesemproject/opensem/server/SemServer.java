@@ -0,0 +1,396 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bson.Document;
+import org.thesemproject.opensem.classification.ClassificationPath;
+import org.thesemproject.opensem.classification.MulticlassEngine;
+import org.thesemproject.opensem.gui.LogGui;
+import org.thesemproject.opensem.gui.SemConfiguration;
+import org.thesemproject.opensem.parser.DocumentParser;
+import org.thesemproject.opensem.segmentation.SegmentConfiguration;
+import org.thesemproject.opensem.segmentation.SegmentEngine;
+import org.thesemproject.opensem.segmentation.SegmentationResults;
+import org.thesemproject.opensem.segmentation.SegmentationUtils;
+
+/**
+ * Server HTTP/JSON senza interfaccia grafica.
+ *
+ * All'avvio carica una sola volta il MulticlassEngine e il SegmentEngine di
+ * una struttura e li riusa per tutte le richieste. Espone:
+ *
+ * POST /classify: classifica un testo
+ *
+ * POST /segment: segmenta un testo
+ *
+ * POST /segment-classify: segmenta un testo classificando i segmenti marcati
+ * come classificabili
+ *
+ * GET /status: stato del server
+ *
+ * Il corpo delle richieste POST è un JSON del tipo {"text": "...",
+ * "language": "it", "technology": "bayes"}; lingua e tecnologia sono
+ * facoltative (se la lingua manca viene riconosciuta dal testo, la tecnologia
+ * di default è bayes, l'alternativa è knn).
+ *
+ * Le richieste sono eseguite da un pool di thread con una coda limitata: quando
+ * la coda è piena il server risponde subito 503 (con Retry-After) invece di
+ * accumulare lavoro.
+ *
+ * @since 1.9.3
+ */
+public class SemServer {
+
+    /**
+     * Dimensione massima del corpo di una richiesta (in byte)
+     */
+    public static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final MulticlassEngine me;
+    private final SegmentEngine se;
+    private final DocumentParser dp;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private HttpServer server;
+
+    /**
+     * Istanzia il server su motori già inizializzati
+     *
+     * @param me motore di classificazione (inizializzato)
+     * @param se motore di segmentazione (inizializzato, può essere null se si
+     * vuole solo classificare)
+     * @param threads numero di thread che eseguono le richieste
+     * @param queueSize numero massimo di richieste in attesa
+     */
+    public SemServer(MulticlassEngine me, SegmentEngine se, int threads, int queueSize) {
+        this.me = me;
+        this.se = se;
+        this.dp = new DocumentParser();
+        AtomicInteger count = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), (Runnable r) -> {
+            Thread t = new Thread(r, "sem-server-" + count.incrementAndGet());
+            t.setDaemon(false);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Avvia il server
+     *
+     * @param host indirizzo su cui ascoltare
+     * @param port porta
+     * @throws IOException Eccezione di input/output
+     */
+    public void start(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/classify", new Dispatcher(this::classify, false));
+        server.createContext("/segment", new Dispatcher(this::segment, true));
+        server.createContext("/segment-classify", new Dispatcher(this::segmentClassify, true));
+        server.createContext("/status", (HttpExchange exchange) -> {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("active", executor.getActiveCount());
+            status.put("queued", executor.getQueue().size());
+            status.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+            status.put("served", served.get());
+            status.put("rejected", rejected.get());
+            send(exchange, 200, status);
+        });
+        //Il thread di accettazione di HttpServer esegue solo lo smistamento:
+        //l'elaborazione avviene nel pool
+        server.setExecutor(null);
+        server.start();
+        LogGui.info("SemServer in ascolto su " + host + ":" + port);
+    }
+
+    /**
+     * Ferma il server attendendo la fine delle richieste in corso
+     *
+     * @param seconds secondi massimi di attesa
+     */
+    public void stop(int seconds) {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(seconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LogGui.info("SemServer fermato");
+    }
+
+    private Object classify(JsonNode request) throws Exception {
+        String text = getText(request);
+        String language = getLanguage(request, text);
+        List<Map<String, Object>> paths = new ArrayList<>();
+        if ("knn".equalsIgnoreCase(request.path("technology").asText("bayes"))) {
+            ClassificationPath cp = me.knnClassify(text, language);
+            if (cp != null) {
+                paths.add(toMap(cp));
+            }
+        } else {
+            List<ClassificationPath> cps = me.bayesClassify(text, language);
+            if (cps != null) {
+                for (ClassificationPath cp : cps) {
+                    paths.add(toMap(cp));
+                }
+            }
+        }
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("language", language);
+        ret.put("classifications", paths);
+        return ret;
+    }
+
+    private Object segment(JsonNode request) throws Exception {
+        return segment(request, false);
+    }
+
+    private Object segmentClassify(JsonNode request) throws Exception {
+        return segment(request, true);
+    }
+
+    private Object segment(JsonNode request, boolean classify) throws Exception {
+        String text = getText(request);
+        String language = getLanguage(request, text);
+        Map<SegmentConfiguration, List<SegmentationResults>> result = classify ? se.getSegments(text, me, language) : se.getSegments(text, language);
+        Document document = new Document();
+        document.put("Language", language);
+        return SegmentationUtils.getDocument(document, result);
+    }
+
+    private String getText(JsonNode request) {
+        JsonNode text = request.get("text");
+        if (text == null || !text.isTextual()) {
+            throw new IllegalArgumentException("Campo text mancante");
+        }
+        return text.asText();
+    }
+
+    private String getLanguage(JsonNode request, String text) {
+        String language = request.path("language").asText("");
+        if (language.length() == 0) {
+            language = dp.getLanguageFromText(text);
+        }
+        return language;
+    }
+
+    private static Map<String, Object> toMap(ClassificationPath cp) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("technology", cp.getTechnology());
+        List<String> path = new ArrayList<>();
+        List<Double> score = new ArrayList<>();
+        for (int i = 0; i < ClassificationPath.MAX_DEEP; i++) {
+            String node = cp.getNodeName(i);
+            if (node == null) {
+                break;
+            }
+            path.add(node);
+            score.add(cp.getNodeScore(i));
+        }
+        ret.put("path", path);
+        ret.put("score", score);
+        return ret;
+    }
+
+    private static void send(HttpExchange exchange, int code, Object body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", message);
+        send(exchange, code, error);
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream is = exchange.getRequestBody()) {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                if (bos.size() + read > MAX_BODY_SIZE) {
+                    return null;
+                }
+                bos.write(buffer, 0, read);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Operazione eseguita su una richiesta
+     */
+    private interface Operation {
+
+        Object execute(JsonNode request) throws Exception;
+    }
+
+    /**
+     * Smista una richiesta POST nel pool. Se il pool è saturo risponde 503
+     * direttamente dal thread di accettazione.
+     */
+    private class Dispatcher implements HttpHandler {
+
+        private final Operation operation;
+        private final boolean segmentation;
+
+        private Dispatcher(Operation operation, boolean segmentation) {
+            this.operation = operation;
+            this.segmentation = segmentation;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendError(exchange, 405, "Metodo non supportato");
+                return;
+            }
+            if (segmentation && se == null) {
+                sendError(exchange, 501, "Segmentazione non configurata");
+                return;
+            }
+            try {
+                executor.execute(() -> process(exchange));
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Server occupato");
+            }
+        }
+
+        private void process(HttpExchange exchange) {
+            try {
+                byte[] body = readBody(exchange);
+                if (body == null) {
+                    sendError(exchange, 413, "Richiesta troppo grande");
+                    return;
+                }
+                JsonNode request;
+                try {
+                    request = MAPPER.readTree(body);
+                } catch (IOException e) {
+                    sendError(exchange, 400, "JSON non valido");
+                    return;
+                }
+                if (request == null || !request.isObject()) {
+                    sendError(exchange, 400, "JSON non valido");
+                    return;
+                }
+                Object result;
+                try {
+                    result = operation.execute(request);
+                } catch (IllegalArgumentException e) {
+                    sendError(exchange, 400, e.getMessage());
+                    return;
+                } catch (Exception e) {
+                    LogGui.printException(e);
+                    sendError(exchange, 500, String.valueOf(e.getMessage()));
+                    return;
+                }
+                send(exchange, 200, result);
+                served.incrementAndGet();
+            } catch (IOException e) {
+                LogGui.printException(e);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Avvia il server senza interfaccia grafica
+     *
+     * Uso: SemServer percorsoStruttura [porta] [thread] [coda] [host]
+     * [fileSegmentazione] [k]
+     *
+     * k è il fattore K del KNN con cui è stata istruita la struttura (lo
+     * stesso del campo "K" dell'interfaccia, default 1): la fotografia dei
+     * modelli istruiti viene riusata solo se k è lo stesso
+     *
+     * Il KNN vettoriale e il suo budget di candidati vengono letti, come
+     * nell'interfaccia, dalle chiavi vectorKnn e knnCandidates del file
+     * configuration.ini della cartella di lavoro
+     *
+     * @param args argomenti
+     * @throws Exception Eccezione
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length == 0) {
+            System.out.println("Uso: SemServer percorsoStruttura [porta] [thread] [coda] [host] [fileSegmentazione] [k]");
+            return;
+        }
+        String structurePath = args[0];
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int queueSize = args.length > 3 ? Integer.parseInt(args[3]) : threads * 4;
+        String host = args.length > 4 ? args[4] : "127.0.0.1";
+        File segmentFile = new File(args.length > 5 && args[5].length() > 0 ? args[5] : structurePath + "/segments.xml");
+        int k = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+        MulticlassEngine me = new MulticlassEngine();
+        new SemConfiguration().configure(me);
+        LogGui.info("Init classifier on " + structurePath + " with K " + k + (me.isVectorKnn() ? " (vector KNN)" : ""));
+        if (!me.init(structurePath, k)) {
+            System.out.println("Impossibile inizializzare il classificatore su " + structurePath);
+            return;
+        }
+        SegmentEngine se = null;
+        if (segmentFile.exists()) {
+            se = new SegmentEngine();
+            if (!se.init(segmentFile.getAbsolutePath(), me)) {
+                System.out.println("Impossibile inizializzare il segmentatore su " + segmentFile);
+                return;
+            }
+        } else {
+            LogGui.info("File di segmentazione non trovato: " + segmentFile + ". Segmentazione disabilitata");
+        }
+        final SemServer semServer = new SemServer(me, se, threads, queueSize);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> semServer.stop(30)));
+        semServer.start(host, port);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Automa di Aho-Corasick per la ricerca contemporanea di più stringhe in un
+ * testo con una sola scansione.
+ *
+ * L'automa è immutabile e può essere usato da più thread. Gli stati sono
+ * memorizzati in array: le transizioni di ogni stato sono ordinate per
+ * carattere e cercate per bisezione, in caso di fallimento si seguono i link
+ * di fallimento. Ogni stato conosce le parole che terminano in esso e il
+ * prossimo stato (lungo i link di fallimento) che termina una parola, così
+ * che le occorrenze sovrapposte vengano tutte notificate.
+ *
+ * @since 1.9.3
+ */
+public class AhoCorasick {
+
+    /**
+     * Riceve le occorrenze trovate
+     */
+    public interface MatchListener {
+
+        /**
+         * Notifica un'occorrenza
+         *
+         * @param keyword indice della parola (nell'ordine di costruzione)
+         * @param end posizione successiva all'ultimo carattere dell'occorrenza
+         * @return false per interrompere la ricerca
+         */
+        boolean onMatch(int keyword, int end);
+    }
+
+    private final String[] keywords;
+    private final int[] transitionStart;
+    private final char[] transitionChar;
+    private final int[] transitionTarget;
+    private final int[] fail;
+    private final int[] outputStart;
+    private final int[] outputKeyword;
+    private final int[] outputLink;
+
+    /**
+     * Costruisce l'automa. Le parole vuote vengono ignorate
+     *
+     * @param keywords parole da cercare
+     */
+    public AhoCorasick(List<String> keywords) {
+        this.keywords = keywords.toArray(new String[keywords.size()]);
+        //Trie
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(null);
+        for (int k = 0; k < this.keywords.length; k++) {
+            String keyword = this.keywords[k];
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(state).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    outputs.add(null);
+                    trie.get(state).put(keyword.charAt(i), next);
+                }
+                state = next;
+            }
+            if (outputs.get(state) == null) {
+                outputs.set(state, new ArrayList<>());
+            }
+            outputs.get(state).add(k);
+        }
+        int states = trie.size();
+        //Transizioni compatte
+        transitionStart = new int[states + 1];
+        int transitions = 0;
+        for (int s = 0; s < states; s++) {
+            transitionStart[s] = transitions;
+            transitions += trie.get(s).size();
+        }
+        transitionStart[states] = transitions;
+        transitionChar = new char[transitions];
+        transitionTarget = new int[transitions];
+        for (int s = 0; s < states; s++) {
+            int t = transitionStart[s];
+            for (Map.Entry<Character, Integer> entry : trie.get(s).entrySet()) {
+                transitionChar[t] = entry.getKey();
+                transitionTarget[t] = entry.getValue();
+                t++;
+            }
+        }
+        //Uscite
+        outputStart = new int[states + 1];
+        int outs = 0;
+        for (int s = 0; s < states; s++) {
+            outputStart[s] = outs;
+            if (outputs.get(s) != null) {
+                outs += outputs.get(s).size();
+            }
+        }
+        outputStart[states] = outs;
+        outputKeyword = new int[outs];
+        for (int s = 0; s < states; s++) {
+            if (outputs.get(s) != null) {
+                int o = outputStart[s];
+                for (Integer k : outputs.get(s)) {
+                    outputKeyword[o++] = k;
+                }
+            }
+        }
+        //Link di fallimento (visita in ampiezza)
+        fail = new int[states];
+        outputLink = new int[states];
+        outputLink[0] = -1;
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int t = transitionStart[0]; t < transitionStart[1]; t++) {
+            int child = transitionTarget[t];
+            fail[child] = 0;
+            outputLink[child] = -1;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int t = transitionStart[state]; t < transitionStart[state + 1]; t++) {
+                char c = transitionChar[t];
+                int child = transitionTarget[t];
+                int f = fail[state];
+                int next;
+                while ((next = next(f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = next < 0 ? 0 : next;
+                int target = fail[child];
+                outputLink[child] = hasOutput(target) ? target : outputLink[target];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Ritorna il numero di parole
+     *
+     * @return numero di parole
+     */
+    public int size() {
+        return keywords.length;
+    }
+
+    /**
+     * Ritorna una parola
+     *
+     * @param keyword indice della parola
+     * @return parola
+     */
+    public String getKeyword(int keyword) {
+        return keywords[keyword];
+    }
+
+    /**
+     * Cerca tutte le occorrenze delle parole nel testo
+     *
+     * @param text testo
+     * @param listener destinatario delle occorrenze
+     */
+    public void search(CharSequence text, MatchListener listener) {
+        search(text, 0, text.length(), listener);
+    }
+
+    /**
+     * Cerca tutte le occorrenze delle parole in una porzione del testo
+     *
+     * @param text testo
+     * @param start posizione iniziale (inclusa)
+     * @param end posizione finale (esclusa)
+     * @param listener destinatario delle occorrenze
+     */
+    public void search(CharSequence text, int start, int end, MatchListener listener) {
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = next(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+            int out = hasOutput(state) ? state : outputLink[state];
+            while (out > 0) {
+                for (int o = outputStart[out]; o < outputStart[out + 1]; o++) {
+                    if (!listener.onMatch(outputKeyword[o], i + 1)) {
+                        return;
+                    }
+                }
+                out = outputLink[out];
+            }
+        }
+    }
+
+    private boolean hasOutput(int state) {
+        return outputStart[state] != outputStart[state + 1];
+    }
+
+    private int next(int state, char c) {
+        int low = transitionStart[state];
+        int high = transitionStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char m = transitionChar[mid];
+            if (m < c) {
+                low = mid + 1;
+            } else if (m > c) {
+                high = mid - 1;
+            } else {
+                return transitionTarget[mid];
+            }
+        }
+        return -1;
+    }
+}
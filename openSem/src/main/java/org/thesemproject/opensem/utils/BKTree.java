@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Indice per la ricerca del valore più vicino secondo la distanza di
+ * Levenshtein (la stessa di Tokenizer.distance, senza distinzione tra
+ * maiuscole e minuscole).
+ *
+ * I valori sono organizzati in un BK-tree: ogni nodo ha come figli i valori
+ * raggruppati per distanza dal nodo e, per la disuguaglianza triangolare,
+ * durante la ricerca si visitano solo i figli che possono contenere un
+ * valore non più lontano del migliore trovato. La distanza viene calcolata
+ * con un limite superiore, interrompendo il calcolo appena il limite è
+ * superato.
+ *
+ * A parità di distanza vince il valore che viene prima nell'ordine della
+ * collezione di partenza, come in una scansione sequenziale che tiene il
+ * primo valore con distanza minima.
+ *
+ * L'indice è immutabile e può essere usato da più thread.
+ *
+ * @since 1.9.3
+ */
+public class BKTree {
+
+    private final String[] values;
+    private final String[] keys;
+    private final int[] childStart;
+    private final int[] childDistance;
+    private final int[] childNode;
+    private final int[] maxChildDistance;
+
+    /**
+     * Costruisce l'indice
+     *
+     * @param values valori nell'ordine di preferenza a parità di distanza
+     */
+    public BKTree(Collection<String> values) {
+        String[] all = values.toArray(new String[values.size()]);
+        List<String> nodeKeys = new ArrayList<>();
+        List<Integer> nodeValues = new ArrayList<>();
+        List<TreeMap<Integer, Integer>> children = new ArrayList<>();
+        for (int i = 0; i < all.length; i++) {
+            String key = all[i].toLowerCase();
+            if (nodeKeys.isEmpty()) {
+                nodeKeys.add(key);
+                nodeValues.add(i);
+                children.add(new TreeMap<>());
+                continue;
+            }
+            int node = 0;
+            while (true) {
+                int d = distance(key, nodeKeys.get(node), Integer.MAX_VALUE);
+                if (d == 0) {
+                    break; //Un valore uguale viene prima e vince sempre
+                }
+                Integer child = children.get(node).get(d);
+                if (child == null) {
+                    children.get(node).put(d, nodeKeys.size());
+                    nodeKeys.add(key);
+                    nodeValues.add(i);
+                    children.add(new TreeMap<>());
+                    break;
+                }
+                node = child;
+            }
+        }
+        int nodes = nodeKeys.size();
+        //I nodi sono creati nell'ordine dei valori: l'indice del nodo è la priorità
+        keys = new String[nodes];
+        this.values = new String[nodes];
+        childStart = new int[nodes + 1];
+        maxChildDistance = new int[nodes];
+        int edges = 0;
+        for (int n = 0; n < nodes; n++) {
+            keys[n] = nodeKeys.get(n);
+            this.values[n] = all[nodeValues.get(n)];
+            childStart[n] = edges;
+            edges += children.get(n).size();
+        }
+        childStart[nodes] = edges;
+        childDistance = new int[edges];
+        childNode = new int[edges];
+        for (int n = 0; n < nodes; n++) {
+            int e = childStart[n];
+            for (Map.Entry<Integer, Integer> entry : children.get(n).entrySet()) {
+                childDistance[e] = entry.getKey();
+                childNode[e] = entry.getValue();
+                maxChildDistance[n] = entry.getKey();
+                e++;
+            }
+        }
+    }
+
+    /**
+     * Ritorna il numero di valori distinti (senza distinzione tra maiuscole e
+     * minuscole) presenti nell'indice
+     *
+     * @return numero di valori
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Cerca il valore più vicino
+     *
+     * @param value valore da cercare
+     * @return valore più vicino o null se l'indice è vuoto
+     */
+    public String getNearest(String value) {
+        if (keys.length == 0) {
+            return null;
+        }
+        String key = value.toLowerCase();
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        int[] stack = new int[keys.length];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int limit = bestDistance == Integer.MAX_VALUE ? Integer.MAX_VALUE : bestDistance + maxChildDistance[node];
+            int d = distance(key, keys[node], limit);
+            if (d > limit) {
+                continue; //Né il nodo né i suoi figli possono essere abbastanza vicini
+            }
+            if (d < bestDistance || (d == bestDistance && node < best)) {
+                best = node;
+                bestDistance = d;
+            }
+            //I figli a distanza d dal nodo sono i più promettenti: vengono messi sulla pila per ultimi
+            int first = childStart[node];
+            int last = childStart[node + 1] - 1;
+            while (first <= last) {
+                int e;
+                if (Math.abs(childDistance[first] - d) >= Math.abs(childDistance[last] - d)) {
+                    e = first++;
+                } else {
+                    e = last--;
+                }
+                if (Math.abs(childDistance[e] - d) <= bestDistance) {
+                    stack[top++] = childNode[e];
+                }
+            }
+        }
+        return values[best];
+    }
+
+    /**
+     * Distanza di Levenshtein con limite: se la distanza supera il limite il
+     * calcolo si interrompe e ritorna limit + 1. Vengono calcolate solo le
+     * celle della matrice che distano al più limit dalla diagonale, le altre
+     * non possono far parte di un percorso di costo minore o uguale al limite
+     */
+    private static int distance(String a, String b, int limit) {
+        int la = a.length();
+        int lb = b.length();
+        if (Math.abs(la - lb) > limit) {
+            return limit + 1;
+        }
+        limit = Math.min(limit, Math.max(la, lb));
+        int inf = limit + 1;
+        int[] costs = new int[lb + 1];
+        for (int j = 0; j <= lb; j++) {
+            costs[j] = j <= limit ? j : inf;
+        }
+        for (int i = 1; i <= la; i++) {
+            int lo = Math.max(1, i - limit);
+            int hi = Math.min(lb, i + limit);
+            int nw = costs[lo - 1];
+            int left = inf;
+            if (lo == 1) {
+                costs[0] = i <= limit ? i : inf;
+                left = costs[0];
+            }
+            int rowMin = left;
+            char ca = a.charAt(i - 1);
+            for (int j = lo; j <= hi; j++) {
+                int up = costs[j];
+                int cj = Math.min(Math.min(up, left) + 1, ca == b.charAt(j - 1) ? nw : nw + 1);
+                if (cj > inf) {
+                    cj = inf;
+                }
+                nw = up;
+                costs[j] = cj;
+                left = cj;
+                if (cj < rowMin) {
+                    rowMin = cj;
+                }
+            }
+            if (rowMin > limit) {
+                return inf;
+            }
+        }
+        return costs[lb];
+    }
+}
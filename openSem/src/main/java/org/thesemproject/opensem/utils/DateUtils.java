@@ -272,7 +272,9 @@ public class DateUtils {
         String str = parseString(stringDate);
         if (str != null) {
             try {
-                return DATEFORMAT.parse(str);
+                synchronized (DATEFORMAT) { //SimpleDateFormat non è thread safe
+                    return DATEFORMAT.parse(str);
+                }
             } catch (Exception ex) {
                 LogGui.info("Eccezione nel parsing della data " + stringDate + " " + ex.getMessage());
                 return null;
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.thesemproject.opensem.gui.LogGui;
+
+/**
+ * Processo a stadi: una sorgente produce gli elementi e una sequenza di stadi
+ * li lavora, ognuno con il suo numero di thread.
+ *
+ * Gli stadi sono collegati da code limitate: chi scrive su una coda piena
+ * aspetta che si liberi un posto (nessun elemento viene perso) e chi legge da
+ * una coda vuota aspetta un elemento senza consumare processore. Quando uno
+ * stadio ha finito (tutti i suoi thread hanno terminato) mette nella coda
+ * dello stadio successivo un segnale di fine per ogni thread di quello stadio.
+ *
+ * Per ogni stadio vengono raccolte le statistiche (elementi lavorati,
+ * throughput, tempo di lavoro e tempo di attesa sulla coda successiva) che
+ * vengono scritte nel log alla fine del processo.
+ *
+ * Gli errori su un blocco di elementi vengono scritti nel log e il processo
+ * continua con il blocco successivo.
+ *
+ * @param <T> tipo degli elementi
+ * @since 1.9.3
+ */
+public class Pipeline<T> {
+
+    /**
+     * Segnale di fine nelle code
+     */
+    private static final Object END = new Object();
+
+    private final int queueSize;
+    private String sourceName;
+    private Source<T> source;
+    private final List<String> stageNames;
+    private final List<Integer> stageThreads;
+    private final List<Integer> stageBatchSizes;
+    private final List<Stage<T>> stages;
+    private final List<StageStatistics> statistics;
+
+    /**
+     * Sorgente degli elementi
+     *
+     * @param <T> tipo degli elementi
+     */
+    public interface Source<T> {
+
+        /**
+         * Legge gli elementi passandoli uno alla volta all'output. L'output
+         * blocca la lettura se la coda del primo stadio è piena
+         *
+         * @param output output della sorgente
+         * @throws Exception eccezione nella lettura
+         */
+        void read(Consumer<T> output) throws Exception;
+    }
+
+    /**
+     * Stadio di lavorazione
+     *
+     * @param <T> tipo degli elementi
+     */
+    public interface Stage<T> {
+
+        /**
+         * Lavora un blocco di elementi passando i risultati all'output
+         * (l'output dell'ultimo stadio scarta gli elementi)
+         *
+         * @param items elementi da lavorare (la lista viene riusata dopo il
+         * ritorno)
+         * @param output output dello stadio
+         * @throws Exception eccezione nella lavorazione del blocco
+         */
+        void process(List<T> items, Consumer<T> output) throws Exception;
+    }
+
+    /**
+     * Crea il processo
+     *
+     * @param queueSize dimensione delle code tra gli stadi
+     */
+    public Pipeline(int queueSize) {
+        this.queueSize = queueSize;
+        this.stageNames = new ArrayList<>();
+        this.stageThreads = new ArrayList<>();
+        this.stageBatchSizes = new ArrayList<>();
+        this.stages = new ArrayList<>();
+        this.statistics = new ArrayList<>();
+    }
+
+    /**
+     * Imposta la sorgente (eseguita da un thread)
+     *
+     * @param name nome della sorgente nelle statistiche
+     * @param source sorgente
+     */
+    public void setSource(String name, Source<T> source) {
+        this.sourceName = name;
+        this.source = source;
+    }
+
+    /**
+     * Aggiunge uno stadio in fondo al processo
+     *
+     * @param name nome dello stadio nelle statistiche
+     * @param threads numero di thread dello stadio
+     * @param batchSize numero massimo di elementi passati insieme allo stadio
+     * (vengono raggruppati solo elementi già in coda)
+     * @param stage stadio
+     */
+    public void addStage(String name, int threads, int batchSize, Stage<T> stage) {
+        stageNames.add(name);
+        stageThreads.add(Math.max(1, threads));
+        stageBatchSizes.add(Math.max(1, batchSize));
+        stages.add(stage);
+    }
+
+    /**
+     * Esegue il processo e aspetta che tutti gli stadi abbiano finito
+     */
+    public void run() {
+        final int count = stages.size();
+        final List<BlockingQueue<Object>> queues = new ArrayList<>(count);
+        int threads = 1;
+        for (int i = 0; i < count; i++) {
+            queues.add(new ArrayBlockingQueue<>(queueSize));
+            threads += stageThreads.get(i);
+        }
+        statistics.clear();
+        final long start = System.currentTimeMillis();
+        final StageStatistics sourceStatistics = new StageStatistics(sourceName, 1, start);
+        statistics.add(sourceStatistics);
+        final ParallelProcessor executor = new ParallelProcessor(threads, 6000); //100 ore
+        executor.add(() -> {
+            Consumer<T> output = count == 0 ? (item) -> {
+                sourceStatistics.add(1, 0);
+            } : (item) -> {
+                put(queues.get(0), item, sourceStatistics);
+                sourceStatistics.add(1, 0);
+            };
+            long t = System.nanoTime();
+            try {
+                source.read(output);
+            } catch (Exception e) {
+                LogGui.printException(e);
+            } finally {
+                sourceStatistics.add(0, System.nanoTime() - t);
+                sourceStatistics.end();
+                if (count > 0) {
+                    end(queues.get(0), stageThreads.get(0));
+                }
+            }
+        });
+        for (int i = 0; i < count; i++) {
+            final Stage<T> stage = stages.get(i);
+            final BlockingQueue<Object> input = queues.get(i);
+            final BlockingQueue<Object> next = i + 1 < count ? queues.get(i + 1) : null;
+            final int nextThreads = i + 1 < count ? stageThreads.get(i + 1) : 0;
+            final int batchSize = stageBatchSizes.get(i);
+            final StageStatistics stageStatistics = new StageStatistics(stageNames.get(i), stageThreads.get(i), start);
+            statistics.add(stageStatistics);
+            final AtomicInteger running = new AtomicInteger(stageThreads.get(i));
+            final Consumer<T> output = next == null ? (item) -> {
+            } : (item) -> {
+                put(next, item, stageStatistics);
+            };
+            for (int j = 0; j < stageThreads.get(i); j++) {
+                executor.add(() -> {
+                    try {
+                        process(stage, input, output, batchSize, stageStatistics);
+                    } finally {
+                        if (running.decrementAndGet() == 0) {
+                            stageStatistics.end();
+                            if (next != null) {
+                                end(next, nextThreads);
+                            }
+                        }
+                    }
+                });
+            }
+        }
+        executor.waitTermination();
+        statistics.stream().forEach((s) -> {
+            LogGui.info(s.toString());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(Stage<T> stage, BlockingQueue<Object> input, Consumer<T> output, int batchSize, StageStatistics stageStatistics) {
+        List<T> batch = new ArrayList<>(batchSize);
+        boolean end = false;
+        try {
+            while (!end) {
+                Object item = input.take(); //Aspetta il prossimo elemento
+                if (item == END) {
+                    break;
+                }
+                batch.clear();
+                batch.add((T) item);
+                while (batch.size() < batchSize) {
+                    item = input.poll(); //Aggiunge al blocco solo quello che è già in coda
+                    if (item == null) {
+                        break;
+                    }
+                    if (item == END) {
+                        end = true;
+                        break;
+                    }
+                    batch.add((T) item);
+                }
+                long t = System.nanoTime();
+                try {
+                    stage.process(batch, output);
+                } catch (Exception e) {
+                    LogGui.printException(e);
+                }
+                stageStatistics.add(batch.size(), System.nanoTime() - t);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void put(BlockingQueue<Object> queue, Object item, StageStatistics stageStatistics) {
+        long t = System.nanoTime();
+        try {
+            queue.put(item); //Aspetta se la coda è piena
+            stageStatistics.addWait(System.nanoTime() - t);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Pipeline interrupted");
+        }
+    }
+
+    private static void end(BlockingQueue<Object> queue, int threads) {
+        try {
+            for (int i = 0; i < threads; i++) {
+                queue.put(END); //Un segnale di fine per ogni thread dello stadio
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ritorna le statistiche dell'ultima esecuzione: la sorgente e poi gli
+     * stadi nell'ordine del processo
+     *
+     * @return statistiche degli stadi
+     */
+    public List<StageStatistics> getStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+    /**
+     * Statistiche di uno stadio
+     */
+    public static class StageStatistics {
+
+        private final String name;
+        private final int threads;
+        private final long start;
+        private final AtomicLong items;
+        private final AtomicLong busyNanos;
+        private final AtomicLong waitNanos;
+        private volatile long end;
+
+        private StageStatistics(String name, int threads, long start) {
+            this.name = name;
+            this.threads = threads;
+            this.start = start;
+            this.items = new AtomicLong();
+            this.busyNanos = new AtomicLong();
+            this.waitNanos = new AtomicLong();
+        }
+
+        private void add(long count, long nanos) {
+            items.addAndGet(count);
+            busyNanos.addAndGet(nanos);
+        }
+
+        private void addWait(long nanos) {
+            waitNanos.addAndGet(nanos);
+        }
+
+        private void end() {
+            end = System.currentTimeMillis();
+        }
+
+        /**
+         * Ritorna il nome dello stadio
+         *
+         * @return nome
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Ritorna il numero di thread dello stadio
+         *
+         * @return numero di thread
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Ritorna il numero di elementi lavorati (prodotti per la sorgente)
+         *
+         * @return numero di elementi
+         */
+        public long getItems() {
+            return items.get();
+        }
+
+        /**
+         * Ritorna il tempo di lavoro sommato su tutti i thread dello stadio,
+         * escluse le attese sulle code
+         *
+         * @return tempo di lavoro in millisecondi
+         */
+        public long getBusyMillis() {
+            return Math.max(0, busyNanos.get() - waitNanos.get()) / 1000000;
+        }
+
+        /**
+         * Ritorna il tempo passato ad aspettare che si liberi un posto nella
+         * coda dello stadio successivo, sommato su tutti i thread dello stadio.
+         * Un tempo alto indica che il collo di bottiglia è più avanti
+         *
+         * @return tempo di attesa in millisecondi
+         */
+        public long getBlockedMillis() {
+            return waitNanos.get() / 1000000;
+        }
+
+        /**
+         * Ritorna il tempo dall'inizio del processo alla fine dello stadio (o
+         * ad ora se lo stadio non ha finito)
+         *
+         * @return tempo in millisecondi
+         */
+        public long getElapsedMillis() {
+            long e = end;
+            return (e == 0 ? System.currentTimeMillis() : e) - start;
+        }
+
+        /**
+         * Ritorna il numero di elementi lavorati al secondo
+         *
+         * @return elementi al secondo
+         */
+        public double getItemsPerSecond() {
+            return getItems() * 1000.0 / Math.max(1, getElapsedMillis());
+        }
+
+        @Override
+        public String toString() {
+            return "Stage " + name + " (" + threads + " threads): " + getItems() + " items in " + getElapsedMillis() + " ms, " + String.format("%.1f", getItemsPerSecond()) + " items/s, busy " + getBusyMillis() + " ms, blocked " + getBlockedMillis() + " ms";
+        }
+    }
+}
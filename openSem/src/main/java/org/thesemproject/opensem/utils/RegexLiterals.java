@@ -0,0 +1,399 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Estrae da una regex i letterali necessari: un insieme di stringhe tale che
+ * ogni testo su cui la regex trova un'occorrenza contiene almeno una di
+ * queste stringhe. Serve a scartare con una ricerca multi-stringa (vedi
+ * AhoCorasick) i pattern che sicuramente non possono trovare nulla, senza
+ * eseguirli.
+ *
+ * L'analisi è conservativa: se la regex contiene costrutti che non sa
+ * interpretare (flag, backreference, \Q..\E, ...) o se non esiste un
+ * letterale obbligatorio il risultato è null e il pattern va sempre eseguito.
+ *
+ * @since 1.9.3
+ */
+public class RegexLiterals {
+
+    private static final int NO_QUANTIFIER = -1;
+
+    private final String regex;
+    private int pos;
+    private boolean unsupported;
+
+    private RegexLiterals(String regex) {
+        this.regex = regex;
+        this.pos = 0;
+        this.unsupported = false;
+    }
+
+    /**
+     * Ritorna i letterali necessari di un pattern
+     *
+     * @param pattern pattern
+     * @return insieme dei letterali necessari o null se non determinabile
+     */
+    public static Set<String> getRequiredLiterals(Pattern pattern) {
+        if (pattern == null || pattern.flags() != 0) {
+            return null;
+        }
+        return getRequiredLiterals(pattern.pattern());
+    }
+
+    /**
+     * Ritorna i letterali necessari di una regex
+     *
+     * @param regex regex
+     * @return insieme dei letterali necessari o null se non determinabile
+     */
+    public static Set<String> getRequiredLiterals(String regex) {
+        RegexLiterals parser = new RegexLiterals(regex);
+        Set<String> ret = parser.parseAlternation();
+        if (parser.unsupported || parser.pos != regex.length()) {
+            return null;
+        }
+        return ret;
+    }
+
+    private Set<String> parseAlternation() {
+        List<Set<String>> branches = new ArrayList<>();
+        branches.add(parseSequence());
+        while (!unsupported && pos < regex.length() && regex.charAt(pos) == '|') {
+            pos++;
+            branches.add(parseSequence());
+        }
+        Set<String> ret = new LinkedHashSet<>();
+        for (Set<String> branch : branches) {
+            if (branch == null) {
+                return null;
+            }
+            ret.addAll(branch);
+        }
+        return ret;
+    }
+
+    private Set<String> parseSequence() {
+        List<Set<String>> factors = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        while (!unsupported && pos < regex.length()) {
+            char c = regex.charAt(pos);
+            if (c == '|' || c == ')') {
+                break;
+            }
+            Atom atom = parseAtom();
+            if (unsupported) {
+                return null;
+            }
+            int min = parseQuantifier();
+            if (unsupported) {
+                return null;
+            }
+            if (atom.literal != null && min != 0) {
+                run.append(atom.literal);
+                if (min != NO_QUANTIFIER) {
+                    flush(run, factors); //Le ripetizioni interrompono la sequenza
+                }
+            } else {
+                flush(run, factors);
+                if (atom.required != null && min != 0) {
+                    factors.add(atom.required);
+                }
+            }
+        }
+        flush(run, factors);
+        Set<String> best = null;
+        for (Set<String> factor : factors) {
+            if (best == null || isBetter(factor, best)) {
+                best = factor;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isBetter(Set<String> a, Set<String> b) {
+        int minA = minLength(a);
+        int minB = minLength(b);
+        if (minA != minB) {
+            return minA > minB;
+        }
+        return a.size() < b.size();
+    }
+
+    private static int minLength(Set<String> set) {
+        int min = Integer.MAX_VALUE;
+        for (String s : set) {
+            min = Math.min(min, s.length());
+        }
+        return min;
+    }
+
+    private static void flush(StringBuilder run, List<Set<String>> factors) {
+        if (run.length() > 0) {
+            Set<String> factor = new LinkedHashSet<>();
+            factor.add(run.toString());
+            factors.add(factor);
+            run.setLength(0);
+        }
+    }
+
+    private int parseQuantifier() {
+        if (pos >= regex.length()) {
+            return NO_QUANTIFIER;
+        }
+        int min;
+        char c = regex.charAt(pos);
+        switch (c) {
+            case '?':
+            case '*':
+                min = 0;
+                pos++;
+                break;
+            case '+':
+                min = 1;
+                pos++;
+                break;
+            case '{':
+                int close = regex.indexOf('}', pos);
+                if (close == -1) {
+                    unsupported = true;
+                    return 0;
+                }
+                String bounds = regex.substring(pos + 1, close);
+                int comma = bounds.indexOf(',');
+                try {
+                    min = Integer.parseInt((comma == -1 ? bounds : bounds.substring(0, comma)).trim());
+                } catch (NumberFormatException e) {
+                    unsupported = true;
+                    return 0;
+                }
+                pos = close + 1;
+                break;
+            default:
+                return NO_QUANTIFIER;
+        }
+        if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+            pos++; //Quantificatore lazy o possessivo
+        }
+        return min;
+    }
+
+    private Atom parseAtom() {
+        char c = regex.charAt(pos);
+        switch (c) {
+            case '\\':
+                return parseEscape();
+            case '[':
+                skipClass();
+                return Atom.ANY;
+            case '(':
+                return parseGroup();
+            case '.':
+                pos++;
+                return Atom.ANY;
+            case '^':
+            case '$':
+                pos++;
+                return Atom.EMPTY;
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                unsupported = true;
+                return Atom.ANY;
+            default:
+                pos++;
+                if (Character.isHighSurrogate(c) && pos < regex.length() && Character.isLowSurrogate(regex.charAt(pos))) {
+                    pos++; //Il quantificatore si applica a tutto il code point
+                    return new Atom(regex.substring(pos - 2, pos), null);
+                }
+                return new Atom(String.valueOf(c), null);
+        }
+    }
+
+    private Atom parseEscape() {
+        if (pos + 1 >= regex.length()) {
+            unsupported = true;
+            return Atom.ANY;
+        }
+        char c = regex.charAt(pos + 1);
+        pos += 2;
+        if (!Character.isLetterOrDigit(c)) {
+            return new Atom(String.valueOf(c), null);
+        }
+        switch (c) {
+            case 't':
+                return new Atom("\t", null);
+            case 'n':
+                return new Atom("\n", null);
+            case 'r':
+                return new Atom("\r", null);
+            case 'f':
+                return new Atom("\f", null);
+            case 'a':
+                return new Atom("\u0007", null);
+            case 'e':
+                return new Atom("\u001B", null);
+            case 'b':
+            case 'B':
+            case 'A':
+            case 'z':
+            case 'Z':
+            case 'G':
+                return Atom.EMPTY;
+            case 'd':
+            case 'D':
+            case 's':
+            case 'S':
+            case 'w':
+            case 'W':
+            case 'h':
+            case 'H':
+            case 'v':
+            case 'V':
+            case 'R':
+            case 'X':
+                return Atom.ANY;
+            case 'p':
+            case 'P':
+            case 'x':
+                if (pos < regex.length() && regex.charAt(pos) == '{') {
+                    int close = regex.indexOf('}', pos);
+                    if (close == -1) {
+                        unsupported = true;
+                    } else {
+                        pos = close + 1;
+                    }
+                } else {
+                    pos += (c == 'x') ? 2 : 1;
+                }
+                return Atom.ANY;
+            case 'u':
+                pos += 4;
+                return Atom.ANY;
+            case 'c':
+                pos += 1;
+                return Atom.ANY;
+            case '0':
+                int digits = 0;
+                while (digits < 3 && pos < regex.length() && regex.charAt(pos) >= '0' && regex.charAt(pos) <= '7') {
+                    pos++;
+                    digits++;
+                }
+                return Atom.ANY;
+            default:
+                //Backreference, \Q..\E, \k<nome> e altri costrutti
+                unsupported = true;
+                return Atom.ANY;
+        }
+    }
+
+    private void skipClass() {
+        int depth = 0;
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos);
+            if (c == '\\') {
+                if (pos + 1 < regex.length() && regex.charAt(pos + 1) == 'Q') {
+                    unsupported = true;
+                    return;
+                }
+                pos += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                pos++;
+                if (pos < regex.length() && regex.charAt(pos) == '^') {
+                    pos++;
+                }
+                if (pos < regex.length() && regex.charAt(pos) == ']') {
+                    pos++; //] come primo carattere della classe
+                }
+                continue;
+            }
+            if (c == ']') {
+                depth--;
+                pos++;
+                if (depth == 0) {
+                    return;
+                }
+                continue;
+            }
+            pos++;
+        }
+        unsupported = true;
+    }
+
+    private Atom parseGroup() {
+        pos++;
+        boolean lookaround = false;
+        if (regex.startsWith("?", pos)) {
+            if (regex.startsWith("?:", pos) || regex.startsWith("?>", pos)) {
+                pos += 2;
+            } else if (regex.startsWith("?=", pos) || regex.startsWith("?!", pos)) {
+                pos += 2;
+                lookaround = true;
+            } else if (regex.startsWith("?<=", pos) || regex.startsWith("?<!", pos)) {
+                pos += 3;
+                lookaround = true;
+            } else if (regex.startsWith("?<", pos) && pos + 2 < regex.length() && Character.isLetter(regex.charAt(pos + 2))) {
+                int close = regex.indexOf('>', pos);
+                if (close == -1) {
+                    unsupported = true;
+                    return Atom.ANY;
+                }
+                pos = close + 1;
+            } else {
+                unsupported = true; //Flag
+                return Atom.ANY;
+            }
+        }
+        Set<String> inner = parseAlternation();
+        if (unsupported) {
+            return Atom.ANY;
+        }
+        if (pos >= regex.length() || regex.charAt(pos) != ')') {
+            unsupported = true;
+            return Atom.ANY;
+        }
+        pos++;
+        if (lookaround) {
+            return Atom.EMPTY;
+        }
+        return new Atom(null, inner);
+    }
+
+    private static class Atom {
+
+        private static final Atom ANY = new Atom(null, null);
+        private static final Atom EMPTY = new Atom(null, null);
+
+        private final String literal;
+        private final Set<String> required;
+
+        private Atom(String literal, Set<String> required) {
+            this.literal = literal;
+            this.required = required;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.utils;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Rimette in ordine elementi lavorati in parallelo.
+ *
+ * Chi produce gli elementi chiede un numero di sequenza con acquire prima di
+ * mandarli in lavorazione; chi li riceve lavorati li passa ad add con il loro
+ * numero e il buffer li passa all'output nell'ordine dei numeri di sequenza.
+ *
+ * La memoria è limitata: acquire blocca finché ci sono window elementi non
+ * ancora passati all'output, quindi il buffer non contiene mai più di window
+ * elementi. Ogni numero ottenuto con acquire deve arrivare ad add, altrimenti
+ * l'output si ferma.
+ *
+ * @param <T> tipo degli elementi
+ * @since 1.9.3
+ */
+public class ReorderBuffer<T> {
+
+    private final Semaphore window;
+    private final Object[] items;
+    private final Consumer<T> output;
+    private final AtomicLong issued;
+    private long next;
+
+    /**
+     * Crea il buffer
+     *
+     * @param windowSize numero massimo di elementi in lavorazione
+     * @param output output degli elementi in ordine
+     */
+    public ReorderBuffer(int windowSize, Consumer<T> output) {
+        this.window = new Semaphore(windowSize);
+        this.items = new Object[windowSize];
+        this.output = output;
+        this.issued = new AtomicLong();
+        this.next = 0;
+    }
+
+    /**
+     * Ritorna il numero di sequenza del prossimo elemento, aspettando se ci
+     * sono già window elementi in lavorazione
+     *
+     * @return numero di sequenza
+     * @throws InterruptedException se l'attesa viene interrotta
+     */
+    public long acquire() throws InterruptedException {
+        window.acquire();
+        return issued.getAndIncrement();
+    }
+
+    /**
+     * Aggiunge un elemento lavorato e passa all'output tutti gli elementi che
+     * sono ora in ordine
+     *
+     * @param sequence numero di sequenza ottenuto con acquire
+     * @param item elemento (non null)
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void add(long sequence, T item) {
+        items[(int) (sequence % items.length)] = item;
+        while (true) {
+            int slot = (int) (next % items.length);
+            T ready = (T) items[slot];
+            if (ready == null) {
+                break;
+            }
+            items[slot] = null;
+            next++;
+            window.release();
+            output.accept(ready);
+        }
+    }
+
+    /**
+     * Ritorna il numero di elementi già passati all'output
+     *
+     * @return numero di elementi
+     */
+    public synchronized long getWritten() {
+        return next;
+    }
+}
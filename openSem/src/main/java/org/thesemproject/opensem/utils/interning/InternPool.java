@@ -15,7 +15,9 @@
  */
 package org.thesemproject.opensem.utils.interning;
 
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Classe per gestire la versione internizzata di un oggetto
@@ -24,29 +26,145 @@ package org.thesemproject.opensem.utils.interning;
  * Dettaglio dell'esempio implementato si trovano all'indirizzo
  * <a href="https://javax0.wordpress.com/2014/03/11/object-interning/">https://javax0.wordpress.com/2014/03/11/object-interning/</a>
  *
- * @param <T> class type
+ * Dalla versione 1.9.3 il pool è diviso in stripe indipendenti (scelte in
+ * base all'hash dell'oggetto), ognuna con il proprio lock: thread che
+ * internizzano oggetti diversi non si contendono più un unico lock globale.
+ * La semantica weak è la stessa del pool originale.
+ *
+ * Il pool può contenere oggetti di tipi diversi: il tipo è quello del metodo
+ * {@link #intern(Object)}.
  */
 
-public class InternPool<T> {
+public class InternPool {
+
+    /**
+     * Stripe del pool. Ogni stripe è un pool weak protetto dal proprio lock
+     */
+    private final List<WeakPool<Object>> stripes;
+    private final int mask;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
     /**
-     * Pool di valori internizzati (weak perche' ogni tot dimentica)
+     * Crea un pool con un numero di stripe proporzionale ai processori
      */
-    private final WeakPool<T> pool = new WeakPool<T>();
+    public InternPool() {
+        this(Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Crea un pool con un numero di stripe dato (arrotondato alla potenza di
+     * 2 successiva). Con una sola stripe il comportamento è quello del pool
+     * sincronizzato originale
+     *
+     * @since 1.9.3
+     * @param concurrency numero di stripe
+     */
+    public InternPool(int concurrency) {
+        int size = 1;
+        while (size < concurrency) {
+            size <<= 1;
+        }
+        this.stripes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stripes.add(new WeakPool<>());
+        }
+        this.mask = size - 1;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
 
     /**
      * Ritorna la versione internizzata di un oggetto ed eventualmente lo internizza
-     * E' sincronizzato per gestire il multithreading
+     * E' thread safe: viene sincronizzata solo la stripe dell'oggetto
+     *
+     * La versione internizzata è uguale (equals) all'oggetto passato, quindi
+     * è dello stesso tipo
      *
+     * @param <T> tipo dell'oggetto
      * @param object oggetto da internizzare
      * @return versione internizzata dell'oggetto
      */
-    public synchronized T intern(T object) {
+    @SuppressWarnings("unchecked")
+    public <T> T intern(T object) {
         if (object == null) return null;
-        T res = pool.get(object);
+        WeakPool<Object> stripe = stripes.get(spread(object.hashCode()) & mask);
+        Object res;
+        synchronized (stripe) {
+            res = stripe.get(object);
+            if (res == null) {
+                stripe.put(object);
+            }
+        }
         if (res == null) {
-            pool.put(object);
-            res = object;
+            misses.increment();
+            return object;
+        }
+        hits.increment();
+        return (T) res;
+    }
+
+    /**
+     * Ritorna il numero di oggetti trovati già internizzati
+     *
+     * @since 1.9.3
+     * @return numero di hit
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Ritorna il numero di oggetti internizzati per la prima volta
+     *
+     * @since 1.9.3
+     * @return numero di miss
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Azzera i contatori di hit e miss
+     *
+     * @since 1.9.3
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Ritorna il numero di oggetti attualmente nel pool
+     *
+     * @since 1.9.3
+     * @return dimensione del pool
+     */
+    public int size() {
+        int size = 0;
+        for (WeakPool<Object> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
         }
-        return res;
+        return size;
+    }
+
+    /**
+     * Ritorna il numero di stripe del pool
+     *
+     * @since 1.9.3
+     * @return numero di stripe
+     */
+    public int getStripes() {
+        return stripes.size();
+    }
+
+    /**
+     * Distribuisce i bit alti dell'hash su quelli bassi (come HashMap) per
+     * usare tutte le stripe anche con hash poco dispersi
+     */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
     }
 }
\ No newline at end of file
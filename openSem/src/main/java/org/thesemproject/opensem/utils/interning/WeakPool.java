@@ -58,4 +58,13 @@ class WeakPool<T> {
     public void put(T object) {
         pool.put(object, new WeakReference<T>(object));
     }
+
+    /**
+     * Ritorna il numero di oggetti nel pool
+     *
+     * @return dimensione del pool
+     */
+    public int size() {
+        return pool.size();
+    }
 }
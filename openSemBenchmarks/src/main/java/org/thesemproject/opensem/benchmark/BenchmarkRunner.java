@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.thesemproject.opensem.classification.MulticlassEngine;
+
+/**
+ * Esegue i benchmark salvando i risultati in JSON.
+ *
+ * Accetta le stesse opzioni della riga di comando di JMH (ad esempio un
+ * filtro sui benchmark o -p depth=2). Se non vengono indicati formato e file
+ * dei risultati, i risultati sono scritti in formato JSON nel file
+ * openSem-benchmark-[versione].json così da poter confrontare le release.
+ * La versione è l'Implementation-Version del manifest (scritta dalla build
+ * in benchmarks.jar): se manca il file dei risultati va indicato con -rff.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Esegue i benchmark
+     *
+     * @param args opzioni JMH
+     * @throws Exception Eccezione
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmd);
+        if (!cmd.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            String version = MulticlassEngine.class.getPackage().getImplementationVersion();
+            if (version == null) {
+                throw new IllegalStateException("Implementation-Version non presente nel manifest: eseguire benchmarks.jar o indicare il file dei risultati con -rff");
+            }
+            builder.result("openSem-benchmark-" + version + ".json");
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thesemproject.opensem.classification.ClassificationPath;
+import org.thesemproject.opensem.classification.MulticlassEngine;
+
+/**
+ * Benchmark di MulticlassEngine.bayesClassify e knnClassify su strutture
+ * sintetiche di profondità e numero di categorie variabili.
+ *
+ * La struttura viene generata e istruita una sola volta per combinazione di
+ * parametri in una cartella temporanea.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassificationBenchmark {
+
+    private static final String LANGUAGE = "it";
+
+    @Param({"1", "2", "3"})
+    private int depth;
+
+    @Param({"4", "8"})
+    private int categories;
+
+    @Param({"20"})
+    private int docsPerLeaf;
+
+    @Param({"false", "true"})
+    private boolean vectorKnn;
+
+    private File structurePath;
+    private MulticlassEngine me;
+    private String[] texts;
+    private int next;
+
+    /**
+     * Genera la struttura, la istruisce e prepara i testi da classificare
+     *
+     * @throws Exception Eccezione
+     */
+    @Setup
+    public void setup() throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(42);
+        structurePath = SyntheticCorpus.createTempFolder("sem-classification");
+        List<String[]> leaves = corpus.buildClassificationStructure(structurePath, LANGUAGE, depth, categories, docsPerLeaf);
+        me = new MulticlassEngine();
+        me.setVectorKnn(vectorKnn);
+        if (!me.init(structurePath.getAbsolutePath(), 3)) {
+            throw new IllegalStateException("Impossibile istruire la struttura " + structurePath);
+        }
+        texts = new String[64];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = corpus.text(leaves.get(i % leaves.size()), 40);
+        }
+    }
+
+    /**
+     * Chiude gli indici e cancella la struttura
+     *
+     * @throws Exception Eccezione
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        me.closeAllReaders();
+        SyntheticCorpus.delete(structurePath);
+    }
+
+    /**
+     * Classificazione bayesiana
+     *
+     * @return percorsi di classificazione
+     */
+    @Benchmark
+    public List<ClassificationPath> bayesClassify() {
+        return me.bayesClassify(texts[next++ & 63], LANGUAGE);
+    }
+
+    /**
+     * Classificazione KNN
+     *
+     * @return percorso di classificazione
+     */
+    @Benchmark
+    public ClassificationPath knnClassify() {
+        return me.knnClassify(texts[next++ & 63], LANGUAGE);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thesemproject.opensem.utils.DateUtils;
+
+/**
+ * Benchmark di DateUtils.parseString su date sintetiche nei vari formati
+ * riconosciuti (numerici, con il mese per esteso, mese/anno)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateUtilsBenchmark {
+
+    private String[] dates;
+    private int next;
+
+    /**
+     * Prepara le date
+     */
+    @Setup
+    public void setup() {
+        SyntheticCorpus corpus = new SyntheticCorpus(42);
+        dates = new String[1024];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = corpus.date();
+        }
+    }
+
+    /**
+     * Interpreta una data
+     *
+     * @return data formattata
+     */
+    @Benchmark
+    public String parseString() {
+        return DateUtils.parseString(dates[next++ & 1023]);
+    }
+}
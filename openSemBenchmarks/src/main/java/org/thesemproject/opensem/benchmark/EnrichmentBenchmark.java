@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.benchmark;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thesemproject.opensem.segmentation.CaptureConfiguration;
+import org.thesemproject.opensem.segmentation.DataProviderConfiguration;
+import org.thesemproject.opensem.segmentation.DataProviderRelationship;
+import org.thesemproject.opensem.segmentation.SegmentationResults;
+
+/**
+ * Benchmark di DataProviderRelationship.enrich: un data provider CSV
+ * sintetico (codice, città, provincia) viene indicizzato e ogni invocazione
+ * arricchisce un risultato di segmentazione cercando la città a partire dal
+ * codice catturato.
+ *
+ * Il risultato da arricchire viene ricreato a ogni invocazione: enrich
+ * aggiunge le catture al risultato, quindi riusarlo misurerebbe un input
+ * diverso da quello di una segmentazione reale
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnrichmentBenchmark {
+
+    @Param({"1000", "100000"})
+    private int records;
+
+    private File storage;
+    private DataProviderConfiguration dpc;
+    private DataProviderRelationship relationship;
+    private Map<String, CaptureConfiguration> captures;
+    private CaptureConfiguration code;
+    private String[] codes;
+    private int next;
+
+    /**
+     * Genera e indicizza il data provider e prepara i codici da cercare
+     *
+     * @throws Exception Eccezione
+     */
+    @Setup
+    public void setup() throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(42);
+        storage = SyntheticCorpus.createTempFolder("sem-enrichment");
+        String[] cities = corpus.vocabulary(records);
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < records; i++) {
+            csv.append("C").append(i).append(';').append(cities[i]).append(';').append(cities[i].substring(0, 2).toUpperCase()).append('\n');
+        }
+        File csvFile = new File(storage, "cities.csv");
+        Files.write(csvFile.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+        Map<String, String> fields = new HashMap<>();
+        Map<String, String> positions = new HashMap<>();
+        String[] names = {"Codice", "Citta", "Provincia"};
+        for (int i = 0; i < names.length; i++) {
+            fields.put(names[i], "text");
+            positions.put(names[i], String.valueOf(i + 1));
+        }
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(DataProviderConfiguration.FILE_NAME, csvFile.getAbsolutePath());
+        configuration.put(DataProviderConfiguration.CSV_DELIMITER, ";");
+        dpc = new DataProviderConfiguration("cities", DataProviderConfiguration.SOURCE_TYPE[0], fields, positions, new HashMap<>(), configuration, storage.getAbsolutePath());
+        dpc.burnToStorage();
+        code = new CaptureConfiguration("Codice", "text", "", false, false, false, false);
+        CaptureConfiguration city = new CaptureConfiguration("Citta", "text", "", false, false, false, false);
+        captures = new HashMap<>();
+        captures.put(code.getName(), code);
+        captures.put(city.getName(), city);
+        relationship = new DataProviderRelationship("Segment", dpc, true);
+        relationship.setMapping("Codice", "Codice", true, false);
+        relationship.setMapping("Citta", "Citta", false, true);
+        codes = new String[1024];
+        Random random = new Random(42);
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = "C" + random.nextInt(records);
+        }
+    }
+
+    /**
+     * Chiude l'indice e cancella i dati
+     *
+     * @throws Exception Eccezione
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        dpc.closeIndex();
+        SyntheticCorpus.delete(storage);
+    }
+
+    /**
+     * Arricchisce un risultato di segmentazione
+     *
+     * @return risultato arricchito
+     */
+    @Benchmark
+    public SegmentationResults enrich() {
+        SegmentationResults sr = new SegmentationResults();
+        sr.addCaptureResult(code, codes[next++ & 1023]);
+        relationship.enrich(sr, captures);
+        return sr;
+    }
+}
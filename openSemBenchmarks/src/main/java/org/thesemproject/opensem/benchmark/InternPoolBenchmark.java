@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thesemproject.opensem.utils.interning.InternPool;
+
+/**
+ * Benchmark di contesa dell'InternPool.
+ *
+ * Confronta il pool con una sola stripe (equivalente al pool sincronizzato
+ * originale) con il pool a stripe, facendo internizzare a più thread copie
+ * delle stesse stringhe come avviene nella lettura dell'indice e nel
+ * riconoscimento della lingua.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class InternPoolBenchmark {
+
+    @Param({"1", "64"})
+    private int stripes;
+
+    @Param({"5000"})
+    private int keys;
+
+    private InternPool pool;
+
+    /**
+     * Prepara il pool condiviso dai thread
+     */
+    @Setup
+    public void setup() {
+        pool = new InternPool(stripes);
+    }
+
+    /**
+     * Copie distinte delle stesse chiavi, una serie per thread
+     */
+    @State(Scope.Thread)
+    public static class Values {
+
+        private String[] values;
+        private int next;
+
+        /**
+         * Prepara le chiavi del thread
+         *
+         * @param benchmark stato del benchmark
+         */
+        @Setup
+        public void setup(InternPoolBenchmark benchmark) {
+            Random random = new Random(Thread.currentThread().getId());
+            values = new String[4096];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new String("category_" + random.nextInt(benchmark.keys));
+            }
+        }
+    }
+
+    /**
+     * Internizza una stringa
+     *
+     * @param values chiavi del thread
+     * @return stringa internizzata
+     */
+    @Benchmark
+    public String intern(Values values) {
+        return pool.intern(values.values[values.next++ & 4095]);
+    }
+}
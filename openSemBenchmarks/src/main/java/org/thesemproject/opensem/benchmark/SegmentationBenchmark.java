@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thesemproject.opensem.classification.MulticlassEngine;
+import org.thesemproject.opensem.segmentation.SegmentConfiguration;
+import org.thesemproject.opensem.segmentation.SegmentEngine;
+import org.thesemproject.opensem.segmentation.SegmentationResults;
+
+/**
+ * Benchmark di SegmentEngine.getSegments con e senza classificazione dei
+ * segmenti, su modelli sintetici con un numero variabile di segmenti
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentationBenchmark {
+
+    private static final String LANGUAGE = "it";
+
+    @Param({"10", "100"})
+    private int segments;
+
+    @Param({"20"})
+    private int sections;
+
+    @Param({"10"})
+    private int linesPerSection;
+
+    private File structurePath;
+    private MulticlassEngine me;
+    private SegmentEngine se;
+    private String[] texts;
+    private int next;
+
+    /**
+     * Genera struttura di classificazione, modello di segmentazione e
+     * documenti
+     *
+     * @throws Exception Eccezione
+     */
+    @Setup
+    public void setup() throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(42);
+        structurePath = SyntheticCorpus.createTempFolder("sem-segmentation");
+        corpus.buildClassificationStructure(structurePath, LANGUAGE, 2, 4, 20);
+        me = new MulticlassEngine();
+        if (!me.init(structurePath.getAbsolutePath(), 3)) {
+            throw new IllegalStateException("Impossibile istruire la struttura " + structurePath);
+        }
+        File model = new File(structurePath, "segments.xml");
+        String[] headers = corpus.writeSegmentationModel(model, segments);
+        se = new SegmentEngine();
+        if (!se.init(model.getAbsolutePath(), me)) {
+            throw new IllegalStateException("Impossibile caricare il modello " + model);
+        }
+        String[] words = corpus.vocabulary(2000);
+        texts = new String[16];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = corpus.segmentedDocument(headers, words, sections, linesPerSection);
+        }
+    }
+
+    /**
+     * Chiude gli indici e cancella la struttura
+     *
+     * @throws Exception Eccezione
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        se.closeAllReaders();
+        me.closeAllReaders();
+        SyntheticCorpus.delete(structurePath);
+    }
+
+    /**
+     * Segmentazione senza classificazione
+     *
+     * @return risultato della segmentazione
+     */
+    @Benchmark
+    public Map<SegmentConfiguration, List<SegmentationResults>> getSegments() {
+        return se.getSegments(texts[next++ & 15], LANGUAGE);
+    }
+
+    /**
+     * Segmentazione con classificazione dei segmenti classificabili
+     *
+     * @return risultato della segmentazione
+     */
+    @Benchmark
+    public Map<SegmentConfiguration, List<SegmentationResults>> getSegmentsAndClassify() {
+        return se.getSegments(texts[next++ & 15], me, LANGUAGE);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.benchmark;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.thesemproject.opensem.segmentation.SegmentConfiguration;
+import org.thesemproject.opensem.segmentation.SegmentEngine;
+import org.thesemproject.opensem.segmentation.SegmentationResults;
+
+/**
+ * Confronta su documenti casuali la segmentazione di SegmentEngine con il
+ * ciclo originale (segmento per segmento e pattern per pattern, senza
+ * prefiltro) riportato qui come riferimento.
+ *
+ * Il modello ha pattern su due righe ("@") seguiti da segmenti che
+ * riconoscono la riga unita, pattern senza letterali, segmenti multipli e non
+ * multipli, così da coprire anche la prosecuzione del ciclo dopo un
+ * riconoscimento sulle righe unite. Vengono confrontati, per ogni segmento,
+ * i risultati con le frasi e le righe.
+ *
+ * Uso: SegmentationEquivalenceCheck [documenti] [seme]
+ */
+public class SegmentationEquivalenceCheck {
+
+    private static final String[] PATTERNS = {
+        "^\\s*(esperienze|esperienza)\\s+(lavorative|professionali)",
+        "alfa@beta",
+        "alfa beta",
+        "\\bdati personali\\b",
+        "^[a-z]+:$",
+        "lingu(a|e)@stranier(a|e)",
+        "^lingu",
+        "^\\d+\\)",
+        "competenze",
+        "istruzione|formazione",
+        "hobby@e@interessi",
+        "gamma@delta",
+        "^gamma",
+        "^(capitolo|articolo) \\d+",
+        "patente",
+        "[xyz]{3}"
+    };
+
+    private static final String[] WORDS = ("alfa beta gamma delta esperienze esperienza lavorative professionali formazione scolastica dati personali lingua lingue "
+            + "straniera straniere 1) 2) competenze istruzione hobby e interessi capitolo articolo 3 patente xyz zzz mario rossi roma nato il").split(" ");
+
+    /**
+     * Esegue il confronto
+     *
+     * @param args numero di documenti e seme (opzionali)
+     * @throws Exception Eccezione o differenza trovata
+     */
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        Random random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 3);
+        File folder = SyntheticCorpus.createTempFolder("sem-equivalence");
+        try {
+            File model = new File(folder, "segments.xml");
+            Files.write(model.toPath(), getModel().getBytes(StandardCharsets.UTF_8));
+            SegmentEngine se = new SegmentEngine();
+            if (!se.init(model.getAbsolutePath(), null)) {
+                throw new IllegalStateException("Impossibile caricare il modello " + model);
+            }
+            List<SegmentConfiguration> patternMatrix = new ArrayList<>();
+            se.getPatternMatrix().forEach(patternMatrix::add);
+            int joined = 0;
+            for (int d = 0; d < documents; d++) {
+                String text = getDocument(random);
+                Map<SegmentConfiguration, List<SegmentationResults>> expected = new LinkedHashMap<>();
+                joined += segment(patternMatrix, text, expected);
+                Map<SegmentConfiguration, List<SegmentationResults>> actual = se.getSegments(text, "it");
+                String difference = compare(expected, actual);
+                if (difference != null) {
+                    throw new IllegalStateException("Documento " + d + ": " + difference + "\n" + text);
+                }
+            }
+            System.out.println(documents + " documenti uguali (" + joined + " riconoscimenti su righe unite)");
+        } finally {
+            SyntheticCorpus.delete(folder);
+        }
+    }
+
+    private static String getModel() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<model><segments>\n");
+        for (int s = 0; s < PATTERNS.length; s++) {
+            xml.append("<segment name=\"S").append(s).append("\" multiple=\"").append(s % 2 == 0 ? "yes" : "no")
+                    .append("\" default=\"").append(s == 0 ? "yes" : "no").append("\">");
+            xml.append("<pattern>").append(PATTERNS[s]).append("</pattern>");
+            if (s % 4 == 0) {
+                xml.append("<pattern>").append(PATTERNS[(s + 5) % PATTERNS.length]).append("</pattern>");
+            }
+            xml.append("</segment>\n");
+        }
+        return xml.append("</segments></model>").toString();
+    }
+
+    private static String getDocument(Random random) {
+        StringBuilder text = new StringBuilder();
+        int lines = 5 + random.nextInt(30);
+        for (int l = 0; l < lines; l++) {
+            int n = random.nextInt(4);
+            for (int k = 0; k < n; k++) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(6) == 0 ? ":" : " ");
+            }
+            text.append(random.nextInt(8) == 0 ? "\n\n" : "\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Ciclo di segmentazione originale
+     *
+     * @return numero di riconoscimenti sulle righe unite
+     */
+    private static int segment(List<SegmentConfiguration> patternMatrix, String text, Map<SegmentConfiguration, List<SegmentationResults>> identifiedSegments) {
+        int joined = 0;
+        String line;
+        String previousLines = "";
+        String lastLine = "";
+        SegmentConfiguration currentSegment = null;
+        for (SegmentConfiguration segmentConfiguration : patternMatrix) {
+            if (segmentConfiguration.isDefault()) {
+                currentSegment = segmentConfiguration;
+            }
+        }
+        for (String currLine : text.split(SegmentEngine.CR)) {
+            line = currLine.replaceAll(SegmentEngine.TAB, "").replaceAll("(\\s+)", " ").trim().toLowerCase();
+            if (line.length() != 0) {
+                boolean match = false;
+                for (SegmentConfiguration section : patternMatrix) {
+                    List<Pattern> patterns = section.getPatternList();
+                    for (Pattern pattern : patterns) {
+                        if (pattern.matcher(line).find()) {
+                            if (previousLines.length() > 0) {
+                                addSentence(previousLines, currentSegment, identifiedSegments);
+                                previousLines = "";
+                                lastLine = "";
+                            }
+                            if (!section.getName().equals(currentSegment.getName())) {
+                                currentSegment = section;
+                            }
+                            if (identifiedSegments.containsKey(currentSegment) && currentSegment.isMultiple()) {
+                                identifiedSegments.get(currentSegment).add(new SegmentationResults());
+                            }
+                            match = true;
+                            break;
+                        }
+                    }
+                    if (match) {
+                        break;
+                    } else if (lastLine.length() != 0) {
+                        String newLine = lastLine + "@" + line;
+                        for (Pattern pattern : patterns) {
+                            if (pattern.matcher(newLine).find()) {
+                                joined++;
+                                line = lastLine + " " + line;
+                                if (previousLines.length() > 0) {
+                                    int pos = previousLines.lastIndexOf(" " + lastLine);
+                                    if (pos != -1) {
+                                        previousLines = previousLines.substring(0, pos);
+                                    } else if (previousLines.equals(lastLine)) {
+                                        previousLines = "";
+                                    }
+                                    if (previousLines.length() > 0) {
+                                        addSentence(previousLines, currentSegment, identifiedSegments);
+                                    }
+                                    previousLines = "";
+                                    lastLine = "";
+                                }
+                                if (!section.getName().equals(currentSegment.getName())) {
+                                    currentSegment = section;
+                                }
+                                if (identifiedSegments.containsKey(currentSegment) && currentSegment.isMultiple()) {
+                                    identifiedSegments.get(currentSegment).add(new SegmentationResults());
+                                }
+                                match = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (previousLines.length() != 0) {
+                    previousLines = previousLines + " " + line;
+                } else {
+                    previousLines = line;
+                }
+                if (!match) {
+                    lastLine = line;
+                } else {
+                    lastLine = "";
+                }
+            } else if (previousLines.length() > 0) {
+                addSentence(previousLines, currentSegment, identifiedSegments);
+                previousLines = line;
+            }
+            getLast(currentSegment, identifiedSegments).addLine(line);
+        }
+        if (previousLines.length() > 0) {
+            addSentence(previousLines, currentSegment, identifiedSegments);
+        }
+        return joined;
+    }
+
+    private static void addSentence(String sentence, SegmentConfiguration segment, Map<SegmentConfiguration, List<SegmentationResults>> identifiedSegments) {
+        getLast(segment, identifiedSegments).addSentence(sentence);
+    }
+
+    private static SegmentationResults getLast(SegmentConfiguration segment, Map<SegmentConfiguration, List<SegmentationResults>> identifiedSegments) {
+        List<SegmentationResults> results = identifiedSegments.get(segment);
+        if (results == null) {
+            results = new ArrayList<>();
+            results.add(new SegmentationResults());
+            identifiedSegments.put(segment, results);
+        }
+        return results.get(results.size() - 1);
+    }
+
+    private static String compare(Map<SegmentConfiguration, List<SegmentationResults>> expected, Map<SegmentConfiguration, List<SegmentationResults>> actual) {
+        if (!new ArrayList<>(expected.keySet()).equals(new ArrayList<>(actual.keySet()))) {
+            return "segmenti " + names(expected) + " invece di " + names(actual);
+        }
+        for (Map.Entry<SegmentConfiguration, List<SegmentationResults>> entry : expected.entrySet()) {
+            List<SegmentationResults> e = entry.getValue();
+            List<SegmentationResults> a = actual.get(entry.getKey());
+            if (e.size() != a.size()) {
+                return entry.getKey().getName() + ": " + e.size() + " risultati invece di " + a.size();
+            }
+            for (int i = 0; i < e.size(); i++) {
+                if (!e.get(i).getSentencies().equals(a.get(i).getSentencies())) {
+                    return entry.getKey().getName() + "[" + i + "]: frasi " + e.get(i).getSentencies() + " invece di " + a.get(i).getSentencies();
+                }
+                if (!e.get(i).getLines().equals(a.get(i).getLines())) {
+                    return entry.getKey().getName() + "[" + i + "]: righe " + e.get(i).getLines() + " invece di " + a.get(i).getLines();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<String> names(Map<SegmentConfiguration, List<SegmentationResults>> segments) {
+        List<String> ret = new ArrayList<>();
+        segments.keySet().stream().forEach((segment) -> {
+            ret.add(segment.getName());
+        });
+        return ret;
+    }
+}
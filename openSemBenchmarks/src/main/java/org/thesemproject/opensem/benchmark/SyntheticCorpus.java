@@ -0,0 +1,292 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.thesemproject.opensem.classification.IndexManager;
+
+/**
+ * Generatore di dati sintetici per i benchmark.
+ *
+ * Costruisce parole, testi, strutture di classificazione (indice di
+ * istruzione per lingua) e modelli di segmentazione a partire da un seme, in
+ * modo che ogni esecuzione lavori sugli stessi dati senza dipendere da file
+ * esterni.
+ */
+public class SyntheticCorpus {
+
+    private static final String[] SYLLABLES = {"ba", "ce", "di", "fo", "gu", "la", "me", "ni", "po", "ru",
+        "sa", "te", "vi", "zo", "ca", "re", "to", "mi", "ne", "lo", "ta", "si", "pe", "do", "ga", "ve"};
+
+    private static final String[] MONTHS = {"gennaio", "febbraio", "marzo", "aprile", "maggio", "giugno",
+        "luglio", "agosto", "settembre", "ottobre", "novembre", "dicembre"};
+
+    private final Random random;
+
+    /**
+     * Istanzia il generatore
+     *
+     * @param seed seme del generatore casuale
+     */
+    public SyntheticCorpus(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Genera un vocabolario di parole distinte
+     *
+     * @param size numero di parole
+     * @return vocabolario
+     */
+    public String[] vocabulary(int size) {
+        List<String> words = new ArrayList<>(size);
+        Set<String> seen = new HashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 2 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            if (seen.add(word.toString())) {
+                words.add(word.toString());
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /**
+     * Genera un testo pescando parole da un vocabolario
+     *
+     * @param words vocabolario
+     * @param length numero di parole
+     * @return testo
+     */
+    public String text(String[] words, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                text.append(i % 12 == 0 ? ". " : " ");
+            }
+            text.append(words[random.nextInt(words.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Genera una data scritta in uno dei formati riconosciuti da DateUtils
+     *
+     * @return data in formato testo
+     */
+    public String date() {
+        int day = 1 + random.nextInt(28);
+        int month = 1 + random.nextInt(12);
+        int year = 1970 + random.nextInt(50);
+        switch (random.nextInt(5)) {
+            case 0:
+                return day + "/" + month + "/" + year;
+            case 1:
+                return day + "-" + month + "-" + year;
+            case 2:
+                return day + " " + MONTHS[month - 1] + " " + year;
+            case 3:
+                return MONTHS[month - 1] + " " + year;
+            default:
+                return month + "/" + year;
+        }
+    }
+
+    /**
+     * Costruisce una struttura di classificazione sintetica: un albero con
+     * "categories" figli per nodo e "depth" livelli. Ogni foglia ha un
+     * proprio sottoinsieme del vocabolario e "docsPerLeaf" documenti di
+     * istruzione
+     *
+     * @param structurePath cartella della struttura (viene creata)
+     * @param language lingua dell'indice
+     * @param depth profondità dell'albero (1..6)
+     * @param categories numero di figli per nodo
+     * @param docsPerLeaf documenti di istruzione per foglia
+     * @return vocabolari delle foglie, nell'ordine di generazione
+     * @throws Exception Eccezione
+     */
+    public List<String[]> buildClassificationStructure(File structurePath, String language, int depth, int categories, int docsPerLeaf) throws Exception {
+        structurePath.mkdirs();
+        File fStop = new File(IndexManager.getStopWordPath(structurePath, language));
+        fStop.getParentFile().mkdirs();
+        fStop.createNewFile();
+        Path indexDir = Paths.get(IndexManager.getIndexFolder(structurePath, language));
+        indexDir.toFile().mkdirs();
+        List<String[]> leaves = new ArrayList<>();
+        String[] common = vocabulary(200);
+        FieldType ft = IndexManager.getNotTokenizedFieldType();
+        try (IndexWriter indexWriter = IndexManager.getIndexWriter(indexDir, fStop, language)) {
+            addLeaves(indexWriter, ft, new String[0], depth, categories, docsPerLeaf, common, leaves);
+            indexWriter.commit();
+        }
+        return leaves;
+    }
+
+    private void addLeaves(IndexWriter indexWriter, FieldType ft, String[] path, int depth, int categories, int docsPerLeaf, String[] common, List<String[]> leaves) throws Exception {
+        if (path.length == depth) {
+            String[] words = vocabulary(40);
+            leaves.add(words);
+            for (int i = 0; i < docsPerLeaf; i++) {
+                Document d = new Document();
+                for (int level = 0; level < path.length; level++) {
+                    d.add(new StringField(getLevelNameField(level), path[level], Field.Store.YES));
+                }
+                String text = text(words, 30) + " " + text(common, 10);
+                d.add(new StringField(IndexManager.TEXT, text, Field.Store.YES));
+                IndexManager.reindexDoc(d, ft, indexWriter.getAnalyzer(), indexWriter);
+            }
+            return;
+        }
+        for (int c = 0; c < categories; c++) {
+            String[] child = new String[path.length + 1];
+            System.arraycopy(path, 0, child, 0, path.length);
+            child[path.length] = (path.length == 0 ? "Cat" : path[path.length - 1]) + "x" + c;
+            addLeaves(indexWriter, ft, child, depth, categories, docsPerLeaf, common, leaves);
+        }
+    }
+
+    private static String getLevelNameField(int level) {
+        switch (level) {
+            case 0:
+                return IndexManager.LEVEL1_NAME;
+            case 1:
+                return IndexManager.LEVEL2_NAME;
+            case 2:
+                return IndexManager.LEVEL3_NAME;
+            case 3:
+                return IndexManager.LEVEL4_NAME;
+            case 4:
+                return IndexManager.LEVEL5_NAME;
+            default:
+                return IndexManager.LEVEL6_NAME;
+        }
+    }
+
+    /**
+     * Scrive un modello di segmentazione sintetico con "segments" segmenti.
+     * Ogni segmento è riconosciuto da un'intestazione propria e ha una cattura
+     * di data e una di email; l'ultimo segmento è marcato come classificabile
+     *
+     * @param modelFile file xml del modello
+     * @param segments numero di segmenti
+     * @return intestazioni dei segmenti (da usare nei testi)
+     * @throws IOException Eccezione di input/output
+     */
+    public String[] writeSegmentationModel(File modelFile, int segments) throws IOException {
+        String[] headers = vocabulary(segments);
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<model>\n");
+        xml.append("  <dictionary>\n");
+        xml.append("    <definition name=\"data\">(\\d{1,2}[/-]\\d{1,2}[/-]\\d{4}|\\d{1,2}/\\d{4})</definition>\n");
+        xml.append("    <definition name=\"email\">([a-z0-9._]+@[a-z0-9.]+)</definition>\n");
+        xml.append("  </dictionary>\n  <segments>\n");
+        for (int i = 0; i < segments; i++) {
+            xml.append("    <segment name=\"Segment").append(i).append("\" multiple=\"yes\" default=\"")
+                    .append(i == 0 ? "yes" : "no").append("\" classify=\"").append(i == segments - 1 ? "yes" : "no").append("\">\n");
+            xml.append("      <pattern>^\\s*(sezione|section)\\s+").append(headers[i]).append("\\b.*</pattern>\n");
+            xml.append("      <capture name=\"Data").append(i).append("\" type=\"date\">\n");
+            xml.append("        <pattern position=\"1\">#data</pattern>\n");
+            xml.append("      </capture>\n");
+            xml.append("      <capture name=\"Email").append(i).append("\" type=\"text\">\n");
+            xml.append("        <pattern position=\"1\">#email</pattern>\n");
+            xml.append("      </capture>\n");
+            xml.append("    </segment>\n");
+        }
+        xml.append("  </segments>\n</model>\n");
+        modelFile.getParentFile().mkdirs();
+        Files.write(modelFile.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+
+    /**
+     * Genera un documento da segmentare: per ogni sezione un'intestazione
+     * seguita da righe di testo con date ed email
+     *
+     * @param headers intestazioni dei segmenti
+     * @param words vocabolario del corpo
+     * @param sections numero di sezioni
+     * @param linesPerSection righe per sezione
+     * @return testo del documento
+     */
+    public String segmentedDocument(String[] headers, String[] words, int sections, int linesPerSection) {
+        StringBuilder text = new StringBuilder();
+        for (int s = 0; s < sections; s++) {
+            text.append("sezione ").append(headers[random.nextInt(headers.length)]).append('\n');
+            for (int l = 0; l < linesPerSection; l++) {
+                text.append(text(words, 8));
+                switch (random.nextInt(4)) {
+                    case 0:
+                        text.append(" dal ").append(date()).append(" al ").append(date());
+                        break;
+                    case 1:
+                        text.append(" contatto ").append(words[random.nextInt(words.length)]).append("@example.com");
+                        break;
+                    default:
+                        break;
+                }
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Crea una cartella temporanea per i dati di un benchmark
+     *
+     * @param prefix prefisso del nome
+     * @return cartella creata
+     * @throws IOException Eccezione di input/output
+     */
+    public static File createTempFolder(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Cancella ricorsivamente una cartella temporanea
+     *
+     * @param folder cartella da cancellare
+     * @throws IOException Eccezione di input/output
+     */
+    public static void delete(File folder) throws IOException {
+        if (folder == null || !folder.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
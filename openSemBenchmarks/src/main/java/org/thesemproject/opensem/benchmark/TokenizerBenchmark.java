@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 The Sem Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thesemproject.opensem.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thesemproject.opensem.classification.MyAnalyzer;
+import org.thesemproject.opensem.classification.Tokenizer;
+
+/**
+ * Benchmark di Tokenizer.tokenize per lingua su testi sintetici di lunghezza
+ * variabile
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param({"it", "en", "de", "fr", "es"})
+    private String language;
+
+    @Param({"50", "500"})
+    private int words;
+
+    private MyAnalyzer analyzer;
+    private String[] texts;
+    private int next;
+
+    /**
+     * Prepara analizzatore e testi
+     */
+    @Setup
+    public void setup() {
+        analyzer = new MyAnalyzer(language);
+        SyntheticCorpus corpus = new SyntheticCorpus(42);
+        String[] vocabulary = corpus.vocabulary(2000);
+        texts = new String[64];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = corpus.text(vocabulary, words);
+        }
+    }
+
+    /**
+     * Tokenizza un testo
+     *
+     * @return testo tokenizzato
+     * @throws Exception Eccezione
+     */
+    @Benchmark
+    public String tokenize() throws Exception {
+        return Tokenizer.tokenize(texts[next++ & 63], analyzer);
+    }
+}